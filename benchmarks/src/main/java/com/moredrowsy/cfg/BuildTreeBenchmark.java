@@ -0,0 +1,64 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * State machine and build*Tree paths on pre-tokenized input made of one construct kind
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildTreeBenchmark {
+    @Param({"STATEMENT", "CALL", "IF", "IF_ELSE", "WHILE", "DO_WHILE", "FOR"})
+    public SourceGenerator.Constructs construct;
+
+    private Parser parser; // Has no strings, so parse only runs on the tokens given to it
+    private ArrayList<Token> tokens;
+
+    @Setup
+    public void setup() {
+        ArrayList<String> lines =
+                new SourceGenerator(42, 2, SourceGenerator.only(construct)).generate(10, 10);
+
+        parser = new Parser();
+        tokens = new ArrayList<>();
+
+        Tokenizer tokenizer = parser.getTokenizer();
+        for (int i = 0; i < lines.size(); ++i) {
+            tokenizer.tokenize(lines.get(i), i + 1);
+            tokens.addAll(tokenizer.getTokens());
+        }
+    }
+
+    @Benchmark
+    public GraphBuilder buildGraph() {
+        GraphBuilder builder = new GraphBuilder();
+        parser.getTokens().addAll(tokens);
+        parser.parse(builder);
+        return builder;
+    }
+
+    // Same state machine walk with a listener that builds nothing
+    @Benchmark
+    public boolean buildListener() {
+        parser.getTokens().addAll(tokens);
+        return parser.parse(new ParseListener() {
+        });
+    }
+}
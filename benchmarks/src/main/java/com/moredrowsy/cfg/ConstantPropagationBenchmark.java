@@ -0,0 +1,65 @@
+package com.moredrowsy.cfg;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sparse constant propagation against plain iteration to a fixed point on an else if chain on a
+ * constant, inside a loop that runs it with a second constant
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstantPropagationBenchmark {
+    @Param({"100", "1000"})
+    public int length;
+
+    private SSA ssa;
+
+    @Setup
+    public void setup() {
+        Parser parser = new Parser();
+        parser.addString("int f(int n) {");
+        parser.addString("x = " + length / 2 + ";");
+        parser.addString("while(n) {");
+        parser.addString("if(x == 0) {");
+        parser.addString("y = 0;");
+        for (int i = 1; i < length; ++i) {
+            parser.addString("}");
+            parser.addString("else if(x == " + i + ") {");
+            parser.addString("y = " + i + ";");
+        }
+        parser.addString("}");
+        parser.addString("x = y;");
+        parser.addString("n--;");
+        parser.addString("}");
+        parser.addString("}");
+        parser.parse();
+
+        ssa = new SSA(new DefUse(parser.getNodes()));
+    }
+
+    @Benchmark
+    public ConstantPropagation sparse() {
+        return new ConstantPropagation(ssa);
+    }
+
+    @Benchmark
+    public ConstantPropagation iterative() {
+        return ConstantPropagation.iterate(ssa);
+    }
+}
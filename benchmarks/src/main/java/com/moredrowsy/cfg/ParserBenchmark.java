@@ -0,0 +1,66 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end Parser.parse: construction, tokenizing and graph building, against indexing the
+ * functions and building the graph of the last one only
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"10", "100"})
+    public int functions;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    private ArrayList<String> lines;
+
+    @Setup
+    public void setup() {
+        lines = new SourceGenerator(42, depth, SourceGenerator.mixed()).generate(functions, 20);
+    }
+
+    private Parser createParser() {
+        Parser parser = new Parser();
+        for (String line : lines)
+            parser.addString(line);
+        return parser;
+    }
+
+    @Benchmark
+    public Node<Integer> parse() {
+        return createParser().parse();
+    }
+
+    // Same parse with a listener that builds nothing
+    @Benchmark
+    public boolean parseListener() {
+        return createParser().parse(new ParseListener() {
+        });
+    }
+
+    @Benchmark
+    public ArrayList<Node<Integer>> indexFunctions() {
+        FunctionIndex index = createParser().indexFunctions();
+        return index.getNodes(index.size() - 1);
+    }
+}
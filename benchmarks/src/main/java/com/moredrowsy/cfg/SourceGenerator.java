@@ -0,0 +1,145 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Seeded generator of synthetic source text accepted by the Parser
+ */
+public class SourceGenerator {
+    public static enum Constructs {
+        STATEMENT, CALL, IF, IF_ELSE, WHILE, DO_WHILE, FOR
+    }
+
+    private Random random;
+    private int depth; // Maximum nesting depth of control constructs
+    private int[] weights; // Relative weight of each construct, indexed by Constructs ordinal
+    private int totalWeight;
+    private int counter; // Used to make unique names
+
+    // Weights are given in Constructs order; missing weights are 0
+    public SourceGenerator(long seed, int depth, int... weights) {
+        this.random = new Random(seed);
+        this.depth = depth;
+        this.weights = new int[Constructs.values().length];
+        this.totalWeight = 0;
+        this.counter = 0;
+
+        for (int i = 0; i < weights.length && i < this.weights.length; ++i) {
+            this.weights[i] = weights[i];
+            this.totalWeight += weights[i];
+        }
+        if (totalWeight == 0)
+            throw new IllegalArgumentException("At least one construct weight must be positive");
+    }
+
+    // Equal mix of all constructs
+    public static int[] mixed() {
+        int[] weights = new int[Constructs.values().length];
+        for (int i = 0; i < weights.length; ++i)
+            weights[i] = 1;
+        return weights;
+    }
+
+    // Only the given construct, with statements as the innermost bodies
+    public static int[] only(Constructs construct) {
+        int[] weights = new int[Constructs.values().length];
+        weights[construct.ordinal()] = 1;
+        return weights;
+    }
+
+    // Generate functions each with bodySize constructs at the top of the body
+    public ArrayList<String> generate(int functions, int bodySize) {
+        ArrayList<String> lines = new ArrayList<>();
+
+        for (int f = 0; f < functions; ++f) {
+            lines.add("int func" + f + "(int a, int b) {");
+            generateBody(lines, "    ", bodySize, depth);
+            lines.add("}");
+        }
+        return lines;
+    }
+
+    private void generateBody(ArrayList<String> lines, String indent, int size, int level) {
+        for (int i = 0; i < size; ++i)
+            generateConstruct(lines, indent, level);
+    }
+
+    private void generateConstruct(ArrayList<String> lines, String indent, int level) {
+        Constructs construct = pick();
+
+        // Out of nesting depth, control constructs become statements
+        if (level <= 0 && construct.ordinal() > Constructs.CALL.ordinal())
+            construct = Constructs.STATEMENT;
+
+        String inner = indent + "    ";
+        int bodySize = 1 + random.nextInt(3);
+
+        switch (construct) {
+            case STATEMENT:
+                lines.add(indent + name("v") + " = " + name("v") + " + " + random.nextInt(100) + ";");
+                break;
+            case CALL:
+                lines.add(indent + name("r") + " = " + name("call") + "(" + name("v") + ");");
+                break;
+            case IF:
+                lines.add(indent + "if(" + condition() + ") {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "}");
+                break;
+            case IF_ELSE:
+                lines.add(indent + "if(" + condition() + ") {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "}");
+                lines.add(indent + "else if(" + condition() + ") {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "}");
+                lines.add(indent + "else {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "}");
+                break;
+            case WHILE:
+                lines.add(indent + "while(" + condition() + ") {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "}");
+                break;
+            case DO_WHILE:
+                lines.add(indent + "do {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "} while(" + condition() + ");");
+                break;
+            case FOR:
+                String i = name("i");
+                lines.add(indent + "for(" + i + " = 0; " + i + " < " + name("n") + "; ++" + i
+                        + ") {");
+                generateBody(lines, inner, bodySize, level - 1);
+                lines.add(indent + "}");
+                break;
+        }
+    }
+
+    private Constructs pick() {
+        int value = random.nextInt(totalWeight);
+        for (Constructs construct : Constructs.values()) {
+            value -= weights[construct.ordinal()];
+            if (value < 0)
+                return construct;
+        }
+        return Constructs.STATEMENT;
+    }
+
+    private String condition() {
+        switch (random.nextInt(4)) {
+            case 0:
+                return "true";
+            case 1:
+                return "false";
+            default:
+                return name("v") + " < " + random.nextInt(100);
+        }
+    }
+
+    private String name(String prefix) {
+        return prefix + (counter++ % 64);
+    }
+}
@@ -0,0 +1,82 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * StructuralIndex over generated source or long statement lines, SWAR against one character at a
+ * time, next to the Tokenizer on the same lines
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructuralIndexBenchmark {
+    public static final int LINES = 1000;
+
+    @Param({"source", "long"})
+    public String shape;
+
+    private ArrayList<String> lines;
+    private StructuralIndex index;
+    private Tokenizer tokenizer;
+
+    @Setup
+    public void setup() {
+        if (shape.equals("source")) {
+            lines = new SourceGenerator(42, 3, SourceGenerator.mixed()).generate(10, LINES / 10);
+        } else {
+            lines = new ArrayList<>();
+            Random random = new Random(42);
+            for (int i = 0; i < LINES; ++i) {
+                StringBuilder str = new StringBuilder("    v" + random.nextInt(100) + " =");
+                for (int j = 0; j < 40; ++j)
+                    str.append(" v").append(random.nextInt(100)).append(" +");
+                lines.add(str.append(" 1;").toString());
+            }
+        }
+
+        index = new StructuralIndex("(){};");
+        tokenizer = new Parser().getTokenizer();
+    }
+
+    @Benchmark
+    public void swar(Blackhole bh) {
+        for (String line : lines) {
+            index.index(line, 0, line.length());
+            bh.consume(index.size());
+        }
+    }
+
+    @Benchmark
+    public void scalar(Blackhole bh) {
+        for (String line : lines) {
+            index.indexScalar(line, 0, line.length());
+            bh.consume(index.size());
+        }
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) {
+        for (int i = 0; i < lines.size(); ++i) {
+            tokenizer.tokenize(lines.get(i), i + 1);
+            bh.consume(tokenizer.getTokens().size());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Tokenizer.tokenize over 1000 lines of one shape per operation, line by line or in parallel
+ * chunks on the common pool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+    public static final int LINES = 1000;
+    public static final int CHUNK_SIZE = 4096;
+
+    @Param({"statement", "call", "control", "compact", "long"})
+    public String shape;
+
+    private Tokenizer tokenizer;
+    private ArrayList<String> lines;
+
+    @Setup
+    public void setup() {
+        tokenizer = new Parser().getTokenizer();
+        lines = new ArrayList<>();
+
+        Random random = new Random(42);
+        for (int i = 0; i < LINES; ++i)
+            lines.add(line(random));
+    }
+
+    private String line(Random random) {
+        int a = random.nextInt(100);
+        int b = random.nextInt(100);
+
+        switch (shape) {
+            case "statement":
+                return "    v" + a + " = v" + b + " + " + random.nextInt(1000) + ";";
+            case "call":
+                return "    r" + a + " = call" + b + "(v" + a + ", v" + b + ");";
+            case "control":
+                return "    while(v" + a + " < " + b + ") {";
+            case "compact":
+                return "if(v" + a + ") { v" + b + " = 1; } else { v" + a + " = 2; }";
+            default:
+                StringBuilder str = new StringBuilder("    v" + a + " =");
+                for (int i = 0; i < 40; ++i)
+                    str.append(" v").append(random.nextInt(100)).append(" +");
+                return str.append(" ").append(b).append(";").toString();
+        }
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) {
+        for (int i = 0; i < lines.size(); ++i) {
+            tokenizer.tokenize(lines.get(i), i + 1);
+            bh.consume(tokenizer.getTokens().size());
+        }
+    }
+
+    @Benchmark
+    public void tokenizeParallel(Blackhole bh) {
+        ArrayList<Token> tokens = new ArrayList<>();
+        tokenizer.tokenize(lines, 1, tokens, ForkJoinPool.commonPool(), CHUNK_SIZE);
+        bh.consume(tokens.size());
+    }
+}
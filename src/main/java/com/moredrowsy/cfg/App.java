@@ -1,59 +1,463 @@
 package com.moredrowsy.cfg;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.moredrowsy.cfg.GraphWriter.Formats;
+import com.moredrowsy.cfg.ParseMetrics.Counters;
+import com.moredrowsy.cfg.ParseMetrics.Phases;
 
 /**
  * Control Flow Graph (CFG) Program
  *
+ * Parses each input file into a graph and writes it to standard output, in input order and as
+ * soon as each file is done. Without inputs the bundled input.txt is parsed.
  */
 public class App {
+    private static final String USAGE = String.join("\n",
+            "Usage: cfg [options] [file | directory | glob | - ...]", //
+            "  -f, --format FORMAT  text, dot, json or binary (default text)",
+            "  -w, --workers N      parse N files at a time (default 1)",
+            "  -m, --metrics-only   print counters of each file instead of its graph",
+            "  -t, --time           print a phase time breakdown to standard error",
+            "      --jfr            commit Flight Recorder events for each phase",
+            "      --server PORT    serve parse requests on a localhost port (0 picks one)",
+            "      --connect PORT   send the inputs to a server instead of parsing them",
+            "  -h, --help           print this help",
+            "Directories are read recursively; - reads standard input.");
+
+    private static final String STDIN = "-";
+    private static final String BUNDLED_INPUT = "input.txt";
+
+    private static class Options {
+        private Formats format = Formats.TEXT;
+        private int workers = 1;
+        private boolean isMetricsOnly = false;
+        private boolean isTimed = false;
+        private boolean isJfr = false;
+        private int serverPort = -1; // Serve on this port if not -1
+        private int connectPort = -1; // Send inputs to a server on this port if not -1
+        private ArrayList<String> inputs = new ArrayList<>();
+    }
+
+    // Output of one input and what it took to make
+    private static class Result {
+        private String name;
+        private byte[] output;
+        private String error; // Read error or null
+        private long bytes;
+        private long readNanos;
+        private long writeNanos;
+        private CountingMetrics metrics = new CountingMetrics();
+    }
+
+    // Forwards to two ParseMetrics
+    private static class TeeMetrics implements ParseMetrics {
+        private ParseMetrics first;
+        private ParseMetrics second;
+
+        private TeeMetrics(ParseMetrics first, ParseMetrics second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void startPhase(Phases phase) {
+            first.startPhase(phase);
+            second.startPhase(phase);
+        }
+
+        @Override
+        public void endPhase(Phases phase) {
+            first.endPhase(phase);
+            second.endPhase(phase);
+        }
+
+        @Override
+        public void add(Counters counter, long amount) {
+            first.add(counter, amount);
+            second.add(counter, amount);
+        }
+    }
+
     public static void main(String[] args) throws IOException {
-        System.out.println("Control Flow Graph Program");
+        int status = run(args, System.in, System.out, System.err);
+        if (status != 0)
+            System.exit(status);
+    }
 
-        Parser parser = new Parser();
+    // Returns the exit status: 0 on success, 1 if an input could not be read, 2 on bad usage
+    static int run(String[] args, InputStream in, PrintStream out, PrintStream err)
+            throws IOException {
+        Options options;
+        try {
+            options = parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            err.println("cfg: " + e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
 
-        String filename = "input.txt";
-        InputStream in = App.class.getClassLoader().getResourceAsStream(filename);
+        if (options == null) {
+            out.println(USAGE);
+            return 0;
+        }
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(in));) {
-            String line;
+        if (options.serverPort != -1)
+            return serve(options, out);
 
-            // Parse each line
-            while ((line = br.readLine()) != null) {
-                parser.addString(line);
+        ArrayList<String> inputs = new ArrayList<>();
+        for (String input : options.inputs) {
+            try {
+                inputs.addAll(expand(input));
+            } catch (IOException e) {
+                err.println("cfg: " + input + ": " + e.getMessage());
+                return 1;
             }
         }
 
-        // Print code text
-        System.out.println("\n\nCode text:");
-        for (String str : parser.getStrings()) {
-            System.out.println(str);
+        // The bundled input is only used when no inputs were given, not when they match nothing
+        if (inputs.isEmpty() && !options.inputs.isEmpty()) {
+            err.println("cfg: no input files");
+            return 1;
         }
+        if (inputs.isEmpty())
+            inputs.add(null);
 
-        // Parse all input strings
-        Node<Integer> root = parser.parse();
-        ArrayList<Node<Integer>> nodes = parser.getNodes();
-
-        System.out.println("\n\nVertices:");
-        for (Node<Integer> node : nodes) {
-            System.out.println("Node: " + node.val);
-            System.out.println("Type: " + node.type);
-            for (Token token : node.tokens) {
-                System.out.println(token.sequence);
+        if (options.connectPort != -1)
+            return connect(inputs, options, in, out, err);
+
+        ExecutorService pool = null;
+        if (options.workers > 1)
+            pool = Executors.newFixedThreadPool(options.workers);
+
+        // Results are written in input order; at most workers * 4 are in flight
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        Result totals = new Result();
+        int status = 0;
+
+        try {
+            for (String input : inputs) {
+                if (pool == null) {
+                    status |= emit(process(input, in, options), options, totals, out, err);
+                    continue;
+                }
+
+                pending.add(pool.submit(() -> process(input, in, options)));
+                if (pending.size() >= options.workers * 4)
+                    status |= emit(pending.poll().get(), options, totals, out, err);
             }
-            System.out.println();
+
+            while (!pending.isEmpty())
+                status |= emit(pending.poll().get(), options, totals, out, err);
+        } catch (InterruptedException | ExecutionException e) {
+            err.println("cfg: " + e.getMessage());
+            status = 1;
+        } finally {
+            if (pool != null)
+                pool.shutdownNow();
         }
-        System.out.println();
 
-        System.out.println("Edges:");
-        for (Node<Integer> node : nodes) {
-            for (Node<Integer> child : node.children) {
-                System.out.println(node.val + " --> " + child.val);
+        if (options.isTimed)
+            printTimes(totals, inputs.size(), err);
+
+        return status;
+    }
+
+    // Returns null if help was asked for
+    private static Options parseOptions(String[] args) {
+        Options options = new Options();
+        boolean isOption = true;
+
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            String value = null;
+
+            // --name=value form
+            if (isOption && arg.startsWith("--") && arg.contains("=")) {
+                value = arg.substring(arg.indexOf('=') + 1);
+                arg = arg.substring(0, arg.indexOf('='));
+            }
+
+            if (!isOption || arg.equals(STDIN) || !arg.startsWith("-")) {
+                options.inputs.add(arg);
+            } else if (arg.equals("--")) {
+                isOption = false;
+            } else if (arg.equals("-h") || arg.equals("--help")) {
+                return null;
+            } else if (arg.equals("-f") || arg.equals("--format")) {
+                if (value == null)
+                    value = nextValue(args, ++i, arg);
+                try {
+                    options.format = Formats.valueOf(value.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("unknown format " + value);
+                }
+            } else if (arg.equals("-w") || arg.equals("--workers")) {
+                if (value == null)
+                    value = nextValue(args, ++i, arg);
+                try {
+                    options.workers = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    options.workers = 0;
+                }
+                if (options.workers < 1)
+                    throw new IllegalArgumentException("workers must be a positive integer");
+            } else if (arg.equals("-m") || arg.equals("--metrics-only")) {
+                options.isMetricsOnly = true;
+            } else if (arg.equals("-t") || arg.equals("--time")) {
+                options.isTimed = true;
+            } else if (arg.equals("--jfr")) {
+                options.isJfr = true;
+            } else if (arg.equals("--server")) {
+                if (value == null)
+                    value = nextValue(args, ++i, arg);
+                options.serverPort = parsePort(value);
+            } else if (arg.equals("--connect")) {
+                if (value == null)
+                    value = nextValue(args, ++i, arg);
+                options.connectPort = parsePort(value);
+            } else {
+                throw new IllegalArgumentException("unknown option " + arg);
             }
         }
+        return options;
+    }
+
+    private static String nextValue(String[] args, int i, String option) {
+        if (i >= args.length)
+            throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private static int parsePort(String value) {
+        int port;
+        try {
+            port = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (port < 0 || port > 65535)
+            throw new IllegalArgumentException("port must be 0 to 65535");
+        return port;
+    }
+
+    // Serve until killed
+    private static int serve(Options options, PrintStream out) throws IOException {
+        ParseServer server = new ParseServer(options.serverPort, options.workers,
+                ParseServer.DEFAULT_IN_FLIGHT);
+        out.println("cfg: listening on port " + server.getPort());
+        out.flush();
+        server.serve();
+        return 0;
+    }
+
+    // Pipeline inputs to a server and write its responses in input order
+    private static int connect(ArrayList<String> inputs, Options options, InputStream in,
+            PrintStream out, PrintStream err) throws IOException {
+        ArrayDeque<String> names = new ArrayDeque<>(); // Names of requests not yet answered
+        int status = 0;
+
+        try (ParseClient client = new ParseClient(options.connectPort)) {
+            for (String input : inputs) {
+                String name =
+                        input == null ? BUNDLED_INPUT : input.equals(STDIN) ? "<stdin>" : input;
+                byte[] bytes;
+                try {
+                    bytes = read(input, in);
+                } catch (IOException e) {
+                    err.println("cfg: " + name + ": " + e);
+                    status = 1;
+                    continue;
+                }
+
+                client.send(name, options.format, bytes);
+                names.add(name);
+                if (client.getOutstanding() >= ParseClient.DEFAULT_WINDOW)
+                    status |= receive(client, names.poll(), out, err);
+            }
+
+            while (!names.isEmpty())
+                status |= receive(client, names.poll(), out, err);
+        }
+        return status;
+    }
+
+    private static int receive(ParseClient client, String name, PrintStream out,
+            PrintStream err) throws IOException {
+        ParseProtocol.Response response = client.receive();
+        byte[] output = response.getOutput();
+
+        if (!response.isOk()) {
+            err.println("cfg: " + name + ": " + new String(output, StandardCharsets.UTF_8));
+            return 1;
+        }
+
+        out.write(output, 0, output.length);
+        out.flush();
+        return 0;
+    }
+
+    // Files named by input: itself, the files under a directory or the files matching a glob
+    private static ArrayList<String> expand(String input) throws IOException {
+        ArrayList<String> files = new ArrayList<>();
+
+        if (input.equals(STDIN)) {
+            files.add(input);
+            return files;
+        }
+
+        if (!input.matches(".*[*?\\[{].*")) {
+            Path path = Paths.get(input);
+            if (Files.isDirectory(path))
+                files.addAll(walk(path, null));
+            else
+                files.add(input); // Missing files are reported when read
+            return files;
+        }
+
+        // Walk from the longest leading part without glob characters
+        Path pattern = Paths.get(input);
+        Path base = pattern.getRoot();
+        for (Path part : pattern) {
+            if (part.toString().matches(".*[*?\\[{].*"))
+                break;
+            base = base == null ? part : base.resolve(part);
+        }
+        if (base == null)
+            base = Paths.get("");
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        if (Files.isDirectory(base))
+            files.addAll(walk(base, matcher));
+        return files;
+    }
+
+    private static ArrayList<String> walk(Path directory, PathMatcher matcher) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher == null || matcher.matches(path)).sorted()
+                    .map(Path::toString).collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    // Read, parse and format one input; null is the bundled input
+    private static Result process(String input, InputStream in, Options options) {
+        Result result = new Result();
+        result.name = input == null ? BUNDLED_INPUT : input.equals(STDIN) ? "<stdin>" : input;
+
+        long start = System.nanoTime();
+        byte[] bytes;
+        try {
+            bytes = read(input, in);
+        } catch (IOException e) {
+            result.error = e.toString();
+            return result;
+        }
+        result.bytes = bytes.length;
+
+        Parser parser = new Parser();
+        parser.addText(new String(bytes, StandardCharsets.UTF_8));
+        result.readNanos = System.nanoTime() - start;
+
+        if (options.isJfr)
+            parser.setMetrics(new TeeMetrics(result.metrics, new JfrMetrics()));
+        else
+            parser.setMetrics(result.metrics);
+
+        // Parse all input strings
+        parser.parse();
+
+        if (options.isMetricsOnly)
+            return result;
+
+        start = System.nanoTime();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            GraphWriter.write(options.format, result.name, parser.getNodes(),
+                    parser.getRootRegion(), parser.getDiagnostics(), output);
+        } catch (IOException e) {
+            result.error = e.toString();
+            return result;
+        }
+        result.output = output.toByteArray();
+        result.writeNanos = System.nanoTime() - start;
+
+        return result;
+    }
+
+    private static byte[] read(String input, InputStream in) throws IOException {
+        if (input == null) {
+            try (InputStream bundled =
+                    App.class.getClassLoader().getResourceAsStream(BUNDLED_INPUT)) {
+                if (bundled == null)
+                    throw new IOException(BUNDLED_INPUT + " is not bundled");
+                return bundled.readAllBytes();
+            }
+        }
+
+        if (input.equals(STDIN))
+            return in.readAllBytes();
+
+        return Files.readAllBytes(Paths.get(input));
+    }
+
+    // Write a result and add it to totals; returns 1 if it failed
+    private static int emit(Result result, Options options, Result totals, PrintStream out,
+            PrintStream err) {
+        if (result.error != null) {
+            err.println("cfg: " + result.name + ": " + result.error);
+            return 1;
+        }
+
+        if (options.isMetricsOnly) {
+            CountingMetrics metrics = result.metrics;
+            out.println(result.name + ": bytes=" + result.bytes + " lines="
+                    + metrics.getCount(Counters.LINES) + " tokens="
+                    + metrics.getCount(Counters.TOKENS) + " nodes="
+                    + metrics.getCount(Counters.NODES) + " edges="
+                    + metrics.getCount(Counters.EDGES) + " errors="
+                    + metrics.getCount(Counters.ERRORS));
+        } else {
+            out.write(result.output, 0, result.output.length);
+        }
+        out.flush();
+
+        totals.bytes += result.bytes;
+        totals.readNanos += result.readNanos;
+        totals.writeNanos += result.writeNanos;
+        totals.metrics.addAll(result.metrics);
+
+        return 0;
+    }
+
+    private static void printTimes(Result totals, int files, PrintStream err) {
+        CountingMetrics metrics = totals.metrics;
+        err.println("files:    " + files);
+        err.println(String.format("read:     %10.3f ms  %d bytes", totals.readNanos / 1e6,
+                totals.bytes));
+        err.println(String.format("tokenize: %10.3f ms  %d tokens, %.0f tokens/s",
+                metrics.getNanos(Phases.TOKENIZE) / 1e6, metrics.getCount(Counters.TOKENS),
+                metrics.getTokensPerSecond()));
+        err.println(String.format("build:    %10.3f ms  %d nodes, %d edges, %d errors",
+                metrics.getNanos(Phases.BUILD) / 1e6, metrics.getCount(Counters.NODES),
+                metrics.getCount(Counters.EDGES), metrics.getCount(Counters.ERRORS)));
+        err.println(String.format("write:    %10.3f ms", totals.writeNanos / 1e6));
     }
 }
@@ -0,0 +1,70 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Post-pass that merges straight line chains of nodes into maximal basic blocks
+ */
+public class BasicBlocks {
+    private BasicBlocks() {
+    }
+
+    // Merge every node with a single child into that child when the child has no other parent.
+    // Tokens are kept in order so each block still covers its full token range. A block takes
+    // the type of the node that ends it when that node branches, else the type of its first node.
+    // Returns the remaining nodes renumbered from 0; the first node stays the entry.
+    // Consumes nodes: they are merged and relinked in place, so nodes is not a usable graph
+    // afterwards.
+    public static ArrayList<Node<Integer>> coalesce(ArrayList<Node<Integer>> nodes) {
+        Set<Node<Integer>> merged = Collections.newSetFromMap(new IdentityHashMap<>());
+        Node<Integer> entry = nodes.isEmpty() ? null : nodes.get(0);
+
+        for (Node<Integer> node : nodes) {
+            if (merged.contains(node))
+                continue;
+
+            while (node.children.size() == 1) {
+                Node<Integer> child = node.children.get(0);
+
+                if (child == node || child == entry || child.parents.size() != 1)
+                    break;
+
+                mergeInto(node, child);
+                merged.add(child);
+            }
+        }
+
+        Graph.modified(nodes);
+        Graph blocks = new Graph(nodes.size() - merged.size());
+        for (Node<Integer> node : nodes) {
+            if (!merged.contains(node)) {
+                node.val = blocks.size();
+                blocks.add(node);
+            }
+        }
+        return blocks;
+    }
+
+    private static void mergeInto(Node<Integer> node, Node<Integer> child) {
+        // Shared tokens, ie the ';' copied into an if's end node, are only kept once
+        for (Token token : child.tokens) {
+            if (node.tokens.isEmpty() || node.tokens.get(node.tokens.size() - 1) != token)
+                node.tokens.add(token);
+        }
+
+        if (node.type == null || child.children.size() > 1)
+            node.type = child.type;
+
+        // Child's out edges now leave from node
+        node.children = child.children;
+        for (Node<Integer> grandChild : node.children) {
+            for (int i = 0; i < grandChild.parents.size(); ++i) {
+                if (grandChild.parents.get(i) == child)
+                    grandChild.parents.set(i, node);
+            }
+        }
+    }
+}
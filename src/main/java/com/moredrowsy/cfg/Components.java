@@ -0,0 +1,174 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Strongly connected components of a graph.
+ *
+ * Found by Tarjan's algorithm with explicit stacks instead of recursion, so deep graphs do not
+ * overflow the thread stack. Takes linear time in nodes and edges. Components are numbered in
+ * reverse topological order of the condensation, ie edges between components go from higher to
+ * lower numbers.
+ *
+ * Works on any GraphView, so also on an OffHeapGraph; members are kept as int arrays. Lists of
+ * Nodes are only made, on request, for a Graph.
+ */
+public class Components {
+    private GraphView graph;
+    private DepthFirst search; // Node numbers of a Graph, or null
+    private int[] components; // Component of each node index
+    private int[] memberStarts; // Start of each component's nodes in members
+    private int[] members; // Nodes of each component
+    private boolean[] isCyclic; // Component has an edge inside it
+    private ArrayList<ArrayList<Node<Integer>>> memberNodes; // Lists made by getNodes
+
+    // Edges to nodes not in nodes are ignored
+    public Components(ArrayList<Node<Integer>> nodes) {
+        this((GraphView) (nodes instanceof Graph ? (Graph) nodes : new Graph(nodes)));
+    }
+
+    // Needed since a Graph is both a list and a GraphView
+    public Components(Graph graph) {
+        this((GraphView) graph);
+    }
+
+    public Components(GraphView graph) {
+        this.graph = graph;
+        if (graph instanceof Graph)
+            this.search = ((Graph) graph).getDepthFirst();
+
+        findComponents();
+    }
+
+    public int size() {
+        return isCyclic.length;
+    }
+
+    // Component of node, or -1 if node is not in the graph
+    public int getComponent(Node<Integer> node) {
+        int index = search == null ? -1 : search.getIndex(node);
+        return index == -1 ? -1 : components[index];
+    }
+
+    public int getComponent(int node) {
+        return components[node];
+    }
+
+    public int getNodeCount(int component) {
+        return memberStarts[component + 1] - memberStarts[component];
+    }
+
+    // Node i of the component
+    public int getNode(int component, int i) {
+        return members[memberStarts[component] + i];
+    }
+
+    // Nodes of the component; the graph must be a Graph
+    public ArrayList<Node<Integer>> getNodes(int component) {
+        if (search == null)
+            throw new UnsupportedOperationException("Graph has no Nodes");
+
+        if (memberNodes == null)
+            memberNodes = new ArrayList<>(Collections.nCopies(size(), null));
+        if (memberNodes.get(component) == null) {
+            ArrayList<Node<Integer>> nodes = new ArrayList<>(getNodeCount(component));
+            for (int i = 0; i < getNodeCount(component); ++i)
+                nodes.add(search.getNodes().get(getNode(component, i)));
+            memberNodes.set(component, nodes);
+        }
+        return memberNodes.get(component);
+    }
+
+    // True if the component has a cycle, ie more than one node or a self loop
+    public boolean isCyclic(int component) {
+        return isCyclic[component];
+    }
+
+    private void findComponents() {
+        int n = graph.size();
+        int[] order = new int[n]; // DFS discovery number, or -1 if not visited
+        int[] low = new int[n]; // Lowest discovery number reachable through the DFS subtree
+        int[] next = new int[n]; // Next child to visit
+        int[] path = new int[n]; // DFS call stack
+        int[] stack = new int[n]; // Nodes not yet assigned a component
+        boolean[] isOnStack = new boolean[n];
+        int count = 0;
+        int top = 0;
+
+        components = new int[n];
+        members = new int[n];
+        int memberCount = 0;
+        int[] starts = new int[n + 1];
+        boolean[] cycles = new boolean[n];
+        int componentCount = 0;
+
+        for (int i = 0; i < n; ++i)
+            order[i] = -1;
+
+        for (int root = 0; root < n; ++root) {
+            if (order[root] != -1)
+                continue;
+
+            int depth = 0;
+            path[depth++] = root;
+            order[root] = low[root] = count++;
+            stack[top++] = root;
+            isOnStack[root] = true;
+
+            while (depth > 0) {
+                int v = path[depth - 1];
+                if (next[v] < graph.getSuccessorCount(v)) {
+                    int w = graph.getSuccessor(v, next[v]++);
+                    if (w == -1)
+                        continue;
+
+                    if (order[w] == -1) {
+                        order[w] = low[w] = count++;
+                        stack[top++] = w;
+                        isOnStack[w] = true;
+                        path[depth++] = w;
+                    } else if (isOnStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+
+                // All children done; return to the DFS parent
+                --depth;
+                if (depth > 0) {
+                    int u = path[depth - 1];
+                    low[u] = Math.min(low[u], low[v]);
+                }
+
+                if (low[v] != order[v])
+                    continue;
+
+                // v is the root of a component; its members are on the stack above it
+                int component = componentCount++;
+                int w;
+                do {
+                    w = stack[--top];
+                    isOnStack[w] = false;
+                    components[w] = component;
+                    members[memberCount++] = w;
+                } while (w != v);
+
+                starts[component + 1] = memberCount;
+                cycles[component] = memberCount - starts[component] > 1 || hasSelfLoop(v);
+            }
+        }
+
+        memberStarts = Arrays.copyOf(starts, componentCount + 1);
+        isCyclic = Arrays.copyOf(cycles, componentCount);
+    }
+
+    private boolean hasSelfLoop(int node) {
+        for (int i = 0; i < graph.getSuccessorCount(node); ++i) {
+            if (graph.getSuccessor(node, i) == node)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,828 @@
+package com.moredrowsy.cfg;
+
+import java.util.Arrays;
+
+/**
+ * Sparse conditional constant propagation over the SSA form of a graph.
+ *
+ * Each value is TOP (no executable definition seen yet), a CONSTANT or BOTTOM, and each edge is
+ * executable or not. The Wegman-Zadeck solver keeps a worklist of edges that became executable
+ * and a worklist of values that were lowered. A node's phis, statements and branch are evaluated
+ * when its first in edge becomes executable, and after that only when a value they use is lowered
+ * or, for phis, another in edge becomes executable. Code behind a constant condition is never
+ * evaluated, and a long else if chain is walked once instead of once per pass.
+ *
+ * Expressions are C integer expressions of literals, variables and operators, evaluated with
+ * 64 bit longs. They are compiled once to postfix code, so solving does no string work. Calls,
+ * fields, casts, floats, strings and nested assignments make a value BOTTOM, as do parameters and
+ * values on entry. Branch conditions are found as in DeadBranches.
+ */
+public class ConstantPropagation {
+    public static enum Lattice {
+        TOP, CONSTANT, BOTTOM
+    }
+
+    private static final byte TOP = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte BOTTOM = 2;
+
+    // Condition of a node that is not a statement
+    private static final int NOT_BRANCH = -1;
+    private static final int ALWAYS_TRUE = -2; // Empty for loop test
+    private static final int UNKNOWN = -3;
+
+    private static final int NOT_COMPILED = -1;
+
+    // Postfix operations, in the low 8 bits of an instruction; the rest is its argument
+    private static final int PUSH_LITERAL = 0;
+    private static final int PUSH_USE = 1;
+    private static final int NEGATE = 2;
+    private static final int NOT = 3;
+    private static final int COMPLEMENT = 4;
+    private static final int MULTIPLY = 5;
+    private static final int DIVIDE = 6;
+    private static final int REMAINDER = 7;
+    private static final int ADD = 8;
+    private static final int SUBTRACT = 9;
+    private static final int SHIFT_LEFT = 10;
+    private static final int SHIFT_RIGHT = 11;
+    private static final int LESS = 12;
+    private static final int LESS_EQUAL = 13;
+    private static final int GREATER = 14;
+    private static final int GREATER_EQUAL = 15;
+    private static final int EQUAL = 16;
+    private static final int NOT_EQUAL = 17;
+    private static final int AND = 18;
+    private static final int XOR = 19;
+    private static final int OR = 20;
+    private static final int LOGICAL_AND = 21;
+    private static final int LOGICAL_OR = 22;
+    private static final int SELECT = 23; // c ? a : b
+    private static final int OPEN = 24; // Only on the operator stack while compiling
+    private static final int QUESTION = 25;
+
+    // Binding strength of each operation; unary operations and ?: are right associative
+    private static final int[] PRECEDENCE = {0, 0, 14, 14, 14, 13, 13, 13, 12, 12, 11, 11, 10, 10,
+            10, 10, 9, 9, 8, 7, 6, 5, 4, 3, 0, 3};
+
+    private static final String[] BINARY_OPERATORS = {"*", "/", "%", "+", "-", "<<", ">>", "<",
+            "<=", ">", ">=", "==", "!=", "&", "^", "|", "&&", "||"};
+
+    private SSA ssa;
+    private DefUse defUse;
+    private boolean isSparse;
+    private int evaluations;
+
+    private int[] statementNodes; // Node of each statement
+    private int[] phiNodes; // Node of each phi
+    private int[] conditions; // Condition statement of each node, or NOT_BRANCH, ALWAYS_TRUE...
+    private int[] edgeTargets;
+
+    private int[] codeStart; // Postfix code of each statement, or NOT_COMPILED
+    private int[] codeEnd; // Empty code if the statement is not constant
+    private int[] code;
+    private int codeSize;
+    private long[] literals;
+    private int literalCount;
+
+    private int[] userStart; // Statements s and phis -1 - p using each value
+    private int[] users;
+
+    private byte[] states; // Lattice value of each value
+    private long[] constants; // Constant of each CONSTANT value
+    private boolean[] isNodeExecutable;
+    private boolean[] isEdgeExecutable;
+
+    private int[] flowWork; // Edges marked executable but not yet visited
+    private int flowSize;
+    private int[] ssaWork; // Values lowered but whose users are not yet visited
+    private int ssaSize;
+
+    private byte[] stackStates; // Evaluation stack
+    private long[] stackValues;
+    private byte resultState; // Result of the last evaluation
+    private long resultValue;
+
+    public ConstantPropagation(SSA ssa) {
+        this(ssa, true);
+    }
+
+    // Plain dataflow that visits every executable node in reverse postorder until nothing
+    // changes; it finds the same result and is kept to check and measure the sparse solver
+    static ConstantPropagation iterate(SSA ssa) {
+        return new ConstantPropagation(ssa, false);
+    }
+
+    private ConstantPropagation(SSA ssa, boolean isSparse) {
+        this.ssa = ssa;
+        this.defUse = ssa.getDefUse();
+        this.isSparse = isSparse;
+
+        int n = defUse.getNodes().size();
+        isNodeExecutable = new boolean[n];
+        isEdgeExecutable = new boolean[ssa.getEdgeCount()];
+        states = new byte[ssa.getValueCount()];
+        constants = new long[ssa.getValueCount()];
+        for (int x = 0; x < defUse.getVariableCount(); ++x)
+            states[x] = BOTTOM; // Value on entry
+
+        codeStart = new int[defUse.size()];
+        codeEnd = new int[defUse.size()];
+        Arrays.fill(codeStart, NOT_COMPILED);
+        code = new int[16];
+        literals = new long[16];
+        stackStates = new byte[8];
+        stackValues = new long[8];
+
+        index();
+        if (n == 0)
+            return;
+
+        if (isSparse) {
+            findUsers();
+            solveSparse();
+        } else {
+            solveIterative();
+        }
+    }
+
+    public SSA getSSA() {
+        return ssa;
+    }
+
+    public boolean isExecutable(int node) {
+        return isNodeExecutable[node];
+    }
+
+    // False for nodes of another graph
+    public boolean isExecutable(Node<Integer> node) {
+        int index = defUse.getIndex(node);
+        return index != -1 && isNodeExecutable[index];
+    }
+
+    // A region whose entry cannot execute is dead as a whole
+    public boolean isExecutable(Region region) {
+        return isExecutable(region.entry);
+    }
+
+    // Edges are numbered as in SSA.getInEdge and SSA.getOutEdge
+    public boolean isEdgeExecutable(int edge) {
+        return isEdgeExecutable[edge];
+    }
+
+    public Lattice getLattice(int value) {
+        return value == SSA.UNDEFINED ? Lattice.TOP : Lattice.values()[states[value]];
+    }
+
+    public boolean isConstant(int value) {
+        return value != SSA.UNDEFINED && states[value] == CONSTANT;
+    }
+
+    // Constant of value if isConstant(value), else 0
+    public long getConstant(int value) {
+        return isConstant(value) ? constants[value] : 0;
+    }
+
+    // Number of statement, condition and phi evaluations the solver did
+    public int getEvaluationCount() {
+        return evaluations;
+    }
+
+    private void index() {
+        int n = defUse.getNodes().size();
+        statementNodes = new int[defUse.size()];
+        conditions = new int[n];
+        for (int v = 0; v < n; ++v) {
+            for (int s = defUse.getFirst(v); s < defUse.getFirst(v + 1); ++s)
+                statementNodes[s] = v;
+            conditions[v] = findCondition(v);
+        }
+
+        phiNodes = new int[ssa.getPhiCount()];
+        for (int v = 0; v < n; ++v) {
+            for (int p = ssa.getFirstPhi(v); p < ssa.getFirstPhi(v + 1); ++p)
+                phiNodes[p] = v;
+        }
+
+        edgeTargets = new int[ssa.getEdgeCount()];
+        for (int v = 0; v < n; ++v) {
+            for (int i = 0; i < ssa.getPredecessorCount(v); ++i)
+                edgeTargets[ssa.getInEdge(v, i)] = v;
+        }
+    }
+
+    // The condition is the token inside the node's last parenthesis (if, while, do-while) or
+    // before its semicolon (for loop test)
+    private int findCondition(int v) {
+        Node<Integer> node = defUse.getNodes().get(v);
+        if (!DeadBranches.isBranch(node) || ssa.getSuccessorCount(v) != 2)
+            return NOT_BRANCH;
+
+        int start = 0;
+        for (int i = node.tokens.size() - 1; i >= 0; --i) {
+            if (node.tokens.get(i).sequence.equals("(")) {
+                start = i + 1;
+                break;
+            }
+        }
+
+        int end = start;
+        while (end < node.tokens.size() && !node.tokens.get(end).sequence.equals(")")
+                && !node.tokens.get(end).sequence.equals(";"))
+            ++end;
+
+        if (end == start)
+            return ALWAYS_TRUE;
+        if (end - start > 1)
+            return UNKNOWN;
+
+        Token token = node.tokens.get(start);
+        for (int s = defUse.getFirst(v); s < defUse.getFirst(v + 1); ++s) {
+            if (defUse.getToken(s) == token && defUse.getKind(s) == DefUse.Kinds.USE)
+                return s;
+        }
+        return UNKNOWN;
+    }
+
+    // Compile statement s when it is first evaluated, so code that cannot execute never is
+    private void compile(int s) {
+        DefUse.Kinds kind = defUse.getKind(s);
+        int depth = 0;
+        codeStart[s] = codeSize;
+
+        if (conditions[statementNodes[s]] == s || kind == DefUse.Kinds.ASSIGN)
+            depth = compile(s, defUse.getValue(s), 0);
+        else if (kind == DefUse.Kinds.COMPOUND_ASSIGN)
+            depth = compileCompound(s);
+        else if (kind == DefUse.Kinds.INCREMENT)
+            depth = compileIncrement(s);
+
+        if (depth == 0)
+            codeSize = codeStart[s];
+        codeEnd[s] = codeSize;
+
+        if (depth > stackStates.length) {
+            stackStates = new byte[depth];
+            stackValues = new long[depth];
+        }
+    }
+
+    // a op= value is a op (value)
+    private int compileCompound(int s) {
+        String operator = defUse.getOperator(s);
+        int operation = binaryOperation(operator.substring(0, operator.length() - 1));
+
+        emit(PUSH_USE, 0);
+        int depth = compile(s, defUse.getValue(s), 1);
+        if (operation == -1 || depth == 0)
+            return 0;
+
+        emit(operation, 0);
+        return depth + 1;
+    }
+
+    private int compileIncrement(int s) {
+        emit(PUSH_USE, 0);
+        emit(PUSH_LITERAL, literal(1));
+        emit(defUse.getOperator(s).equals("++") ? ADD : SUBTRACT, 0);
+        return 2;
+    }
+
+    // Shunting-yard from the text to postfix code appended to statement s, whose uses from
+    // firstUse on are the variables of the text in order. Returns the evaluation stack depth
+    // needed, or 0 with the code truncated if the text is not a constant expression.
+    private int compile(int s, String text, int firstUse) {
+        int mark = codeSize;
+        int[] operators = new int[8];
+        int top = 0;
+        int use = firstUse;
+        int depth = 0;
+        int maxDepth = 0;
+        boolean isOperand = true; // An operand is expected next
+        boolean isValid = text != null;
+
+        for (int i = 0; isValid && i < text.length();) {
+            char c = text.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '\'') {
+                // Operand
+                int end = i + 1;
+                if (c == '\'') {
+                    end = text.indexOf('\'', i + 1) + 1;
+                    isValid = end == i + 3 && text.charAt(i + 1) != '\\';
+                } else {
+                    while (end < text.length() && (Character.isLetterOrDigit(text.charAt(end))
+                            || text.charAt(end) == '_' || text.charAt(end) == '.'))
+                        ++end;
+                }
+                isValid = isValid && isOperand;
+                if (!isValid)
+                    break;
+
+                String word = text.substring(i, end);
+                if (c == '\'') {
+                    emit(PUSH_LITERAL, literal(word.charAt(1)));
+                } else if (word.equals("true") || word.equals("false")) {
+                    emit(PUSH_LITERAL, literal(word.equals("true") ? 1 : 0));
+                } else if (Character.isDigit(c)) {
+                    Long value = parseInteger(word);
+                    if (value == null)
+                        isValid = false;
+                    else
+                        emit(PUSH_LITERAL, literal(value));
+                } else {
+                    // A call or a keyword such as sizeof or a cast
+                    int next = end;
+                    while (next < text.length() && Character.isWhitespace(text.charAt(next)))
+                        ++next;
+                    if (DefUse.KEYWORDS.contains(word) || word.indexOf('.') != -1
+                            || next < text.length() && text.charAt(next) == '('
+                            || use >= defUse.getUseCount(s))
+                        isValid = false;
+                    else
+                        emit(PUSH_USE, use++);
+                }
+
+                maxDepth = Math.max(maxDepth, ++depth);
+                isOperand = false;
+                i = end;
+            } else if (c == '(') {
+                isValid = isOperand;
+                operators = grow(operators, top);
+                top = push(operators, top, OPEN);
+                ++i;
+            } else if (c == ')' || c == ':') {
+                // Close a parenthesis, or turn a question into a select
+                int opening = c == ')' ? OPEN : QUESTION;
+                isValid = !isOperand;
+                while (isValid && top > 0 && operators[top - 1] != opening) {
+                    isValid = operators[top - 1] != OPEN && operators[top - 1] != QUESTION;
+                    depth = emitOperator(operators[--top], depth);
+                }
+                isValid = isValid && top > 0;
+                if (isValid && c == ':') {
+                    operators[top - 1] = SELECT;
+                    isOperand = true;
+                } else {
+                    --top;
+                }
+                ++i;
+            } else {
+                // Operator
+                String operator = matchOperator(text, i);
+                if (isOperand && operator.equals("+")) {
+                    ++i; // Unary plus does nothing
+                    continue;
+                }
+
+                int operation = isOperand ? unaryOperation(operator) : binaryOperation(operator);
+                if (operator.equals("?"))
+                    operation = isOperand ? -1 : QUESTION;
+                if (operation == -1) {
+                    isValid = false;
+                    break;
+                }
+
+                // Pop what binds tighter, or as tight for left associative operations
+                while (!isOperand && top > 0 && operators[top - 1] != OPEN
+                        && operators[top - 1] != QUESTION
+                        && (PRECEDENCE[operators[top - 1]] > PRECEDENCE[operation]
+                                || PRECEDENCE[operators[top - 1]] == PRECEDENCE[operation]
+                                        && operation != QUESTION))
+                    depth = emitOperator(operators[--top], depth);
+
+                operators = grow(operators, top);
+                top = push(operators, top, operation);
+                isOperand = true;
+                i += operator.length();
+            }
+        }
+
+        while (isValid && top > 0) {
+            isValid = operators[top - 1] != OPEN && operators[top - 1] != QUESTION;
+            depth = emitOperator(operators[--top], depth);
+        }
+
+        // Every use must be an operand, or the use values would be read out of order
+        if (!isValid || isOperand || depth != 1 || use != defUse.getUseCount(s)) {
+            codeSize = mark;
+            return 0;
+        }
+        return maxDepth;
+    }
+
+    private static int push(int[] operators, int top, int operation) {
+        operators[top] = operation;
+        return top + 1;
+    }
+
+    private static int[] grow(int[] operators, int top) {
+        return top + 1 < operators.length ? operators : Arrays.copyOf(operators, top * 2 + 2);
+    }
+
+    // Longest operator at i; "=", "++", "--", "->" and others the compiler rejects included
+    private static String matchOperator(String text, int i) {
+        if (i + 1 < text.length()) {
+            String pair = text.substring(i, i + 2);
+            if (pair.equals("<<") || pair.equals(">>") || pair.equals("<=") || pair.equals(">=")
+                    || pair.equals("==") || pair.equals("!=") || pair.equals("&&")
+                    || pair.equals("||") || pair.equals("++") || pair.equals("--")
+                    || pair.equals("->"))
+                return pair;
+        }
+        return text.substring(i, i + 1);
+    }
+
+    private static int unaryOperation(String operator) {
+        if (operator.equals("-"))
+            return NEGATE;
+        if (operator.equals("!"))
+            return NOT;
+        if (operator.equals("~"))
+            return COMPLEMENT;
+        return -1;
+    }
+
+    private static int binaryOperation(String operator) {
+        for (int i = 0; i < BINARY_OPERATORS.length; ++i) {
+            if (BINARY_OPERATORS[i].equals(operator))
+                return MULTIPLY + i;
+        }
+        return -1;
+    }
+
+    // Decimal, octal or hex with an optional u or l suffix; null for floats and bad literals
+    private static Long parseInteger(String word) {
+        int end = word.length();
+        while (end > 1 && "uUlL".indexOf(word.charAt(end - 1)) != -1)
+            --end;
+
+        String digits = word.substring(0, end);
+        try {
+            if (digits.startsWith("0x") || digits.startsWith("0X"))
+                return Long.parseUnsignedLong(digits.substring(2), 16);
+            if (digits.length() > 1 && digits.startsWith("0"))
+                return Long.parseUnsignedLong(digits.substring(1), 8);
+            return Long.parseUnsignedLong(digits);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int emitOperator(int operation, int depth) {
+        emit(operation, 0);
+        if (operation == SELECT)
+            return depth - 2;
+        if (operation >= MULTIPLY)
+            return depth - 1;
+        return depth;
+    }
+
+    private void emit(int operation, int argument) {
+        if (codeSize == code.length)
+            code = Arrays.copyOf(code, code.length * 2);
+        code[codeSize++] = operation | argument << 8;
+    }
+
+    private int literal(long value) {
+        if (literalCount == literals.length)
+            literals = Arrays.copyOf(literals, literals.length * 2);
+        literals[literalCount] = value;
+        return literalCount++;
+    }
+
+    private void findUsers() {
+        userStart = new int[ssa.getValueCount() + 1];
+
+        for (int pass = 0; pass < 2; ++pass) {
+            for (int s = 0; s < defUse.size(); ++s) {
+                int node = statementNodes[s];
+                if (ssa.getStatementValue(s) == SSA.UNDEFINED && conditions[node] != s)
+                    continue;
+                for (int i = 0; i < defUse.getUseCount(s); ++i)
+                    addUser(pass, ssa.getUseValue(s, i), s);
+            }
+            for (int p = 0; p < ssa.getPhiCount(); ++p) {
+                for (int i = 0; i < ssa.getOperandCount(p); ++i)
+                    addUser(pass, ssa.getOperand(p, i), -1 - p);
+            }
+
+            if (pass == 0) {
+                for (int v = 0; v < ssa.getValueCount(); ++v)
+                    userStart[v + 1] += userStart[v];
+                users = new int[userStart[ssa.getValueCount()]];
+            } else {
+                // Filling moved each start to the next value's start
+                for (int v = ssa.getValueCount(); v > 0; --v)
+                    userStart[v] = userStart[v - 1];
+                userStart[0] = 0;
+            }
+        }
+    }
+
+    private void addUser(int pass, int value, int user) {
+        if (value == SSA.UNDEFINED)
+            return;
+        if (pass == 0)
+            ++userStart[value + 1];
+        else
+            users[userStart[value]++] = user;
+    }
+
+    private void solveSparse() {
+        flowWork = new int[isEdgeExecutable.length];
+        ssaWork = new int[2 * ssa.getValueCount()]; // A value is lowered at most twice
+
+        isNodeExecutable[0] = true;
+        visitNode(0);
+
+        // Users of lowered values go first, so a phi whose node is reached later is not
+        // evaluated once by the edge and again by the value
+        while (flowSize > 0 || ssaSize > 0) {
+            while (ssaSize > 0) {
+                int value = ssaWork[--ssaSize];
+                for (int k = userStart[value]; k < userStart[value + 1]; ++k) {
+                    int user = users[k];
+                    if (user < 0) {
+                        if (isNodeExecutable[phiNodes[-1 - user]])
+                            visitPhi(-1 - user);
+                    } else if (isNodeExecutable[statementNodes[user]]) {
+                        if (conditions[statementNodes[user]] == user)
+                            visitBranch(statementNodes[user]);
+                        else
+                            visitStatement(user);
+                    }
+                }
+            }
+
+            if (flowSize > 0) {
+                int w = edgeTargets[flowWork[--flowSize]];
+                if (isNodeExecutable[w]) {
+                    // Only the phis see which edge control came in on
+                    for (int p = ssa.getFirstPhi(w); p < ssa.getFirstPhi(w + 1); ++p)
+                        visitPhi(p);
+                } else {
+                    isNodeExecutable[w] = true;
+                    visitNode(w);
+                }
+            }
+        }
+    }
+
+    private void solveIterative() {
+        isNodeExecutable[0] = true;
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+            for (int v : ssa.getOrder()) {
+                if (isNodeExecutable[v])
+                    isChanged |= visitNode(v);
+            }
+        }
+    }
+
+    private boolean visitNode(int v) {
+        boolean isChanged = false;
+        for (int p = ssa.getFirstPhi(v); p < ssa.getFirstPhi(v + 1); ++p)
+            isChanged |= visitPhi(p);
+        for (int s = defUse.getFirst(v); s < defUse.getFirst(v + 1); ++s) {
+            if (conditions[v] != s)
+                isChanged |= visitStatement(s);
+        }
+        return visitBranch(v) | isChanged;
+    }
+
+    // Meet of the operands coming in on executable edges
+    private boolean visitPhi(int p) {
+        ++evaluations;
+        int node = phiNodes[p];
+        byte state = TOP;
+        long value = 0;
+
+        for (int i = 0; i < ssa.getOperandCount(p) && state != BOTTOM; ++i) {
+            int from = node == 0 ? i - 1 : i; // Operand 0 of the entry is the value on entry
+            if (from >= 0 && !isEdgeExecutable[ssa.getInEdge(node, from)])
+                continue;
+
+            int operand = ssa.getOperand(p, i);
+            byte operandState = operand == SSA.UNDEFINED ? TOP : states[operand];
+            if (operandState == TOP)
+                continue;
+            if (state == TOP) {
+                state = operandState;
+                value = constants[operand];
+            } else if (operandState == BOTTOM || constants[operand] != value) {
+                state = BOTTOM;
+            }
+        }
+        return lower(ssa.getPhiValue(p), state, value);
+    }
+
+    private boolean visitStatement(int s) {
+        int value = ssa.getStatementValue(s);
+        if (value == SSA.UNDEFINED)
+            return false;
+
+        evaluate(s);
+        return lower(value, resultState, resultValue);
+    }
+
+    // Mark the out edges the branch can take
+    private boolean visitBranch(int v) {
+        int condition = conditions[v];
+        if (condition == ALWAYS_TRUE)
+            return markEdge(ssa.getOutEdge(v, 0));
+
+        boolean isChanged = false;
+        if (condition >= 0) {
+            evaluate(condition);
+            if (resultState == TOP)
+                return false;
+            if (resultState == CONSTANT)
+                return markEdge(ssa.getOutEdge(v, resultValue != 0 ? 0 : 1));
+        }
+
+        for (int i = 0; i < ssa.getSuccessorCount(v); ++i)
+            isChanged |= markEdge(ssa.getOutEdge(v, i));
+        return isChanged;
+    }
+
+    private boolean markEdge(int edge) {
+        if (isEdgeExecutable[edge])
+            return false;
+
+        isEdgeExecutable[edge] = true;
+        if (isSparse)
+            flowWork[flowSize++] = edge;
+        else
+            isNodeExecutable[edgeTargets[edge]] = true;
+        return true;
+    }
+
+    // Meet value with the state and constant; values only go down, so each is lowered twice at
+    // most
+    private boolean lower(int value, byte state, long constant) {
+        byte old = states[value];
+        if (old == BOTTOM || state == TOP || old == state && constants[value] == constant)
+            return false;
+
+        states[value] = old == TOP ? state : BOTTOM;
+        constants[value] = constant;
+        if (isSparse)
+            ssaWork[ssaSize++] = value;
+        return true;
+    }
+
+    // Run the statement's code into resultState and resultValue
+    private void evaluate(int s) {
+        ++evaluations;
+        if (codeStart[s] == NOT_COMPILED)
+            compile(s);
+        if (codeEnd[s] == codeStart[s]) {
+            resultState = BOTTOM;
+            return;
+        }
+
+        int top = 0;
+        for (int k = codeStart[s]; k < codeEnd[s]; ++k) {
+            int operation = code[k] & 0xff;
+            int argument = code[k] >>> 8;
+
+            if (operation == PUSH_LITERAL) {
+                stackStates[top] = CONSTANT;
+                stackValues[top++] = literals[argument];
+            } else if (operation == PUSH_USE) {
+                int value = ssa.getUseValue(s, argument);
+                stackStates[top] = value == SSA.UNDEFINED ? BOTTOM : states[value];
+                stackValues[top++] = value == SSA.UNDEFINED ? 0 : constants[value];
+            } else if (operation < MULTIPLY) {
+                long a = stackValues[top - 1];
+                stackValues[top - 1] = operation == NEGATE ? -a : operation == NOT
+                        ? (a == 0 ? 1 : 0) : ~a;
+            } else if (operation == SELECT) {
+                top -= 2;
+                select(top - 1);
+            } else {
+                --top;
+                combine(operation, top - 1);
+            }
+        }
+
+        resultState = stackStates[0];
+        resultValue = stackValues[0];
+    }
+
+    // c ? a : b at i, i + 1 and i + 2 into i
+    private void select(int i) {
+        byte condition = stackStates[i];
+        if (condition == CONSTANT) {
+            int chosen = stackValues[i] != 0 ? i + 1 : i + 2;
+            stackStates[i] = stackStates[chosen];
+            stackValues[i] = stackValues[chosen];
+        } else if (condition == BOTTOM) {
+            // Either side may be taken
+            byte a = stackStates[i + 1];
+            byte b = stackStates[i + 2];
+            if (a == BOTTOM || b == BOTTOM
+                    || a == CONSTANT && b == CONSTANT && stackValues[i + 1] != stackValues[i + 2])
+                stackStates[i] = BOTTOM;
+            else if (a == TOP)
+                stackStates[i] = b;
+            else
+                stackStates[i] = a;
+            stackValues[i] = a == TOP ? stackValues[i + 2] : stackValues[i + 1];
+        }
+    }
+
+    // a op b at i and i + 1 into i
+    private void combine(int operation, int i) {
+        byte aState = stackStates[i];
+        byte bState = stackStates[i + 1];
+        long a = stackValues[i];
+        long b = stackValues[i + 1];
+
+        // A false left or right side decides && whatever the other is, and true decides ||
+        if (operation == LOGICAL_AND || operation == LOGICAL_OR) {
+            long decides = operation == LOGICAL_AND ? 0 : 1;
+            if (aState == CONSTANT && (a != 0 ? 1 : 0) == decides
+                    || bState == CONSTANT && (b != 0 ? 1 : 0) == decides) {
+                stackStates[i] = CONSTANT;
+                stackValues[i] = decides;
+                return;
+            }
+        }
+
+        if (aState == BOTTOM || bState == BOTTOM) {
+            stackStates[i] = BOTTOM;
+            return;
+        }
+        if (aState == TOP || bState == TOP) {
+            stackStates[i] = TOP;
+            return;
+        }
+
+        long value;
+        switch (operation) {
+            case MULTIPLY:
+                value = a * b;
+                break;
+            case DIVIDE:
+            case REMAINDER:
+                if (b == 0) {
+                    stackStates[i] = BOTTOM; // Undefined
+                    return;
+                }
+                value = operation == DIVIDE ? a / b : a % b;
+                break;
+            case ADD:
+                value = a + b;
+                break;
+            case SUBTRACT:
+                value = a - b;
+                break;
+            case SHIFT_LEFT:
+            case SHIFT_RIGHT:
+                if (b < 0 || b >= 64) {
+                    stackStates[i] = BOTTOM; // Undefined
+                    return;
+                }
+                value = operation == SHIFT_LEFT ? a << b : a >> b;
+                break;
+            case LESS:
+                value = a < b ? 1 : 0;
+                break;
+            case LESS_EQUAL:
+                value = a <= b ? 1 : 0;
+                break;
+            case GREATER:
+                value = a > b ? 1 : 0;
+                break;
+            case GREATER_EQUAL:
+                value = a >= b ? 1 : 0;
+                break;
+            case EQUAL:
+                value = a == b ? 1 : 0;
+                break;
+            case NOT_EQUAL:
+                value = a != b ? 1 : 0;
+                break;
+            case AND:
+                value = a & b;
+                break;
+            case XOR:
+                value = a ^ b;
+                break;
+            case OR:
+                value = a | b;
+                break;
+            default:
+                // Both sides are non zero for && and zero for ||
+                value = operation == LOGICAL_AND ? 1 : 0;
+                break;
+        }
+        stackValues[i] = value;
+    }
+}
@@ -0,0 +1,84 @@
+package com.moredrowsy.cfg;
+
+/**
+ * ParseMetrics that sums counters and phase times in memory
+ */
+public class CountingMetrics implements ParseMetrics {
+    private long[] counts; // Indexed by Counters ordinal
+    private long[] nanos; // Time spent in each phase, indexed by Phases ordinal
+    private long[] starts; // System.nanoTime() of each running phase
+    private long[] phaseCounts; // Number of times each phase ran
+
+    public CountingMetrics() {
+        counts = new long[Counters.values().length];
+        nanos = new long[Phases.values().length];
+        starts = new long[Phases.values().length];
+        phaseCounts = new long[Phases.values().length];
+    }
+
+    @Override
+    public void startPhase(Phases phase) {
+        starts[phase.ordinal()] = System.nanoTime();
+    }
+
+    @Override
+    public void endPhase(Phases phase) {
+        nanos[phase.ordinal()] += System.nanoTime() - starts[phase.ordinal()];
+        ++phaseCounts[phase.ordinal()];
+    }
+
+    @Override
+    public void add(Counters counter, long amount) {
+        counts[counter.ordinal()] += amount;
+    }
+
+    // Add the counters and phase times of other
+    public void addAll(CountingMetrics other) {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] += other.counts[i];
+        for (int i = 0; i < nanos.length; ++i) {
+            nanos[i] += other.nanos[i];
+            phaseCounts[i] += other.phaseCounts[i];
+        }
+    }
+
+    public long getCount(Counters counter) {
+        return counts[counter.ordinal()];
+    }
+
+    public long getNanos(Phases phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    public long getPhaseCount(Phases phase) {
+        return phaseCounts[phase.ordinal()];
+    }
+
+    // Tokens per second of tokenizing time, or 0 if nothing was timed
+    public double getTokensPerSecond() {
+        long time = getNanos(Phases.TOKENIZE);
+        if (time == 0)
+            return 0;
+        return getCount(Counters.TOKENS) * 1e9 / time;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] = 0;
+        for (int i = 0; i < nanos.length; ++i) {
+            nanos[i] = 0;
+            phaseCounts[i] = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        String str = "";
+        for (Phases phase : Phases.values())
+            str += phase + ": " + getNanos(phase) / 1000 + " us in " + getPhaseCount(phase)
+                    + " runs\n";
+        for (Counters counter : Counters.values())
+            str += counter + ": " + getCount(counter) + "\n";
+        return str + "tokens/s: " + (long) getTokensPerSecond();
+    }
+}
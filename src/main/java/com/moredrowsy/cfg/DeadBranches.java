@@ -0,0 +1,108 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+
+/**
+ * Post-pass that removes edges ruled out by constant conditions, ie if(false) or while(true), and
+ * then drops every node that is no longer reachable from the entry
+ */
+public class DeadBranches {
+    // Node types whose node tests a condition, indexed by DecompStates ordinal
+    private static final boolean[] isBranchType = new boolean[DecompStates.values().length];
+
+    static {
+        isBranchType[DecompStates.D0.ordinal()] = true; // if-then and for loop test
+        isBranchType[DecompStates.D1.ordinal()] = true; // if-then-else
+        isBranchType[DecompStates.D2.ordinal()] = true; // while
+        isBranchType[DecompStates.D3_END.ordinal()] = true; // do-while test
+    }
+
+    private DeadBranches() {
+    }
+
+    // Returns the reachable nodes renumbered from 0; the first node stays the entry.
+    // Consumes nodes: edges are removed and node values renumbered in place, and the dropped
+    // nodes keep edges into the result, so nodes is not a usable graph afterwards.
+    // Runs in time linear to the number of nodes, edges and condition tokens.
+    public static ArrayList<Node<Integer>> prune(ArrayList<Node<Integer>> nodes) {
+        if (nodes.isEmpty())
+            return new Graph();
+
+        // Remove infeasible edges; a branch's first child is its true edge, second its false edge
+        for (Node<Integer> node : nodes) {
+            if (!isBranch(node))
+                continue;
+
+            Boolean condition = evaluate(node);
+            if (condition != null) {
+                Node<Integer> child = node.children.remove(condition ? 1 : 0);
+                child.parents.remove(node);
+            }
+        }
+
+        // Keep nodes reachable from the entry and drop edges coming from unreachable ones
+        Graph.modified(nodes);
+        DepthFirst search = DepthFirst.of(nodes);
+        Graph live = new Graph(search.size());
+        for (int i = 0; i < nodes.size(); ++i) {
+            Node<Integer> node = nodes.get(i);
+            if (search.isReachable(i)) {
+                node.val = live.size();
+                node.parents.removeIf(parent -> search.getIndex(parent) == -1
+                        || !search.isReachable(search.getIndex(parent)));
+                live.add(node);
+            }
+        }
+        return live;
+    }
+
+    static boolean isBranch(Node<Integer> node) {
+        return node.children.size() == 2 && node.type != null && isBranchType[node.type.ordinal()];
+    }
+
+    // Value of the branch's condition or null if it is not a constant.
+    // The condition is inside the node's last parenthesis (if, while, do-while)
+    // or before its semicolon (for loop test, where an empty test is true).
+    private static Boolean evaluate(Node<Integer> node) {
+        ArrayList<Token> tokens = node.tokens;
+        int start = 0;
+
+        for (int i = tokens.size() - 1; i >= 0; --i) {
+            if (tokens.get(i).sequence.equals("(")) {
+                start = i + 1;
+                break;
+            }
+        }
+
+        StringBuilder condition = new StringBuilder();
+        for (int i = start; i < tokens.size(); ++i) {
+            String sequence = tokens.get(i).sequence;
+            if (sequence.equals(")") || sequence.equals(";"))
+                break;
+            condition.append(sequence);
+        }
+
+        String text = condition.toString().replaceAll("\\s+", "");
+        if (text.isEmpty())
+            return true;
+
+        return evaluate(text);
+    }
+
+    private static Boolean evaluate(String condition) {
+        if (condition.equals("true"))
+            return true;
+        if (condition.equals("false"))
+            return false;
+
+        if (condition.startsWith("!")) {
+            Boolean value = evaluate(condition.substring(1));
+            return value == null ? null : !value;
+        }
+
+        if (condition.matches("[0-9]+"))
+            return !condition.matches("0+");
+
+        return null;
+    }
+}
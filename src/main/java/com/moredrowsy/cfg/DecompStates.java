@@ -0,0 +1,14 @@
+package com.moredrowsy.cfg;
+
+/**
+ * Node types of the control flow graph
+ */
+public enum DecompStates {
+    C1, C1_END, // CASE
+    D0, D0_END, // IF-THEN
+    D1, D1_END, // IF-THEN-ELSE
+    D2, D2_END, // WHILE-DO
+    D3, D3_END, // DO-WHILE
+    P1, P1_END, // STATEMENT
+    ERROR // Tokens skipped by error recovery
+}
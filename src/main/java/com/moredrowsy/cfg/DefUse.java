@@ -0,0 +1,343 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Variables defined and used by the statements of a graph.
+ *
+ * Each STATEMENT or FUNCTION token of a node is a statement: an assignment (a = b, int a = b,
+ * a += b), an increment or decrement, a parameter of a function definition, or an expression
+ * that only uses variables such as a condition or a call. Only plain variables are tracked; an
+ * assignment through a pointer, array or field only uses the variables in it, and comma
+ * expressions are not split. Statements are numbered in node order and then token order, and
+ * are stored in arrays with variables interned as ints.
+ */
+public class DefUse {
+    public static enum Kinds {
+        USE, // Expression, ie a condition, call or return value
+        ASSIGN, // a = value
+        COMPOUND_ASSIGN, // a op= value, which also uses a
+        INCREMENT, // ++a, a++, --a or a--, which also uses a
+        PARAMETER // Parameter of a function definition, defined with no value
+    }
+
+    public static final int NO_VARIABLE = -1;
+
+    private static final Kinds[] KINDS = Kinds.values();
+
+    static final HashSet<String> KEYWORDS = new HashSet<>(List.of("if", "else", "while", "do",
+            "for", "break", "continue", "return", "goto", "void", "char", "short", "int", "long",
+            "float", "double", "signed", "unsigned", "const", "static", "struct", "sizeof",
+            "true", "false"));
+
+    // String or char literal, number, or identifier
+    private static final Pattern WORD = Pattern.compile("\"(?:[^\"\\\\]|\\\\.)*\""
+            + "|'(?:[^'\\\\]|\\\\.)*'|[0-9][A-Za-z0-9_.]*|[A-Za-z_][A-Za-z0-9_]*");
+    // Assigned variable, after its type if it is declared
+    private static final Pattern TARGET = Pattern.compile(
+            "\\s*(?:(?:[A-Za-z_]\\w*\\s*)+\\*+\\s*|(?:[A-Za-z_]\\w*\\s+)*)([A-Za-z_]\\w*)\\s*");
+    private static final Pattern DECLARATION =
+            Pattern.compile("\\s*(?:[A-Za-z_]\\w*\\s+)+\\**\\s*[A-Za-z_]\\w*\\s*");
+    private static final Pattern INCREMENT = Pattern.compile(
+            "\\s*(?:(\\+\\+|--)\\s*([A-Za-z_]\\w*)|([A-Za-z_]\\w*)\\s*(\\+\\+|--))\\s*");
+    private static final Pattern DEFINITION =
+            Pattern.compile("\\s*(?:[A-Za-z_]\\w*[\\s*]+)+[A-Za-z_]\\w*\\s*\\(");
+
+    private ArrayList<Node<Integer>> nodes;
+    private IdentityHashMap<Node<Integer>, Integer> indices;
+    private HashMap<String, Integer> variableIds;
+    private ArrayList<String> variables;
+
+    private int size; // Number of statements
+    private int[] nodeStart; // First statement of each node index; nodeStart[n] is size
+    private Token[] tokens;
+    private byte[] kinds;
+    private int[] defs; // Variable defined or NO_VARIABLE
+    private int[] operatorStart; // Offset of the operator in the token, or -1
+    private int[] valueStart; // Offset of the expression in the token, or -1
+    private int[] useStart; // First use of each statement; useStart[size] is the use count
+    private int[] uses; // Variables used, in text order
+
+    public DefUse(ArrayList<Node<Integer>> nodes) {
+        this.nodes = nodes;
+        this.indices = new IdentityHashMap<>();
+        this.variableIds = new HashMap<>();
+        this.variables = new ArrayList<>();
+
+        int capacity = nodes.size() + 1;
+        nodeStart = new int[nodes.size() + 1];
+        tokens = new Token[capacity];
+        kinds = new byte[capacity];
+        defs = new int[capacity];
+        operatorStart = new int[capacity];
+        valueStart = new int[capacity];
+        useStart = new int[capacity + 1];
+        uses = new int[capacity];
+
+        for (int i = 0; i < nodes.size(); ++i) {
+            indices.put(nodes.get(i), i);
+            nodeStart[i] = size;
+
+            int previous = TokenStates.INIT_START.ordinal();
+            for (Token token : nodes.get(i).tokens) {
+                boolean isCode = token.type == TokenStates.STATEMENT.ordinal()
+                        || token.type == TokenStates.FUNCTION.ordinal();
+
+                // Target of a goto is a label, not a variable
+                if (isCode && previous != TokenStates.GOTO.ordinal())
+                    addStatements(token);
+                previous = token.type;
+            }
+        }
+        nodeStart[nodes.size()] = size;
+    }
+
+    public ArrayList<Node<Integer>> getNodes() {
+        return nodes;
+    }
+
+    // Index of node in getNodes(), or -1
+    public int getIndex(Node<Integer> node) {
+        Integer index = indices.get(node);
+        return index == null ? -1 : index;
+    }
+
+    public int getVariableCount() {
+        return variables.size();
+    }
+
+    public String getVariable(int variable) {
+        return variables.get(variable);
+    }
+
+    // Variable named name, or NO_VARIABLE
+    public int getVariable(String name) {
+        Integer variable = variableIds.get(name);
+        return variable == null ? NO_VARIABLE : variable;
+    }
+
+    // Number of statements
+    public int size() {
+        return size;
+    }
+
+    // First statement of the node at index; its statements end at getFirst(index + 1)
+    public int getFirst(int index) {
+        return nodeStart[index];
+    }
+
+    public Token getToken(int statement) {
+        return tokens[statement];
+    }
+
+    public Kinds getKind(int statement) {
+        return KINDS[kinds[statement]];
+    }
+
+    public int getDef(int statement) {
+        return defs[statement];
+    }
+
+    public int getUseCount(int statement) {
+        return useStart[statement + 1] - useStart[statement];
+    }
+
+    public int getUse(int statement, int i) {
+        return uses[useStart[statement] + i];
+    }
+
+    // Assignment operator such as "=" or "+=", "++" or "--"; null for USE and PARAMETER
+    public String getOperator(int statement) {
+        int start = operatorStart[statement];
+        if (start == -1)
+            return null;
+
+        String sequence = tokens[statement].sequence;
+        if (kinds[statement] == Kinds.INCREMENT.ordinal())
+            return sequence.substring(start, start + 2);
+        return sequence.substring(start, valueStart[statement]);
+    }
+
+    // Value assigned, or the whole expression of a USE; null otherwise
+    public String getValue(int statement) {
+        if (valueStart[statement] == -1)
+            return null;
+        return tokens[statement].sequence.substring(valueStart[statement]).trim();
+    }
+
+    private void addStatements(Token token) {
+        String text = token.sequence;
+        int assign = findAssignment(text);
+
+        if (assign != -1) {
+            int start = assign;
+            while (start > 0 && "+-*/%&|^<>".indexOf(text.charAt(start - 1)) != -1)
+                --start;
+
+            boolean isCompound = start != assign;
+            int statement = newStatement(token, isCompound ? Kinds.COMPOUND_ASSIGN : Kinds.ASSIGN);
+            operatorStart[statement] = start;
+            valueStart[statement] = assign + 1;
+
+            Matcher target = TARGET.matcher(text.substring(0, start));
+            if (target.matches() && !KEYWORDS.contains(target.group(1))) {
+                defs[statement] = intern(target.group(1));
+                if (isCompound)
+                    addUse(defs[statement]);
+            } else {
+                addUses(text, 0, start);
+            }
+            addUses(text, assign + 1, text.length());
+            return;
+        }
+
+        Matcher increment = INCREMENT.matcher(text);
+        if (increment.matches()) {
+            boolean isPrefix = increment.group(1) != null;
+            int variable = intern(increment.group(isPrefix ? 2 : 3));
+
+            int statement = newStatement(token, Kinds.INCREMENT);
+            defs[statement] = variable;
+            operatorStart[statement] = increment.start(isPrefix ? 1 : 4);
+            addUse(variable);
+            return;
+        }
+
+        if (DEFINITION.matcher(text).lookingAt() && text.lastIndexOf(')') > text.indexOf('(')) {
+            // Function definition, so each parameter is defined on entry
+            String parameters = text.substring(text.indexOf('(') + 1, text.lastIndexOf(')'));
+            for (String parameter : parameters.split(",")) {
+                Matcher target = TARGET.matcher(parameter);
+                if (target.matches() && target.start(1) > target.start()
+                        && !KEYWORDS.contains(target.group(1))
+                        && !parameter.substring(0, target.start(1)).trim().isEmpty()) {
+                    int statement = newStatement(token, Kinds.PARAMETER);
+                    defs[statement] = intern(target.group(1));
+                }
+            }
+            return;
+        }
+
+        // Declaration without a value defines nothing
+        if (DECLARATION.matcher(text).matches())
+            return;
+
+        int statement = newStatement(token, Kinds.USE);
+        valueStart[statement] = 0;
+        addUses(text, 0, text.length());
+    }
+
+    // Index of the '=' of an assignment outside parentheses and brackets, or -1
+    private static int findAssignment(String text) {
+        int depth = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '(' || c == '[') {
+                ++depth;
+            } else if (c == ')' || c == ']') {
+                --depth;
+            } else if (c == '"' || c == '\'') {
+                i = skipLiteral(text, i);
+            } else if (c == '=' && depth == 0) {
+                if (i + 1 < text.length() && text.charAt(i + 1) == '=') {
+                    ++i; // ==
+                    continue;
+                }
+
+                char previous = i > 0 ? text.charAt(i - 1) : ' ';
+                boolean isShift = i > 1 && text.charAt(i - 2) == previous;
+                if (previous == '!' || previous == '='
+                        || ((previous == '<' || previous == '>') && !isShift))
+                    continue; // !=, <= or >=
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipLiteral(String text, int start) {
+        char quote = text.charAt(start);
+        for (int i = start + 1; i < text.length(); ++i) {
+            if (text.charAt(i) == '\\')
+                ++i;
+            else if (text.charAt(i) == quote)
+                return i;
+        }
+        return text.length();
+    }
+
+    private int newStatement(Token token, Kinds kind) {
+        if (size + 1 >= tokens.length) {
+            int capacity = tokens.length * 2;
+            tokens = Arrays.copyOf(tokens, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            defs = Arrays.copyOf(defs, capacity);
+            operatorStart = Arrays.copyOf(operatorStart, capacity);
+            valueStart = Arrays.copyOf(valueStart, capacity);
+            useStart = Arrays.copyOf(useStart, capacity + 1);
+        }
+
+        int statement = size++;
+        tokens[statement] = token;
+        kinds[statement] = (byte) kind.ordinal();
+        defs[statement] = NO_VARIABLE;
+        operatorStart[statement] = -1;
+        valueStart[statement] = -1;
+        useStart[statement + 1] = useStart[statement];
+        return statement;
+    }
+
+    // Use of the last statement
+    private void addUse(int variable) {
+        if (useStart[size] == uses.length)
+            uses = Arrays.copyOf(uses, uses.length * 2);
+        uses[useStart[size]++] = variable;
+    }
+
+    // Variables in text from start to end, leaving out calls, fields, keywords and literals
+    private void addUses(String text, int start, int end) {
+        Matcher word = WORD.matcher(text).region(start, end);
+        while (word.find()) {
+            char first = word.group().charAt(0);
+            if (first != '_' && !Character.isLetter(first))
+                continue;
+            if (KEYWORDS.contains(word.group()))
+                continue;
+            if (nextChar(text, word.end()) == '(' || isMember(text, word.start()))
+                continue;
+            addUse(intern(word.group()));
+        }
+    }
+
+    private static char nextChar(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i)))
+            ++i;
+        return i < text.length() ? text.charAt(i) : ' ';
+    }
+
+    // True if the word at start follows '.' or "->"
+    private static boolean isMember(String text, int start) {
+        int i = start - 1;
+        while (i >= 0 && Character.isWhitespace(text.charAt(i)))
+            --i;
+        return i >= 0 && (text.charAt(i) == '.' || text.charAt(i) == '>' && i > 0
+                && text.charAt(i - 1) == '-');
+    }
+
+    private int intern(String name) {
+        Integer variable = variableIds.get(name);
+        if (variable == null) {
+            variable = variables.size();
+            variableIds.put(name, variable);
+            variables.add(name);
+        }
+        return variable;
+    }
+}
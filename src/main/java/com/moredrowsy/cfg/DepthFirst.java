@@ -0,0 +1,195 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Depth first search of a graph from its entry, kept as int arrays.
+ *
+ * Nodes are numbered by their index in the graph's list. The search visits children in order
+ * with an explicit stack, so it matches a recursive DFS without its stack depth. It records the
+ * preorder, postorder and reverse postorder of the nodes reachable from the entry, each node's
+ * preorder and postorder numbers, and which edges are back edges, ie go to a node still on the
+ * stack. Successors of every node are kept in children order, with -1 for a child that is not in
+ * the graph.
+ *
+ * A Graph caches its search until it changes, so analyses of the same graph share one; see
+ * of(nodes). The arrays returned are shared and must not be changed.
+ */
+public class DepthFirst {
+    private ArrayList<Node<Integer>> nodes;
+    private long version; // Graph version the search was done on
+    private IdentityHashMap<Node<Integer>, Integer> indices;
+
+    private int[] succStart; // Successors of each node, in children order
+    private int[] succs;
+    private boolean[] isBackEdge; // Parallel to succs
+
+    private int[] preorder; // Reachable nodes
+    private int[] postorder;
+    private int[] reversePostorder;
+    private int[] preorderNumbers; // Position of each node in preorder, or -1 if not reachable
+    private int[] postorderNumbers;
+    private int backEdgeCount;
+
+    // First node is the entry
+    DepthFirst(ArrayList<Node<Integer>> nodes, long version) {
+        this.nodes = nodes;
+        this.version = version;
+        this.indices = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); ++i)
+            indices.put(nodes.get(i), i);
+
+        buildSuccessors();
+        search();
+    }
+
+    // Search of nodes, the cached one if nodes is a Graph that has not changed since
+    public static DepthFirst of(ArrayList<Node<Integer>> nodes) {
+        if (nodes instanceof Graph)
+            return ((Graph) nodes).getDepthFirst();
+        return new DepthFirst(nodes, 0);
+    }
+
+    public ArrayList<Node<Integer>> getNodes() {
+        return nodes;
+    }
+
+    // Graph.getVersion() when the search was done
+    public long getVersion() {
+        return version;
+    }
+
+    // Index of node in getNodes(), or -1
+    public int getIndex(Node<Integer> node) {
+        Integer index = indices.get(node);
+        return index == null ? -1 : index;
+    }
+
+    // Number of nodes reachable from the entry
+    public int size() {
+        return preorder.length;
+    }
+
+    public int[] getPreorder() {
+        return preorder;
+    }
+
+    public int[] getPostorder() {
+        return postorder;
+    }
+
+    // Entry first; every edge that is not a back edge goes forward in it
+    public int[] getReversePostorder() {
+        return reversePostorder;
+    }
+
+    public boolean isReachable(int node) {
+        return preorderNumbers[node] != -1;
+    }
+
+    public int getPreorderNumber(int node) {
+        return preorderNumbers[node];
+    }
+
+    public int getPostorderNumber(int node) {
+        return postorderNumbers[node];
+    }
+
+    // True if a is b or a DFS tree ancestor of b; both must be reachable
+    public boolean isAncestor(int a, int b) {
+        return preorderNumbers[a] <= preorderNumbers[b]
+                && postorderNumbers[b] <= postorderNumbers[a];
+    }
+
+    public int getSuccessorCount(int node) {
+        return succStart[node + 1] - succStart[node];
+    }
+
+    // Index of the node's child i, or -1 if it is not in the graph
+    public int getSuccessor(int node, int i) {
+        return succs[succStart[node] + i];
+    }
+
+    // True if the edge to the node's child i is a back edge; false if node is not reachable
+    public boolean isBackEdge(int node, int i) {
+        return isBackEdge[succStart[node] + i];
+    }
+
+    public int getBackEdgeCount() {
+        return backEdgeCount;
+    }
+
+    private void buildSuccessors() {
+        int n = nodes.size();
+        succStart = new int[n + 1];
+        for (int v = 0; v < n; ++v)
+            succStart[v + 1] = succStart[v] + nodes.get(v).children.size();
+
+        succs = new int[succStart[n]];
+        isBackEdge = new boolean[succStart[n]];
+        for (int v = 0; v < n; ++v) {
+            ArrayList<Node<Integer>> children = nodes.get(v).children;
+            for (int i = 0; i < children.size(); ++i)
+                succs[succStart[v] + i] = getIndex(children.get(i));
+        }
+    }
+
+    private void search() {
+        int n = nodes.size();
+        preorderNumbers = new int[n];
+        postorderNumbers = new int[n];
+        for (int v = 0; v < n; ++v) {
+            preorderNumbers[v] = -1;
+            postorderNumbers[v] = -1;
+        }
+
+        int[] pre = new int[n];
+        int[] post = new int[n];
+        int[] stack = new int[n];
+        int[] next = new int[n]; // Next successor edge to visit on the stack
+        int preCount = 0;
+        int postCount = 0;
+        int depth = 0;
+
+        if (n > 0) {
+            stack[depth] = 0;
+            next[depth++] = succStart[0];
+            preorderNumbers[0] = preCount;
+            pre[preCount++] = 0;
+        }
+
+        while (depth > 0) {
+            int v = stack[depth - 1];
+            if (next[depth - 1] < succStart[v + 1]) {
+                int k = next[depth - 1]++;
+                int w = succs[k];
+                if (w == -1)
+                    continue;
+
+                if (preorderNumbers[w] == -1) {
+                    preorderNumbers[w] = preCount;
+                    pre[preCount++] = w;
+                    stack[depth] = w;
+                    next[depth++] = succStart[w];
+                } else if (postorderNumbers[w] == -1) {
+                    // Still on the stack
+                    isBackEdge[k] = true;
+                    ++backEdgeCount;
+                }
+            } else {
+                postorderNumbers[v] = postCount;
+                post[postCount++] = v;
+                --depth;
+            }
+        }
+
+        preorder = new int[preCount];
+        postorder = new int[postCount];
+        reversePostorder = new int[postCount];
+        System.arraycopy(pre, 0, preorder, 0, preCount);
+        System.arraycopy(post, 0, postorder, 0, postCount);
+        for (int i = 0; i < postCount; ++i)
+            reversePostorder[i] = post[postCount - 1 - i];
+    }
+}
@@ -0,0 +1,119 @@
+package com.moredrowsy.cfg;
+
+import java.util.EnumSet;
+
+/**
+ * Bounded collector of parse errors.
+ *
+ * Errors are stored in preallocated arrays so reporting never allocates or prints. Once the
+ * buffer is full, further errors are only counted.
+ */
+public class Diagnostics {
+    public static enum ErrorCodes {
+        UNEXPECTED_TOKEN, // Token is not accepted by the current FSM state
+        UNEXPECTED_END, // Tokens ran out before the construct was complete
+        INVALID_CHARACTER, // Tokenizer found no rule matching the input
+        STEP_LIMIT, // Tokenizer used up the steps of its TokenizeBudget
+        TIME_LIMIT // Tokenizer used up the time of its TokenizeBudget
+    }
+
+    public static enum Recoveries {
+        SKIP_TO_SYNC, // Tokens up to the next ';' or balanced '}' were put in an error node
+        END_CONSTRUCT, // Construct was left unfinished and parsing went on after it
+        STOP_PARSE // Nothing more was parsed
+    }
+
+    public static final int NO_TOKEN = -1; // Actual token type when there is no token
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private int[] codes;
+    private int[] lines; // Token.index of the error
+    private int[] expected; // Bit mask of accepted TokenStates ordinals
+    private int[] actual; // TokenStates ordinal found or NO_TOKEN
+    private int[] recoveries;
+    private int size; // Number of errors stored
+    private int count; // Number of errors reported, including those not stored
+
+    public Diagnostics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Diagnostics(int capacity) {
+        codes = new int[capacity];
+        lines = new int[capacity];
+        expected = new int[capacity];
+        actual = new int[capacity];
+        recoveries = new int[capacity];
+        size = 0;
+        count = 0;
+    }
+
+    void report(ErrorCodes code, int line, int expectedMask, int actualType, Recoveries recovery) {
+        ++count;
+
+        if (size < codes.length) {
+            codes[size] = code.ordinal();
+            lines[size] = line;
+            expected[size] = expectedMask;
+            actual[size] = actualType;
+            recoveries[size] = recovery.ordinal();
+            ++size;
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        count = 0;
+    }
+
+    public boolean hasErrors() {
+        return count > 0;
+    }
+
+    // Number of errors reported
+    public int getCount() {
+        return count;
+    }
+
+    // Number of errors stored, at most the capacity
+    public int size() {
+        return size;
+    }
+
+    public ErrorCodes getCode(int i) {
+        return ErrorCodes.values()[codes[i]];
+    }
+
+    public int getLine(int i) {
+        return lines[i];
+    }
+
+    public EnumSet<TokenStates> getExpected(int i) {
+        EnumSet<TokenStates> set = EnumSet.noneOf(TokenStates.class);
+        for (TokenStates state : TokenStates.values()) {
+            if ((expected[i] & (1 << state.ordinal())) != 0)
+                set.add(state);
+        }
+        return set;
+    }
+
+    // Token type found or null if there was no token
+    public TokenStates getActual(int i) {
+        if (actual[i] == NO_TOKEN)
+            return null;
+        return TokenStates.values()[actual[i]];
+    }
+
+    public Recoveries getRecovery(int i) {
+        return Recoveries.values()[recoveries[i]];
+    }
+
+    public String toString(int i) {
+        String str = "line " + getLine(i) + ": " + getCode(i);
+
+        if (getCode(i) == ErrorCodes.UNEXPECTED_TOKEN || getCode(i) == ErrorCodes.UNEXPECTED_END)
+            str += ", expected " + getExpected(i) + " but found " + getActual(i);
+
+        return str + ", " + getRecovery(i);
+    }
+}
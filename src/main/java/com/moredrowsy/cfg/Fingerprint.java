@@ -0,0 +1,181 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Structural hash of a graph for finding clones.
+ *
+ * Uses Weisfeiler-Lehman refinement: each node starts with a label from its DecompStates type, and
+ * optionally its token text, and each round relabels it from its label, its children's labels in
+ * order (a branch's first child is its true edge) and the multiset of its parents' labels.
+ * Rounds stop when they no longer split nodes apart, or after maxRounds. The fingerprint hashes
+ * the multiset of final labels, so it does not depend on how nodes are numbered or ordered, and
+ * graphs with equal shapes have equal fingerprints. Unequal shapes collide rarely. Each round
+ * takes linear time, so functions can be bucketed by fingerprint in one pass.
+ */
+public class Fingerprint {
+    public static enum Modes {
+        SHAPE, // Node types and edges only
+        TEXT, // And token text with runs of whitespace collapsed
+        NORMALIZED_TEXT // And token text with identifiers renamed in order and numbers zeroed
+    }
+
+    public static final int DEFAULT_ROUNDS = 5;
+
+    private static final Pattern WORD = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*|[0-9][0-9.]*");
+
+    private Fingerprint() {
+    }
+
+    public static long of(ArrayList<Node<Integer>> nodes) {
+        return of(nodes, Modes.SHAPE, DEFAULT_ROUNDS);
+    }
+
+    // Edges to nodes not in nodes are ignored
+    public static long of(ArrayList<Node<Integer>> nodes, Modes mode, int maxRounds) {
+        IdentityHashMap<Node<Integer>, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.size(); ++i)
+            indices.put(nodes.get(i), i);
+
+        int n = nodes.size();
+        long[] labels = new long[n];
+        HashMap<String, String> names = new HashMap<>(); // Identifier renames for the graph
+
+        for (int v = 0; v < n; ++v) {
+            Node<Integer> node = nodes.get(v);
+            long label = node.type == null ? 0 : node.type.ordinal() + 1;
+
+            if (mode != Modes.SHAPE) {
+                for (Token token : node.tokens)
+                    label = combine(label, hash(text(token.sequence, mode, names)));
+            }
+            labels[v] = mix(label);
+        }
+
+        int edges = 0;
+        int classes = countDistinct(labels);
+        long[] next = new long[n];
+
+        for (int round = 0; round < maxRounds; ++round) {
+            for (int v = 0; v < n; ++v)
+                next[v] = 0;
+
+            // Parents, as an order independent sum
+            for (int v = 0; v < n; ++v) {
+                for (Node<Integer> child : nodes.get(v).children) {
+                    Integer w = indices.get(child);
+                    if (w != null)
+                        next[w] += mix(labels[v]);
+                }
+            }
+
+            edges = 0;
+            for (int v = 0; v < n; ++v) {
+                long label = combine(labels[v], next[v]);
+                for (Node<Integer> child : nodes.get(v).children) {
+                    Integer w = indices.get(child);
+                    if (w != null) {
+                        label = combine(label, labels[w]);
+                        ++edges;
+                    }
+                }
+                next[v] = label;
+            }
+
+            long[] previous = labels;
+            labels = next;
+            next = previous;
+
+            int count = countDistinct(labels);
+            if (count == classes)
+                break;
+            classes = count;
+        }
+
+        long sum = 0;
+        for (long label : labels)
+            sum += mix(label);
+        return combine(combine(sum, n), edges);
+    }
+
+    public static long of(Region region) {
+        return of(region, Modes.SHAPE, DEFAULT_ROUNDS);
+    }
+
+    // Fingerprint of the region's nodes on their own, ie edges leaving the region are ignored
+    public static long of(Region region, Modes mode, int maxRounds) {
+        ArrayList<Node<Integer>> nodes = new ArrayList<>();
+        ArrayList<Region> stack = new ArrayList<>();
+        stack.add(region);
+
+        while (!stack.isEmpty()) {
+            Region top = stack.remove(stack.size() - 1);
+            nodes.addAll(top.nodes);
+            stack.addAll(top.children);
+        }
+
+        // Creation order, so identifiers are renamed in source order
+        nodes.sort((a, b) -> Integer.compare(a.val, b.val));
+        return of(nodes, mode, maxRounds);
+    }
+
+    public static String toHex(long fingerprint) {
+        return String.format("%016x", fingerprint);
+    }
+
+    private static String text(String sequence, Modes mode, HashMap<String, String> names) {
+        String text = sequence.trim().replaceAll("\\s+", " ");
+        if (mode != Modes.NORMALIZED_TEXT)
+            return text;
+
+        StringBuilder normalized = new StringBuilder();
+        Matcher matcher = WORD.matcher(text);
+        int end = 0;
+        while (matcher.find()) {
+            String word = matcher.group();
+            normalized.append(text, end, matcher.start());
+
+            if (Character.isDigit(word.charAt(0)))
+                normalized.append('0');
+            else if (DefUse.KEYWORDS.contains(word))
+                normalized.append(word);
+            else
+                normalized.append(names.computeIfAbsent(word, key -> "v" + names.size()));
+            end = matcher.end();
+        }
+        return normalized.append(text, end, text.length()).toString();
+    }
+
+    private static int countDistinct(long[] labels) {
+        HashSet<Long> distinct = new HashSet<>();
+        for (long label : labels)
+            distinct.add(label);
+        return distinct.size();
+    }
+
+    // 64 bit FNV-1a
+    private static long hash(String str) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < str.length(); ++i) {
+            hash ^= str.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long combine(long hash, long value) {
+        return mix(hash * 0x9e3779b97f4a7c15L + value);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,194 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Functions of a parser's strings, found by a brace depth scan, whose graphs are built the first
+ * time they are asked for and then kept.
+ *
+ * A function is a FUNCTION token followed by a { outside any braces, up to the matching }. The
+ * scan tokenizes only lines outside braces and the lines where braces close. Lines inside are
+ * scanned for braces with a StructuralIndex, which gives the same depths as brace tokens since
+ * no other token can hold a brace. A function's graph is the one Parser.iterator gives for it.
+ */
+public class FunctionIndex {
+    private Parser parser;
+    private ArrayList<String> strings;
+    private StructuralIndex structure;
+
+    // Each function's header, and its first and last token as a line and a token of that line
+    private ArrayList<String> headers;
+    private int[] startLines;
+    private int[] startTokens;
+    private int[] endLines;
+    private int[] endTokens;
+    private ArrayList<ArrayList<Node<Integer>>> graphs; // Null until built
+
+    // Scan state
+    private int depth; // Braces open at the current token
+    private boolean isInFunction;
+    private int headerLine; // FUNCTION token just before the current token at depth 0, or -1
+    private int headerToken;
+    private String header;
+
+    FunctionIndex(Parser parser) {
+        this.parser = parser;
+        this.strings = parser.getStrings();
+        this.structure = new StructuralIndex("{}");
+
+        this.headers = new ArrayList<>();
+        this.startLines = new int[16];
+        this.startTokens = new int[16];
+        this.endLines = new int[16];
+        this.endTokens = new int[16];
+        this.graphs = new ArrayList<>();
+        scan();
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    // FUNCTION token of the function, eg "int main()"
+    public String getHeader(int function) {
+        return headers.get(function);
+    }
+
+    // Index of the first function with the header, or -1
+    public int indexOf(String header) {
+        return headers.indexOf(header);
+    }
+
+    // Line index of the function's header, from 1 like Token.index
+    public int getStartLine(int function) {
+        return startLines[function] + 1;
+    }
+
+    // Line index of the function's closing brace
+    public int getEndLine(int function) {
+        return endLines[function] + 1;
+    }
+
+    // Graph of the function, built on first use, or null if it failed to tokenize
+    public ArrayList<Node<Integer>> getNodes(int function) {
+        if (graphs.get(function) == null) {
+            parser.startTokenizeBudget();
+            graphs.set(function, parser.parseConstruct(getTokens(function)));
+        }
+        return graphs.get(function);
+    }
+
+    // Tokens of the function, header to closing brace
+    LinkedList<Token> getTokens(int function) {
+        LinkedList<Token> tokens = new LinkedList<>();
+        ArrayList<Token> lineTokens = new ArrayList<>();
+
+        for (int line = startLines[function]; line <= endLines[function]; ++line) {
+            lineTokens.clear();
+            if (!tokenize(line, lineTokens))
+                return new LinkedList<>();
+
+            int first = line == startLines[function] ? startTokens[function] : 0;
+            int last = line == endLines[function] ? endTokens[function] : lineTokens.size() - 1;
+            for (int i = first; i <= last && i < lineTokens.size(); ++i)
+                tokens.add(lineTokens.get(i));
+        }
+        return tokens;
+    }
+
+    private void scan() {
+        ArrayList<Token> tokens = new ArrayList<>();
+        headerLine = -1;
+        parser.startTokenizeBudget();
+
+        for (int line = 0; line < strings.size(); ++line) {
+            int lineDepth = depth;
+            if (depth > 0 && !closesBraces(strings.get(line)))
+                continue;
+
+            tokens.clear();
+            if (!tokenize(line, tokens))
+                break;
+
+            depth = lineDepth;
+            scanTokens(line, tokens);
+        }
+
+        // A function not closed by the end runs to the end
+        if (isInFunction)
+            end(strings.size() - 1, Integer.MAX_VALUE);
+    }
+
+    // Follow the depth through str's braces; true if it gets to 0
+    private boolean closesBraces(String str) {
+        structure.index(str, 0, str.length());
+        for (int i = 0; i < structure.size(); ++i) {
+            depth += str.charAt(structure.get(i)) == '{' ? 1 : -1;
+            if (depth == 0)
+                return true;
+        }
+        return false;
+    }
+
+    private void scanTokens(int line, ArrayList<Token> tokens) {
+        for (int i = 0; i < tokens.size(); ++i) {
+            int type = tokens.get(i).type;
+
+            if (depth == 0) {
+                if (type == TokenStates.BRACE_OPEN.ordinal() && headerLine != -1)
+                    start();
+
+                if (type == TokenStates.FUNCTION.ordinal()) {
+                    headerLine = line;
+                    headerToken = i;
+                    header = tokens.get(i).sequence;
+                } else {
+                    headerLine = -1;
+                }
+            }
+
+            if (type == TokenStates.BRACE_OPEN.ordinal()) {
+                ++depth;
+            } else if (type == TokenStates.BRACE_CLOSE.ordinal() && depth > 0) {
+                --depth;
+                if (depth == 0 && isInFunction)
+                    end(line, i);
+            }
+        }
+    }
+
+    private void start() {
+        int function = headers.size();
+        if (function == startLines.length) {
+            startLines = Arrays.copyOf(startLines, function * 2);
+            startTokens = Arrays.copyOf(startTokens, function * 2);
+            endLines = Arrays.copyOf(endLines, function * 2);
+            endTokens = Arrays.copyOf(endTokens, function * 2);
+        }
+
+        headers.add(header);
+        graphs.add(null);
+        startLines[function] = headerLine;
+        startTokens[function] = headerToken;
+        isInFunction = true;
+    }
+
+    private void end(int line, int token) {
+        endLines[headers.size() - 1] = line;
+        endTokens[headers.size() - 1] = token;
+        isInFunction = false;
+    }
+
+    // Tokenize the line into tokens; false and reported if it fails
+    private boolean tokenize(int line, ArrayList<Token> tokens) {
+        try {
+            parser.getTokenizer().tokenize(strings.get(line), line + 1, tokens);
+            return true;
+        } catch (TokenizerException e) {
+            parser.reportTokenizerError(e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Nodes of a graph, entry first, that caches its DepthFirst search.
+ *
+ * The search is done on first use and kept until the graph changes. Adding or removing nodes is
+ * seen through the list's modification count. Edges are Node fields, so code that changes them
+ * goes through addEdge and removeEdge, or calls modified after changing children directly.
+ *
+ * As a GraphView, successors come from the cached search and children outside the graph are -1.
+ */
+public class Graph extends ArrayList<Node<Integer>> implements GraphView {
+    private static final long serialVersionUID = 1L;
+
+    private int edits; // Number of edge changes
+    private transient DepthFirst depthFirst;
+
+    public Graph() {
+    }
+
+    public Graph(int capacity) {
+        super(capacity);
+    }
+
+    public Graph(Collection<? extends Node<Integer>> nodes) {
+        super(nodes);
+    }
+
+    // Stamp that is different after any change to the nodes or edges
+    public long getVersion() {
+        return (long) edits << 32 | modCount & 0xffffffffL;
+    }
+
+    // Replacing a node changes edges but not the modification count
+    @Override
+    public Node<Integer> set(int index, Node<Integer> node) {
+        ++edits;
+        return super.set(index, node);
+    }
+
+    public void addEdge(Node<Integer> from, Node<Integer> to) {
+        from.children.add(to);
+        to.parents.add(from);
+        ++edits;
+    }
+
+    // Remove the edge to from's child i and return that child
+    public Node<Integer> removeEdge(Node<Integer> from, int i) {
+        Node<Integer> to = from.children.remove(i);
+        to.parents.remove(from);
+        ++edits;
+        return to;
+    }
+
+    public void modified() {
+        ++edits;
+    }
+
+    // Mark nodes modified if it is a Graph
+    static void modified(ArrayList<Node<Integer>> nodes) {
+        if (nodes instanceof Graph)
+            ((Graph) nodes).modified();
+    }
+
+    public DepthFirst getDepthFirst() {
+        long version = getVersion();
+        if (depthFirst == null || depthFirst.getVersion() != version)
+            depthFirst = new DepthFirst(this, version);
+        return depthFirst;
+    }
+
+    @Override
+    public DecompStates getType(int node) {
+        return get(node).type;
+    }
+
+    @Override
+    public int getSuccessorCount(int node) {
+        return getDepthFirst().getSuccessorCount(node);
+    }
+
+    @Override
+    public int getSuccessor(int node, int i) {
+        return getDepthFirst().getSuccessor(node, i);
+    }
+
+    @Override
+    public int getPredecessorCount(int node) {
+        return get(node).parents.size();
+    }
+
+    @Override
+    public int getPredecessor(int node, int i) {
+        return getDepthFirst().getIndex(get(node).parents.get(i));
+    }
+
+    @Override
+    public int getTokenCount(int node) {
+        return get(node).tokens.size();
+    }
+
+    @Override
+    public int getTokenLine(int node, int i) {
+        return get(node).tokens.get(i).index;
+    }
+
+    @Override
+    public int getTokenType(int node, int i) {
+        return get(node).tokens.get(i).type;
+    }
+
+    @Override
+    public String getTokenSequence(int node, int i) {
+        return get(node).tokens.get(i).sequence;
+    }
+}
@@ -0,0 +1,145 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ParseListener that builds the Node graph and its program structure tree
+ */
+public class GraphBuilder implements ParseListener {
+    private Graph nodes; // List of tree Nodes built from parse events
+    private int offset; // Index of the first node of the current parse
+    private ArrayList<Region> openRegions; // Regions whose parent is not complete yet
+    private ArrayList<Region> innermostRegions; // Innermost region of each node of the parse
+    private ArrayList<Integer> jumps; // From and to of each jump edge of the parse
+    private Region rootRegion;
+
+    GraphBuilder() {
+        nodes = new Graph();
+        offset = 0;
+        openRegions = new ArrayList<>();
+        innermostRegions = new ArrayList<>();
+        jumps = new ArrayList<>();
+        rootRegion = null;
+    }
+
+    public Graph getNodes() {
+        return nodes;
+    }
+
+    // Root of the last parse or null if nothing was built
+    public Node<Integer> getRoot() {
+        if (offset < nodes.size())
+            return nodes.get(offset);
+        return null;
+    }
+
+    // Program structure tree of the last parse or null if nothing was parsed
+    public Region getRootRegion() {
+        return rootRegion;
+    }
+
+    @Override
+    public void startParse() {
+        offset = nodes.size();
+        openRegions.clear();
+        innermostRegions.clear();
+        jumps.clear();
+        rootRegion = null;
+    }
+
+    @Override
+    public void endParse() {
+        Node<Integer> entry = getRoot();
+        Node<Integer> exit = entry == null ? null : nodes.get(nodes.size() - 1);
+        rootRegion = new Region(DecompStates.P1, entry, exit);
+        adopt(rootRegion, 0, nodes.size() - offset - 1, openRegions);
+
+        // Jumps leave the regions that hold their source but not their target, and enter the
+        // regions that hold their target but not their source
+        for (int i = 0; i < jumps.size(); i += 2) {
+            Node<Integer> from = getNode(jumps.get(i));
+            Node<Integer> to = getNode(jumps.get(i + 1));
+
+            for (Region region = innermostRegions.get(from.val); !region.contains(to);
+                    region = region.parent)
+                region.isSingleExit = false;
+            for (Region region = innermostRegions.get(to.val); !region.contains(from);
+                    region = region.parent)
+                region.isSingleEntry = false;
+        }
+
+        openRegions.clear();
+        innermostRegions.clear();
+        jumps.clear();
+    }
+
+    @Override
+    public void enterNode(int node, DecompStates type, Token token) {
+        Node<Integer> new_node = new Node<Integer>(node, type);
+        new_node.tokens.add(token);
+        nodes.add(new_node);
+        innermostRegions.add(null);
+    }
+
+    @Override
+    public void nodeToken(int node, Token token) {
+        getNode(node).tokens.add(token);
+    }
+
+    @Override
+    public void nodeType(int node, DecompStates type) {
+        getNode(node).type = type;
+    }
+
+    @Override
+    public void edge(int from, int to, EdgeTypes type) {
+        Node<Integer> parent = getNode(from);
+        Node<Integer> child = getNode(to);
+        nodes.addEdge(parent, child);
+
+        if (type == EdgeTypes.JUMP) {
+            jumps.add(from);
+            jumps.add(to);
+        }
+    }
+
+    @Override
+    public void region(int entry, int exit, DecompStates type) {
+        Region region = new Region(type, getNode(entry), getNode(exit));
+
+        // Open regions inside entry..exit are the new region's children
+        int first = openRegions.size();
+        while (first > 0 && openRegions.get(first - 1).entry.val >= entry)
+            --first;
+
+        List<Region> children = openRegions.subList(first, openRegions.size());
+        adopt(region, entry, exit, children);
+        children.clear();
+        openRegions.add(region);
+    }
+
+    // Make children the children of region and give region the nodes from first to last that
+    // are not in a child. Skipping over the children keeps the whole tree linear to build.
+    private void adopt(Region region, int first, int last, List<Region> children) {
+        int node = first;
+        for (Region child : children) {
+            child.parent = region;
+            region.children.add(child);
+            addNodes(region, node, child.entry.val - 1);
+            node = child.exit.val + 1;
+        }
+        addNodes(region, node, last);
+    }
+
+    private void addNodes(Region region, int first, int last) {
+        for (int node = first; node <= last; ++node) {
+            region.nodes.add(getNode(node));
+            innermostRegions.set(node, region);
+        }
+    }
+
+    private Node<Integer> getNode(int node) {
+        return nodes.get(offset + node);
+    }
+}
@@ -0,0 +1,33 @@
+package com.moredrowsy.cfg;
+
+/**
+ * Read-only graph with nodes numbered from 0, entry first.
+ *
+ * Graph is the Node backed implementation and OffHeapGraph keeps everything outside the heap.
+ * Successors are in children order, so a branch's successor 0 is its true edge.
+ */
+public interface GraphView {
+    // Number of nodes
+    int size();
+
+    // Node type, or null
+    DecompStates getType(int node);
+
+    int getSuccessorCount(int node);
+
+    int getSuccessor(int node, int i);
+
+    int getPredecessorCount(int node);
+
+    int getPredecessor(int node, int i);
+
+    int getTokenCount(int node);
+
+    // Line of the node's token i
+    int getTokenLine(int node, int i);
+
+    // TokenStates ordinal of the node's token i
+    int getTokenType(int node, int i);
+
+    String getTokenSequence(int node, int i);
+}
@@ -0,0 +1,235 @@
+package com.moredrowsy.cfg;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Writes a parsed graph and its errors in one of the output formats.
+ *
+ * BINARY is a DataOutputStream record: name (UTF), node count (int), then for each node its type
+ * ordinal or -1 (byte), token count (int) and tokens as line (int) and sequence (UTF); then edge
+ * count (int) and edges as from, to (int, int); then error count (int) and errors as code ordinal
+ * (byte) and line (int); then the graph's Fingerprint (long), region count (int) and regions as
+ * entry, exit (int, int), type ordinal (byte) and Fingerprint (long).
+ *
+ * Every format carries the SHAPE Fingerprint of the graph and of each top level region, ie each
+ * function, loop or if outside a function, so clones can be bucketed without reparsing.
+ */
+public class GraphWriter {
+    public static enum Formats {
+        TEXT, // Vertices and edges listing
+        DOT, // Graphviz digraph
+        JSON, // One JSON object per line
+        BINARY
+    }
+
+    private GraphWriter() {
+    }
+
+    // Node values are the node ids, ie nodes of a single parse
+    public static void write(Formats format, String name, ArrayList<Node<Integer>> nodes,
+            Diagnostics diagnostics, OutputStream out) throws IOException {
+        write(format, name, nodes, null, diagnostics, out);
+    }
+
+    // root is the parse's program structure tree, or null to write no regions
+    public static void write(Formats format, String name, ArrayList<Node<Integer>> nodes,
+            Region root, Diagnostics diagnostics, OutputStream out) throws IOException {
+        ArrayList<Region> regions = new ArrayList<>();
+        if (root != null)
+            regions.addAll(root.children);
+
+        if (format == Formats.BINARY) {
+            writeBinary(name, nodes, regions, diagnostics, out);
+            return;
+        }
+
+        PrintStream print = new PrintStream(out, false, StandardCharsets.UTF_8.name());
+        if (format == Formats.TEXT)
+            writeText(name, nodes, regions, diagnostics, print);
+        else if (format == Formats.DOT)
+            writeDot(name, nodes, regions, diagnostics, print);
+        else
+            writeJson(name, nodes, regions, diagnostics, print);
+        print.flush();
+    }
+
+    private static void writeText(String name, ArrayList<Node<Integer>> nodes,
+            ArrayList<Region> regions, Diagnostics diagnostics, PrintStream out) {
+        out.println("File: " + name);
+        out.println("Fingerprint: " + Fingerprint.toHex(Fingerprint.of(nodes)));
+        for (Region region : regions)
+            out.println("Region: " + region.entry.val + ".." + region.exit.val + " "
+                    + region.type + " " + Fingerprint.toHex(Fingerprint.of(region)));
+
+        // Print parse errors
+        for (int i = 0; i < diagnostics.size(); ++i) {
+            out.println(diagnostics.toString(i));
+        }
+
+        out.println("\nVertices:");
+        for (Node<Integer> node : nodes) {
+            out.println("Node: " + node.val);
+            out.println("Type: " + node.type);
+            for (Token token : node.tokens) {
+                out.println(token.sequence);
+            }
+            out.println();
+        }
+
+        out.println("Edges:");
+        for (Node<Integer> node : nodes) {
+            for (Node<Integer> child : node.children) {
+                out.println(node.val + " --> " + child.val);
+            }
+        }
+        out.println();
+    }
+
+    private static void writeDot(String name, ArrayList<Node<Integer>> nodes,
+            ArrayList<Region> regions, Diagnostics diagnostics, PrintStream out) {
+        out.println("digraph " + quote(name) + " {");
+        out.println("    // fingerprint " + Fingerprint.toHex(Fingerprint.of(nodes)));
+        for (Region region : regions)
+            out.println("    // region n" + region.entry.val + " n" + region.exit.val + " "
+                    + region.type + " " + Fingerprint.toHex(Fingerprint.of(region)));
+        out.println("    node [shape=box];");
+
+        for (Node<Integer> node : nodes) {
+            StringBuilder label = new StringBuilder(node.val + ": " + node.type);
+            for (Token token : node.tokens)
+                label.append("\n").append(token.sequence);
+            out.println("    n" + node.val + " [label=" + quote(label.toString()) + "];");
+        }
+
+        for (Node<Integer> node : nodes) {
+            for (Node<Integer> child : node.children)
+                out.println("    n" + node.val + " -> n" + child.val + ";");
+        }
+
+        for (int i = 0; i < diagnostics.size(); ++i)
+            out.println("    // " + diagnostics.toString(i));
+        out.println("}");
+    }
+
+    private static void writeJson(String name, ArrayList<Node<Integer>> nodes,
+            ArrayList<Region> regions, Diagnostics diagnostics, PrintStream out) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"file\":").append(quote(name)).append(",\"nodes\":[");
+
+        for (int i = 0; i < nodes.size(); ++i) {
+            Node<Integer> node = nodes.get(i);
+            if (i > 0)
+                json.append(',');
+            json.append("{\"id\":").append(node.val).append(",\"type\":");
+            json.append(node.type == null ? "null" : quote(node.type.toString()));
+            json.append(",\"tokens\":[");
+            for (int j = 0; j < node.tokens.size(); ++j) {
+                if (j > 0)
+                    json.append(',');
+                json.append(quote(node.tokens.get(j).sequence));
+            }
+            json.append("]}");
+        }
+
+        json.append("],\"edges\":[");
+        boolean isFirst = true;
+        for (Node<Integer> node : nodes) {
+            for (Node<Integer> child : node.children) {
+                if (!isFirst)
+                    json.append(',');
+                json.append('[').append(node.val).append(',').append(child.val).append(']');
+                isFirst = false;
+            }
+        }
+
+        json.append("],\"errors\":[");
+        for (int i = 0; i < diagnostics.size(); ++i) {
+            if (i > 0)
+                json.append(',');
+            json.append(quote(diagnostics.toString(i)));
+        }
+
+        json.append("],\"fingerprint\":");
+        json.append(quote(Fingerprint.toHex(Fingerprint.of(nodes)))).append(",\"regions\":[");
+        for (int i = 0; i < regions.size(); ++i) {
+            Region region = regions.get(i);
+            if (i > 0)
+                json.append(',');
+            json.append("{\"entry\":").append(region.entry.val);
+            json.append(",\"exit\":").append(region.exit.val);
+            json.append(",\"type\":").append(quote(region.type.toString()));
+            json.append(",\"fingerprint\":");
+            json.append(quote(Fingerprint.toHex(Fingerprint.of(region)))).append('}');
+        }
+        json.append("]}");
+
+        out.println(json);
+    }
+
+    private static void writeBinary(String name, ArrayList<Node<Integer>> nodes,
+            ArrayList<Region> regions, Diagnostics diagnostics, OutputStream stream)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeUTF(name);
+
+        int edges = 0;
+        out.writeInt(nodes.size());
+        for (Node<Integer> node : nodes) {
+            out.writeByte(node.type == null ? -1 : node.type.ordinal());
+            out.writeInt(node.tokens.size());
+            for (Token token : node.tokens) {
+                out.writeInt(token.index);
+                out.writeUTF(token.sequence);
+            }
+            edges += node.children.size();
+        }
+
+        out.writeInt(edges);
+        for (Node<Integer> node : nodes) {
+            for (Node<Integer> child : node.children) {
+                out.writeInt(node.val);
+                out.writeInt(child.val);
+            }
+        }
+
+        out.writeInt(diagnostics.size());
+        for (int i = 0; i < diagnostics.size(); ++i) {
+            out.writeByte(diagnostics.getCode(i).ordinal());
+            out.writeInt(diagnostics.getLine(i));
+        }
+
+        out.writeLong(Fingerprint.of(nodes));
+        out.writeInt(regions.size());
+        for (Region region : regions) {
+            out.writeInt(region.entry.val);
+            out.writeInt(region.exit.val);
+            out.writeByte(region.type.ordinal());
+            out.writeLong(Fingerprint.of(region));
+        }
+        out.flush();
+    }
+
+    // Quoted and escaped for both JSON and DOT
+    private static String quote(String str) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\')
+                quoted.append('\\').append(c);
+            else if (c == '\n')
+                quoted.append("\\n");
+            else if (c == '\t')
+                quoted.append("\\t");
+            else if (c < 0x20)
+                quoted.append(String.format("\\u%04x", (int) c));
+            else
+                quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+}
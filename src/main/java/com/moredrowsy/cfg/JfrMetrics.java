@@ -0,0 +1,98 @@
+package com.moredrowsy.cfg;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * ParseMetrics that commits a Java Flight Recorder event for each phase.
+ *
+ * Events are only filled in when a recording has them enabled, ie with
+ * -XX:StartFlightRecording or jcmd JFR.start.
+ */
+public class JfrMetrics implements ParseMetrics {
+    @Name("com.moredrowsy.cfg.Tokenize")
+    @Label("Tokenize")
+    @Category("CFG Parser")
+    @Description("Regex tokenizing of input strings")
+    static class TokenizeEvent extends Event {
+        @Label("Lines")
+        long lines;
+
+        @Label("Characters")
+        long characters;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Errors")
+        long errors;
+    }
+
+    @Name("com.moredrowsy.cfg.Build")
+    @Label("Build")
+    @Category("CFG Parser")
+    @Description("Finite state machine walk building the graph")
+    static class BuildEvent extends Event {
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Edges")
+        long edges;
+
+        @Label("Errors")
+        long errors;
+    }
+
+    private TokenizeEvent tokenizeEvent;
+    private BuildEvent buildEvent;
+    private long[] counts; // Counters of the running phases, indexed by Counters ordinal
+
+    public JfrMetrics() {
+        counts = new long[Counters.values().length];
+    }
+
+    @Override
+    public void startPhase(Phases phase) {
+        if (phase == Phases.TOKENIZE) {
+            tokenizeEvent = new TokenizeEvent();
+            tokenizeEvent.begin();
+        } else {
+            buildEvent = new BuildEvent();
+            buildEvent.begin();
+        }
+    }
+
+    @Override
+    public void endPhase(Phases phase) {
+        if (phase == Phases.TOKENIZE) {
+            tokenizeEvent.end();
+            tokenizeEvent.lines = take(Counters.LINES);
+            tokenizeEvent.characters = take(Counters.CHARACTERS);
+            tokenizeEvent.tokens = take(Counters.TOKENS);
+            tokenizeEvent.errors = take(Counters.ERRORS);
+            if (tokenizeEvent.shouldCommit())
+                tokenizeEvent.commit();
+        } else {
+            buildEvent.end();
+            buildEvent.nodes = take(Counters.NODES);
+            buildEvent.edges = take(Counters.EDGES);
+            buildEvent.errors = take(Counters.ERRORS);
+            if (buildEvent.shouldCommit())
+                buildEvent.commit();
+        }
+    }
+
+    @Override
+    public void add(Counters counter, long amount) {
+        counts[counter.ordinal()] += amount;
+    }
+
+    private long take(Counters counter) {
+        long count = counts[counter.ordinal()];
+        counts[counter.ordinal()] = 0;
+        return count;
+    }
+}
@@ -4,7 +4,7 @@ import java.util.ArrayList;
 
 public class Node<T> {
     T val;
-    String type;
+    DecompStates type;
     ArrayList<Token> tokens;
     ArrayList<Node<T>> children;
     ArrayList<Node<T>> parents;
@@ -25,7 +25,7 @@ public class Node<T> {
         this.parents = new ArrayList<>();
     }
 
-    Node(T val, String type) {
+    Node(T val, DecompStates type) {
         this.val = val;
         this.type = type;
         this.tokens = new ArrayList<>();
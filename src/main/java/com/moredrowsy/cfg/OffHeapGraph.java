@@ -0,0 +1,485 @@
+package com.moredrowsy.cfg;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Objects;
+
+/**
+ * GraphView kept in a memory-mapped file, so a graph is limited by disk and address space rather
+ * than the heap, and the GC never sees its nodes.
+ *
+ * The file is little endian: a header (magic, format, node count, edge count, token count and
+ * text size), then node types (byte, -1 for none), edge and token starts of each node (long),
+ * successors (int), predecessor starts (long) and predecessors (int), tokens as text start
+ * (long), line (int) and type << 24 | byte length (int), and the token text as UTF-8. Sections
+ * start at multiples of 8. One mapped buffer holds at most 2 GB, so the file is mapped in power
+ * of two segments; ints and longs are aligned and never cross one, and text is copied across.
+ *
+ * A Builder appends parsed graphs one at a time, eg one per file of a program, and streams each
+ * section to a temporary file. Predecessors are then counted and filled in the mapped file.
+ */
+public class OffHeapGraph implements GraphView, Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private static final int MAGIC = 0x31474643; // "CFG1"
+    private static final int FORMAT = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int TOKEN_SIZE = 16;
+    private static final int MAX_TOKEN_LENGTH = (1 << 24) - 1;
+    private static final DecompStates[] TYPES = DecompStates.values();
+
+    private FileChannel channel;
+    private Layout layout;
+    private Segments segments;
+
+    private OffHeapGraph(FileChannel channel, Layout layout, Segments segments) {
+        this.channel = channel;
+        this.layout = layout;
+        this.segments = segments;
+    }
+
+    public static OffHeapGraph open(Path file) throws IOException {
+        return open(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // Segment size is a power of two from 8 to DEFAULT_SEGMENT_SIZE
+    static OffHeapGraph open(Path file, int segmentSize) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0)
+                ;
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC
+                    || header.getInt(4) != FORMAT)
+                throw new IOException("Not a graph file: " + file);
+
+            Layout layout = new Layout(header.getInt(8), header.getLong(16),
+                    header.getLong(24), header.getLong(32));
+            if (channel.size() < layout.end)
+                throw new IOException("Truncated graph file: " + file);
+
+            Segments segments = new Segments(channel, layout.end, segmentSize, MapMode.READ_ONLY);
+            return new OffHeapGraph(channel, layout, segments);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Mapped memory is released when the buffers are collected
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public int size() {
+        return layout.nodeCount;
+    }
+
+    public long getEdgeCount() {
+        return layout.edgeCount;
+    }
+
+    @Override
+    public DecompStates getType(int node) {
+        Objects.checkIndex(node, layout.nodeCount);
+        byte type = segments.getByte(layout.types + node);
+        return type == -1 ? null : TYPES[type];
+    }
+
+    @Override
+    public int getSuccessorCount(int node) {
+        return (int) (start(layout.edgeStarts, node + 1) - start(layout.edgeStarts, node));
+    }
+
+    @Override
+    public int getSuccessor(int node, int i) {
+        long edge = start(layout.edgeStarts, node) + Objects.checkIndex(i, getSuccessorCount(node));
+        return segments.getInt(layout.edges + 4 * edge);
+    }
+
+    @Override
+    public int getPredecessorCount(int node) {
+        return (int) (start(layout.predStarts, node + 1) - start(layout.predStarts, node));
+    }
+
+    @Override
+    public int getPredecessor(int node, int i) {
+        long edge = start(layout.predStarts, node)
+                + Objects.checkIndex(i, getPredecessorCount(node));
+        return segments.getInt(layout.preds + 4 * edge);
+    }
+
+    @Override
+    public int getTokenCount(int node) {
+        return (int) (start(layout.tokenStarts, node + 1) - start(layout.tokenStarts, node));
+    }
+
+    @Override
+    public int getTokenLine(int node, int i) {
+        return segments.getInt(token(node, i) + 8);
+    }
+
+    @Override
+    public int getTokenType(int node, int i) {
+        return segments.getInt(token(node, i) + 12) >>> 24;
+    }
+
+    @Override
+    public String getTokenSequence(int node, int i) {
+        long token = token(node, i);
+        byte[] bytes = new byte[segments.getInt(token + 12) & MAX_TOKEN_LENGTH];
+        segments.get(layout.text + segments.getLong(token), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Start of node in a section of longs with one more entry than there are nodes
+    private long start(long section, int node) {
+        Objects.checkIndex(node, layout.nodeCount + 1);
+        return segments.getLong(section + 8L * node);
+    }
+
+    private long token(int node, int i) {
+        long token = start(layout.tokenStarts, node) + Objects.checkIndex(i, getTokenCount(node));
+        return layout.tokens + TOKEN_SIZE * token;
+    }
+
+    /**
+     * Section offsets of a file with the given counts
+     */
+    private static class Layout {
+        private int nodeCount;
+        private long edgeCount;
+        private long tokenCount;
+        private long textSize;
+
+        private long types;
+        private long edgeStarts;
+        private long tokenStarts;
+        private long edges;
+        private long predStarts;
+        private long preds;
+        private long tokens;
+        private long text;
+        private long end;
+
+        private Layout(int nodeCount, long edgeCount, long tokenCount, long textSize) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.tokenCount = tokenCount;
+            this.textSize = textSize;
+
+            types = HEADER_SIZE;
+            edgeStarts = align(types + nodeCount);
+            tokenStarts = edgeStarts + 8L * (nodeCount + 1);
+            edges = tokenStarts + 8L * (nodeCount + 1);
+            predStarts = align(edges + 4 * edgeCount);
+            preds = predStarts + 8L * (nodeCount + 1);
+            tokens = align(preds + 4 * edgeCount);
+            text = tokens + TOKEN_SIZE * tokenCount;
+            end = text + textSize;
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+    }
+
+    /**
+     * File mapped as buffers of one power of two size
+     */
+    private static class Segments {
+        private MappedByteBuffer[] buffers;
+        private int shift;
+        private long mask;
+
+        private Segments(FileChannel channel, long size, int segmentSize, MapMode mode)
+                throws IOException {
+            if (segmentSize < 8 || Integer.bitCount(segmentSize) != 1)
+                throw new IllegalArgumentException("Segment size " + segmentSize);
+
+            shift = Integer.numberOfTrailingZeros(segmentSize);
+            mask = segmentSize - 1;
+            buffers = new MappedByteBuffer[(int) ((size + mask) >>> shift)];
+            for (int i = 0; i < buffers.length; ++i) {
+                long position = (long) i << shift;
+                buffers[i] = channel.map(mode, position, Math.min(segmentSize, size - position));
+                buffers[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        private byte getByte(long offset) {
+            return buffers[(int) (offset >>> shift)].get((int) (offset & mask));
+        }
+
+        private int getInt(long offset) {
+            return buffers[(int) (offset >>> shift)].getInt((int) (offset & mask));
+        }
+
+        private long getLong(long offset) {
+            return buffers[(int) (offset >>> shift)].getLong((int) (offset & mask));
+        }
+
+        private void putInt(long offset, int value) {
+            buffers[(int) (offset >>> shift)].putInt((int) (offset & mask), value);
+        }
+
+        private void putLong(long offset, long value) {
+            buffers[(int) (offset >>> shift)].putLong((int) (offset & mask), value);
+        }
+
+        // Fill bytes from offset on, across segments if needed
+        private void get(long offset, byte[] bytes) {
+            int done = 0;
+            while (done < bytes.length) {
+                long at = offset + done;
+                ByteBuffer buffer = buffers[(int) (at >>> shift)].duplicate();
+                buffer.position((int) (at & mask));
+                int count = Math.min(bytes.length - done, buffer.remaining());
+                buffer.get(bytes, done, count);
+                done += count;
+            }
+        }
+
+        private void force() {
+            for (MappedByteBuffer buffer : buffers)
+                buffer.force();
+        }
+    }
+
+    /**
+     * Section streamed to a temporary file through a direct buffer
+     */
+    private static class Section implements Closeable {
+        private Path file;
+        private FileChannel channel;
+        private ByteBuffer buffer;
+
+        private Section(Path directory, String name) throws IOException {
+            file = Files.createTempFile(directory, "cfg", "." + name);
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void put(byte value) throws IOException {
+            reserve(1);
+            buffer.put(value);
+        }
+
+        private void putInt(int value) throws IOException {
+            reserve(4);
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            reserve(8);
+            buffer.putLong(value);
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                reserve(1);
+                int count = Math.min(bytes.length - done, buffer.remaining());
+                buffer.put(bytes, done, count);
+                done += count;
+            }
+        }
+
+        private void reserve(int size) throws IOException {
+            if (buffer.remaining() < size)
+                flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        // Copy the section into target at position
+        private void transferTo(FileChannel target, long position) throws IOException {
+            flush();
+            long size = channel.size();
+            for (long done = 0; done < size;)
+                done += channel.transferTo(done, size - done, target.position(position + done));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Writes a graph file from parsed graphs
+     */
+    public static class Builder implements Closeable {
+        private Path file;
+        private Section types;
+        private Section edgeStarts;
+        private Section tokenStarts;
+        private Section edges;
+        private Section tokens;
+        private Section text;
+        private int nodeCount;
+        private long edgeCount;
+        private long tokenCount;
+        private long textSize;
+
+        public Builder(Path file) throws IOException {
+            this.file = file;
+            Path directory = file.toAbsolutePath().getParent();
+            ArrayList<Section> sections = new ArrayList<>();
+
+            try {
+                types = add(sections, new Section(directory, "types"));
+                edgeStarts = add(sections, new Section(directory, "edgeStarts"));
+                tokenStarts = add(sections, new Section(directory, "tokenStarts"));
+                edges = add(sections, new Section(directory, "edges"));
+                tokens = add(sections, new Section(directory, "tokens"));
+                text = add(sections, new Section(directory, "text"));
+            } catch (IOException e) {
+                for (Section section : sections)
+                    section.close();
+                throw e;
+            }
+        }
+
+        private static Section add(ArrayList<Section> sections, Section section) {
+            sections.add(section);
+            return section;
+        }
+
+        // Add the nodes after those already added, first node first; returns the number of that
+        // node. Edges to nodes not in nodes are dropped.
+        public int append(ArrayList<Node<Integer>> nodes) throws IOException {
+            if ((long) nodeCount + nodes.size() >= Integer.MAX_VALUE)
+                throw new IllegalStateException("More than " + Integer.MAX_VALUE + " nodes");
+
+            DepthFirst search = DepthFirst.of(nodes);
+            int first = nodeCount;
+
+            for (int v = 0; v < nodes.size(); ++v) {
+                Node<Integer> node = nodes.get(v);
+                types.put((byte) (node.type == null ? -1 : node.type.ordinal()));
+                edgeStarts.putLong(edgeCount);
+                tokenStarts.putLong(tokenCount);
+
+                for (int i = 0; i < search.getSuccessorCount(v); ++i) {
+                    if (search.getSuccessor(v, i) != -1) {
+                        edges.putInt(first + search.getSuccessor(v, i));
+                        ++edgeCount;
+                    }
+                }
+
+                for (Token token : node.tokens) {
+                    byte[] bytes = token.sequence.getBytes(StandardCharsets.UTF_8);
+                    if (bytes.length > MAX_TOKEN_LENGTH)
+                        throw new IllegalArgumentException("Token longer than "
+                                + MAX_TOKEN_LENGTH + " bytes on line " + token.index);
+
+                    tokens.putLong(textSize);
+                    tokens.putInt(token.index);
+                    tokens.putInt(token.type << 24 | bytes.length);
+                    text.put(bytes);
+                    textSize += bytes.length;
+                    ++tokenCount;
+                }
+                ++nodeCount;
+            }
+            return first;
+        }
+
+        public OffHeapGraph build() throws IOException {
+            return build(DEFAULT_SEGMENT_SIZE);
+        }
+
+        // Write the file and open it; the builder cannot be used after
+        OffHeapGraph build(int segmentSize) throws IOException {
+            edgeStarts.putLong(edgeCount);
+            tokenStarts.putLong(tokenCount);
+            Layout layout = new Layout(nodeCount, edgeCount, tokenCount, textSize);
+
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(FORMAT).putInt(nodeCount).putInt(0);
+                header.putLong(edgeCount).putLong(tokenCount).putLong(textSize).flip();
+                while (header.hasRemaining())
+                    out.write(header, header.position());
+
+                types.transferTo(out, layout.types);
+                edgeStarts.transferTo(out, layout.edgeStarts);
+                tokenStarts.transferTo(out, layout.tokenStarts);
+                edges.transferTo(out, layout.edges);
+                tokens.transferTo(out, layout.tokens);
+                text.transferTo(out, layout.text);
+
+                // Sections not written yet read as zeros
+                if (out.size() < layout.end)
+                    out.write(ByteBuffer.allocate(1), layout.end - 1);
+
+                Segments segments = new Segments(out, layout.end, segmentSize, MapMode.READ_WRITE);
+                fillPredecessors(segments, layout);
+                segments.force();
+            } finally {
+                close();
+            }
+            return open(file, segmentSize);
+        }
+
+        // Count the in edges of each node, prefix sum the counts into starts, then place each
+        // edge's source at its target's start and move the start along. That leaves each start
+        // at the next node's, so the starts are shifted back.
+        private static void fillPredecessors(Segments segments, Layout layout) {
+            for (long e = 0; e < layout.edgeCount; ++e) {
+                long count = layout.predStarts + 8L * (segments.getInt(layout.edges + 4 * e) + 1);
+                segments.putLong(count, segments.getLong(count) + 1);
+            }
+            for (int v = 0; v < layout.nodeCount; ++v) {
+                long next = layout.predStarts + 8L * (v + 1);
+                segments.putLong(next, segments.getLong(next) + segments.getLong(next - 8));
+            }
+
+            for (int v = 0; v < layout.nodeCount; ++v) {
+                long end = segments.getLong(layout.edgeStarts + 8L * (v + 1));
+                for (long e = segments.getLong(layout.edgeStarts + 8L * v); e < end; ++e) {
+                    long start = layout.predStarts + 8L * segments.getInt(layout.edges + 4 * e);
+                    long position = segments.getLong(start);
+                    segments.putInt(layout.preds + 4 * position, v);
+                    segments.putLong(start, position + 1);
+                }
+            }
+
+            for (int v = layout.nodeCount; v > 0; --v) {
+                long start = layout.predStarts + 8L * v;
+                segments.putLong(start, segments.getLong(start - 8));
+            }
+            segments.putLong(layout.predStarts, 0);
+        }
+
+        // Delete the temporary files
+        @Override
+        public void close() throws IOException {
+            for (Section section : new Section[] {types, edgeStarts, tokenStarts, edges, tokens,
+                    text})
+                section.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.moredrowsy.cfg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import com.moredrowsy.cfg.GraphWriter.Formats;
+import com.moredrowsy.cfg.ParseProtocol.Request;
+import com.moredrowsy.cfg.ParseProtocol.Response;
+
+/**
+ * Thin client of a ParseServer.
+ *
+ * send() queues requests without waiting for their responses, and receive() returns responses
+ * in the order the requests were sent. Callers should keep at most a window of requests
+ * outstanding, ie receive before sending more once getOutstanding() reaches it, so neither side
+ * blocks on a full socket.
+ */
+public class ParseClient implements Closeable {
+    public static final int DEFAULT_WINDOW = 16;
+
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private int outstanding; // Requests sent and not yet received
+
+    public ParseClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        outstanding = 0;
+    }
+
+    public void send(String name, Formats format, byte[] source) throws IOException {
+        ParseProtocol.writeRequest(out, new Request(name, format, source));
+        ++outstanding;
+    }
+
+    public Response receive() throws IOException {
+        if (outstanding == 0)
+            throw new IllegalStateException("No request is outstanding");
+
+        out.flush();
+        Response response = ParseProtocol.readResponse(in);
+        --outstanding;
+        return response;
+    }
+
+    public Response parse(String name, Formats format, byte[] source) throws IOException {
+        send(name, format, source);
+        return receive();
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
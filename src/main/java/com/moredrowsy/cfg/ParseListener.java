@@ -0,0 +1,51 @@
+package com.moredrowsy.cfg;
+
+/**
+ * Receives events from the Parser's finite state machine as it walks the tokens.
+ *
+ * Nodes are identified by ints numbered from 0 in creation order for each parse. A conditional
+ * node's first out edge is taken when its condition is true and its second when it is false. All
+ * methods default to no-ops so a listener only overrides the events it needs.
+ */
+public interface ParseListener {
+    public static enum EdgeTypes {
+        FLOW, // Straight line flow to the next node
+        BRANCH, // Conditional edge out of an if, while, for or do-while test
+        LOOP_BACK, // Back edge to a loop header
+        JUMP // Edge out of a break, continue, return or goto
+    }
+
+    default void startParse() {
+    }
+
+    default void endParse() {
+    }
+
+    // Construct (statement, if, while, do-while, for, function) is entered
+    default void startConstruct(DecompStates type, Token token) {
+    }
+
+    // Construct is finished; type is its final DecompStates
+    default void endConstruct(DecompStates type, Token token) {
+    }
+
+    // New node (block) is created with its first token
+    default void enterNode(int node, DecompStates type, Token token) {
+    }
+
+    // Token is appended to an existing node
+    default void nodeToken(int node, Token token) {
+    }
+
+    // Node's DecompStates type has changed, ie IF becomes IF-ELSE
+    default void nodeType(int node, DecompStates type) {
+    }
+
+    default void edge(int from, int to, EdgeTypes type) {
+    }
+
+    // If, loop or function is complete. Its nodes are numbered contiguously from entry to exit,
+    // so regions come innermost first and nest by their node ranges.
+    default void region(int entry, int exit, DecompStates type) {
+    }
+}
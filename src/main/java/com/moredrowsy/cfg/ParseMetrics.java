@@ -0,0 +1,37 @@
+package com.moredrowsy.cfg;
+
+/**
+ * Receives counters and phase timings from the Parser.
+ *
+ * The Parser keeps its counts in plain fields and reports them once at the end of each phase, so
+ * a listener is called a few times per parse, not per token. NONE ignores everything and is the
+ * default.
+ */
+public interface ParseMetrics {
+    public static enum Phases {
+        TOKENIZE, // Regex tokenizing of input strings
+        BUILD // Finite state machine walk building the graph
+    }
+
+    public static enum Counters {
+        LINES, // Input strings tokenized
+        CHARACTERS, // Characters of the input strings
+        TOKENS, // Tokens produced by the tokenizer
+        NODES, // Nodes created
+        EDGES, // Edges created
+        ERRORS // Errors reported to the Diagnostics
+    }
+
+    public static final ParseMetrics NONE = new ParseMetrics() {
+    };
+
+    default void startPhase(Phases phase) {
+    }
+
+    // Counters of the phase are added before it ends
+    default void endPhase(Phases phase) {
+    }
+
+    default void add(Counters counter, long amount) {
+    }
+}
@@ -0,0 +1,109 @@
+package com.moredrowsy.cfg;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import com.moredrowsy.cfg.GraphWriter.Formats;
+
+/**
+ * Framing of the ParseServer protocol.
+ *
+ * A request is: name (UTF), output format ordinal (byte), source length (int) and source bytes
+ * in UTF-8. A response is: status (byte), Diagnostics count (int), output length (int) and the
+ * output bytes, which are the GraphWriter output or an error message. Requests may be pipelined;
+ * responses come back in request order.
+ */
+public final class ParseProtocol {
+    public static final byte OK = 0;
+    public static final byte FAILED = 1; // Output is an error message
+
+    public static final int MAX_LENGTH = 1 << 26; // Largest source or output accepted
+
+    public static class Request {
+        String name;
+        Formats format;
+        byte[] source;
+
+        public Request(String name, Formats format, byte[] source) {
+            this.name = name;
+            this.format = format;
+            this.source = source;
+        }
+    }
+
+    public static class Response {
+        byte status;
+        int errors;
+        byte[] output;
+
+        Response(byte status, int errors, byte[] output) {
+            this.status = status;
+            this.errors = errors;
+            this.output = output;
+        }
+
+        public boolean isOk() {
+            return status == OK;
+        }
+
+        // Number of parse errors
+        public int getErrors() {
+            return errors;
+        }
+
+        public byte[] getOutput() {
+            return output;
+        }
+    }
+
+    private ParseProtocol() {
+    }
+
+    static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeUTF(request.name);
+        out.writeByte(request.format.ordinal());
+        out.writeInt(request.source.length);
+        out.write(request.source);
+    }
+
+    // Returns null at the end of the stream
+    static Request readRequest(DataInputStream in) throws IOException {
+        String name;
+        try {
+            name = in.readUTF();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        int format = in.readUnsignedByte();
+        if (format >= Formats.values().length)
+            throw new IOException("Unknown format " + format);
+
+        return new Request(name, Formats.values()[format], readBytes(in));
+    }
+
+    static void writeResponse(DataOutputStream out, Response response) throws IOException {
+        out.writeByte(response.status);
+        out.writeInt(response.errors);
+        out.writeInt(response.output.length);
+        out.write(response.output);
+    }
+
+    static Response readResponse(DataInputStream in) throws IOException {
+        byte status = in.readByte();
+        int errors = in.readInt();
+        return new Response(status, errors, readBytes(in));
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_LENGTH)
+            throw new IOException("Bad frame length " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
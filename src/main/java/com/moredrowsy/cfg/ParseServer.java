@@ -0,0 +1,191 @@
+package com.moredrowsy.cfg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import com.moredrowsy.cfg.ParseProtocol.Request;
+import com.moredrowsy.cfg.ParseProtocol.Response;
+
+/**
+ * Long running parse server on a localhost TCP port.
+ *
+ * Each worker thread keeps one Parser and reuses it, so the regex patterns, FSM tables and JIT
+ * compiled code stay warm between requests. A connection stops reading requests while it has
+ * maxInFlight requests not yet answered, which pushes back on the client through TCP flow
+ * control. Responses are written in request order and flushed when no more are ready, so
+ * pipelined requests are answered in batches. When the writer stops, eg since the client went
+ * away, it stops the reader and cancels the requests not yet answered.
+ */
+public class ParseServer implements Closeable {
+    public static final int DEFAULT_IN_FLIGHT = 64;
+
+    private static final Future<Response> END = CompletableFuture.completedFuture(null);
+
+    private ServerSocket serverSocket;
+    private ExecutorService workers;
+    private ThreadLocal<Parser> parsers; // Parser of each worker thread
+    private int maxInFlight; // Requests of a connection being parsed or written
+    private Set<Socket> connections; // Open connection sockets, closed by close
+
+    // Port 0 picks a free port
+    public ParseServer(int port, int workers, int maxInFlight) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "cfg-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.parsers = ThreadLocal.withInitial(Parser::new);
+        this.maxInFlight = maxInFlight;
+        this.connections = ConcurrentHashMap.newKeySet();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accept connections until closed
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                if (serverSocket.isClosed()) // Accepted while close went through connections
+                    socket.close();
+                socket.setTcpNoDelay(true);
+                startThread("cfg-connection", () -> handle(socket));
+            } catch (IOException e) {
+                // Closed or failed accept; the loop condition decides
+            }
+        }
+    }
+
+    // Accept connections on a background thread
+    public void start() {
+        startThread("cfg-server", this::serve);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        workers.shutdownNow();
+        for (Socket socket : connections)
+            socket.close();
+    }
+
+    private static void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void handle(Socket socket) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        LinkedBlockingQueue<Future<Response>> responses = new LinkedBlockingQueue<>();
+        Thread reader = Thread.currentThread();
+        startThread("cfg-writer", () -> writeResponses(socket, responses, inFlight, reader));
+
+        try {
+            DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            while (true) {
+                // Backpressure: wait for a response to be written before reading more
+                inFlight.acquire();
+
+                Request request = ParseProtocol.readRequest(in);
+                if (request == null)
+                    break;
+
+                responses.add(workers.submit(() -> parse(request)));
+            }
+        } catch (IOException | InterruptedException e) {
+            // Connection is dropped; the writer closes the socket
+        } finally {
+            // A closed socket means the writer is gone or going, so no one answers the rest
+            if (socket.isClosed())
+                cancel(responses);
+            responses.add(END);
+        }
+    }
+
+    private void writeResponses(Socket socket, LinkedBlockingQueue<Future<Response>> responses,
+            Semaphore inFlight, Thread reader) {
+        try (Socket closing = socket) {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(closing.getOutputStream()));
+
+            while (true) {
+                Future<Response> future = responses.take();
+                if (future == END)
+                    break;
+
+                Response response;
+                try {
+                    response = future.get();
+                } catch (ExecutionException e) {
+                    response = failed(e.getCause());
+                }
+
+                ParseProtocol.writeResponse(out, response);
+                inFlight.release();
+
+                if (responses.isEmpty())
+                    out.flush();
+            }
+            out.flush();
+        } catch (IOException | InterruptedException | CancellationException e) {
+            // Client went away
+        } finally {
+            // The socket is closed; wake the reader if it waits for a permit
+            connections.remove(socket);
+            reader.interrupt();
+            cancel(responses);
+        }
+    }
+
+    // Cancel the requests left in responses; ones being parsed run to the end
+    private static void cancel(LinkedBlockingQueue<Future<Response>> responses) {
+        Future<Response> future;
+        while ((future = responses.poll()) != null)
+            future.cancel(false);
+    }
+
+    private Response parse(Request request) throws IOException {
+        Parser parser = parsers.get();
+        parser.clear();
+        parser.addText(new String(request.source, StandardCharsets.UTF_8));
+        parser.parse();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GraphWriter.write(request.format, request.name, parser.getNodes(),
+                parser.getRootRegion(), parser.getDiagnostics(), output);
+
+        int errors = parser.getDiagnostics().getCount();
+        return new Response(ParseProtocol.OK, errors, output.toByteArray());
+    }
+
+    private static Response failed(Throwable e) {
+        byte[] message = String.valueOf(e).getBytes(StandardCharsets.UTF_8);
+        return new Response(ParseProtocol.FAILED, 0, message);
+    }
+}
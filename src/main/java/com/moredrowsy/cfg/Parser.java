@@ -1,15 +1,23 @@
 package com.moredrowsy.cfg;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+
+import com.moredrowsy.cfg.Diagnostics.ErrorCodes;
+import com.moredrowsy.cfg.Diagnostics.Recoveries;
+import com.moredrowsy.cfg.ParseListener.EdgeTypes;
+import com.moredrowsy.cfg.ParseMetrics.Counters;
+import com.moredrowsy.cfg.ParseMetrics.Phases;
+import com.moredrowsy.cfg.TokenizeBudget.Limits;
 
 public class Parser {
-    private static enum TokenStates {
-        ERROR, INIT_START, FUNCTION, STATEMENT, SEMICOLON, WHILE, DO, FOR, IF, ELSE, PAREN_OPEN, PAREN_CLOSE, BRACE_OPEN, BRACE_CLOSE, LAMBDA,
-    }
-
     private static enum FSMStates {
         ERROR,
 
@@ -34,47 +42,162 @@ public class Parser {
 
         // FUNCTION STATES
         FUNC_START, FUNC_BRACE_OPEN, FUNC_STATEMENT, FUNC_END,
-    }
 
-    private static enum DecompStates {
-        C1, C1_END, // CASE
-        D0, D0_END, // IF-THEN
-        D1, D1_END, // IF-THEN-ELSE
-        D2, D2_END, // WHILE-DO
-        D3, D3_END, // DO-WHILE
-        P1, P1_END// STATEMENT
+        // JUMP STATES
+        JUMP_START, JUMP_VALUE, JUMP_END,
+
+        // LABEL STATES
+        LABEL_START,
     }
 
     private Tokenizer tokenizer; // Tokenize the strings
     private LinkedList<Token> tokens; // Tokens from tokenizer's result
     private ArrayList<String> strings; // List of strings to tokenize
-    private ArrayList<Node<Integer>> nodes; // List of tree Nodes parsed from tokens
+    private GraphBuilder graphBuilder; // Default listener that builds the Node graph
+    private ParseListener listener; // Listener receiving events of the current parse
+    private Diagnostics diagnostics; // Collects grammar and tokenizer errors
+    private ParseMetrics metrics; // Receives counters and phase times
+    private ForkJoinPool tokenizePool; // Tokenizes parse's strings in parallel chunks, or null
+    private BitSet statementNodes; // Nodes whose type is currently a statement (P1)
+    private BitSet branchNodes; // Nodes whose out edges are conditional branches
+    private BitSet jumpNodes; // Nodes ending in a jump, which have no fall through edge
+    private ArrayList<JumpScope> jumpScopes; // Enclosing loops and functions, innermost last
+    private Token lastToken; // Last token consumed by the state machine
+    private int nodeCount; // Number of nodes created in the current parse
+    private int edgeCount; // Number of edges created in the current parse
     private int[][] states;
+    private DecompStates[] decompStates; // DecompStates of each FSMStates, indexed by ordinal
+
+    private static final int ROOT_NODE = -1; // Parent of the first node of a parse
+    private static final int NULL_NODE = -2; // No node was built
+    private static final int TOKENIZE_CHUNK_SIZE = 1 << 18; // Characters per parallel chunk
+
+    // Jumps of a loop or function waiting for the nodes they go to, which only exist once the
+    // loop or function ends. The parse itself is the outermost function scope.
+    private static class JumpScope {
+        private boolean isLoop;
+        private ArrayList<Integer> exits = new ArrayList<>(); // break or return nodes
+        private ArrayList<Integer> continues = new ArrayList<>();
+        private ArrayList<Integer> gotos = new ArrayList<>();
+        private ArrayList<String> gotoLabels = new ArrayList<>(); // Label of each goto
+        private HashMap<String, Integer> labels = new HashMap<>(); // Label name to node
+
+        private JumpScope(boolean isLoop) {
+            this.isLoop = isLoop;
+        }
+    }
+
+    // Token list that tokenizes the next string only when the state machine needs more tokens
+    private class LazyTokens extends LinkedList<Token> {
+        private static final long serialVersionUID = 1L;
+
+        private int line = 0;
+
+        private void fill() {
+            while (super.isEmpty() && line < strings.size()) {
+                String str = strings.get(line);
+                metrics.startPhase(Phases.TOKENIZE);
+
+                try {
+                    tokenizer.tokenize(str, line + 1);
+                } catch (TokenizerException e) {
+                    endTokenizePhase(1, str.length(), 0, 1);
+                    throw e;
+                }
+
+                super.addAll(tokenizer.getTokens());
+                endTokenizePhase(1, str.length(), tokenizer.getTokens().size(), 0);
+                ++line;
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            fill();
+            return super.isEmpty();
+        }
+
+        @Override
+        public Token peek() {
+            fill();
+            return super.peek();
+        }
+
+        @Override
+        public Token poll() {
+            fill();
+            return super.poll();
+        }
+    }
+
+    private class ConstructIterator implements Iterator<ArrayList<Node<Integer>>> {
+        private LinkedList<Token> tokens = new LazyTokens();
+        private ArrayList<Node<Integer>> next = null;
+        private boolean isDone = false;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !isDone) {
+                try {
+                    startTokenizeBudget();
+                    next = parseConstruct(tokens);
+                } catch (TokenizerException e) {
+                    reportTokenizerError(e);
+                    next = null;
+                }
+                isDone = next == null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public ArrayList<Node<Integer>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            ArrayList<Node<Integer>> construct = next;
+            next = null;
+            return construct;
+        }
+    }
 
     Parser() {
         tokenizer = new Tokenizer();
         tokens = new LinkedList<>();
         strings = new ArrayList<>();
-        nodes = new ArrayList<>();
+        graphBuilder = new GraphBuilder();
+        diagnostics = new Diagnostics();
+        metrics = ParseMetrics.NONE;
+        statementNodes = new BitSet();
+        branchNodes = new BitSet();
+        jumpNodes = new BitSet();
+        jumpScopes = new ArrayList<>();
         initTokenizer();
         initStates();
+        initDecompStates();
     }
 
     private void initTokenizer() {
         // Add rules to tokenizer
-        tokenizer.add(";", TokenStates.SEMICOLON.ordinal());
+        tokenizer.addDelimiter(';', TokenStates.SEMICOLON.ordinal());
         tokenizer.add("if", TokenStates.IF.ordinal());
         tokenizer.add("else", TokenStates.ELSE.ordinal());
         tokenizer.add("while", TokenStates.WHILE.ordinal());
         tokenizer.add("do", TokenStates.DO.ordinal());
         tokenizer.add("for", TokenStates.FOR.ordinal());
-        tokenizer.add("[^\\(\\)\\;\\{\\}]*[\\s]*[^\\(\\)\\;\\{\\}]+\\([^\\(\\)\\;\\{\\}]*\\)",
-                TokenStates.FUNCTION.ordinal());
-        tokenizer.add("\\(", TokenStates.PAREN_OPEN.ordinal());
-        tokenizer.add("\\)", TokenStates.PAREN_CLOSE.ordinal());
-        tokenizer.add("\\{", TokenStates.BRACE_OPEN.ordinal());
-        tokenizer.add("\\}", TokenStates.BRACE_CLOSE.ordinal());
-        tokenizer.add("[^\\(\\)\\{\\}\\;]+", TokenStates.STATEMENT.ordinal());
+        tokenizer.add("break\\b", TokenStates.BREAK.ordinal());
+        tokenizer.add("continue\\b", TokenStates.CONTINUE.ordinal());
+        tokenizer.add("return\\b", TokenStates.RETURN.ordinal());
+        tokenizer.add("goto\\b", TokenStates.GOTO.ordinal());
+        tokenizer.add("[a-z_][a-z0-9_]*\\s*:(?!:)", TokenStates.LABEL.ordinal());
+        // Same as [^\(\)\;\{\}]*[\s]*[^\(\)\;\{\}]+\([^\(\)\;\{\}]*\), found from the
+        // delimiter positions
+        tokenizer.addCall('(', ')', TokenStates.FUNCTION.ordinal());
+        tokenizer.addDelimiter('(', TokenStates.PAREN_OPEN.ordinal());
+        tokenizer.addDelimiter(')', TokenStates.PAREN_CLOSE.ordinal());
+        tokenizer.addDelimiter('{', TokenStates.BRACE_OPEN.ordinal());
+        tokenizer.addDelimiter('}', TokenStates.BRACE_CLOSE.ordinal());
+        tokenizer.addSpan(TokenStates.STATEMENT.ordinal()); // [^\(\)\{\}\;]+
     }
 
     private void initStates() {
@@ -106,6 +229,42 @@ public class Parser {
         initIfStates();
         initForStates();
         initFunctionStates();
+        initJumpStates();
+    }
+
+    private void initDecompStates() {
+        // Map each FSM state to the DecompStates its node is typed with
+        decompStates = new DecompStates[FSMStates.values().length];
+
+        // STATEMENT
+        addDecompRules(FSMStates.STATEMENT_START, FSMStates.STATEMENT_END, DecompStates.P1);
+
+        // IF-THEN-ELSE
+        addDecompRules(FSMStates.IF_START, FSMStates.IF_START, DecompStates.D0);
+        addDecompRules(FSMStates.IF_PAREN_OPEN, FSMStates.IF_THEN_END, DecompStates.D0_END);
+        addDecompRules(FSMStates.ELSE_IF_STATEMENT, FSMStates.IF_ELSE_END, DecompStates.D1_END);
+        addDecompRules(FSMStates.IF_ELSE, FSMStates.IF_ELSE, DecompStates.D1);
+
+        // WHILE
+        addDecompRules(FSMStates.WHILE_START, FSMStates.WHILE_START, DecompStates.D2);
+        addDecompRules(FSMStates.WHILE_PAREN_OPEN, FSMStates.WHILE_END, DecompStates.D2_END);
+
+        // DO_WHILE
+        addDecompRules(FSMStates.DO_WHILE_START, FSMStates.DO_WHILE_START, DecompStates.D3);
+        addDecompRules(FSMStates.DO_WHILE_BRACE_OPEN, FSMStates.DO_WHILE_END,
+                DecompStates.D3_END);
+
+        // FOR LOOPS
+        addDecompRules(FSMStates.FOR_START, FSMStates.FOR_INIT_END, DecompStates.P1);
+        addDecompRules(FSMStates.FOR_COND, FSMStates.FOR_COND_END, DecompStates.D0);
+        addDecompRules(FSMStates.FOR_MODIFY, FSMStates.FOR_END, DecompStates.D0_END);
+
+        // FUNCTION
+        addDecompRules(FSMStates.FUNC_START, FSMStates.FUNC_START, DecompStates.P1);
+        addDecompRules(FSMStates.FUNC_BRACE_OPEN, FSMStates.FUNC_END, DecompStates.P1_END);
+
+        // JUMP AND LABEL
+        addDecompRules(FSMStates.JUMP_START, FSMStates.LABEL_START, DecompStates.P1);
     }
 
     private void initStatementStates() {
@@ -653,45 +812,48 @@ public class Parser {
                 FSMStates.FUNC_END.ordinal());
     }
 
-    private String mapFSMStateToDecompState(int state) {
-        if (state >= FSMStates.STATEMENT_START.ordinal()
-                && state <= FSMStates.STATEMENT_END.ordinal())
-            return DecompStates.P1.name();
-        if (state >= FSMStates.IF_START.ordinal() && state <= FSMStates.IF_ELSE_END.ordinal()) {
-            if (state == FSMStates.IF_START.ordinal())
-                return DecompStates.D0.name();
-            if (state > FSMStates.IF_START.ordinal() && state <= FSMStates.IF_THEN_END.ordinal())
-                return DecompStates.D0_END.name();
-
-            if (state == FSMStates.IF_ELSE.ordinal())
-                return DecompStates.D1.name();
-            else
-                return DecompStates.D1_END.name();
-        }
-        if (state >= FSMStates.WHILE_START.ordinal() && state <= FSMStates.WHILE_END.ordinal()) {
-            if (state == FSMStates.WHILE_START.ordinal())
-                return DecompStates.D2.name();
-            return DecompStates.D2_END.name();
-        }
-        if (state >= FSMStates.DO_WHILE_START.ordinal()
-                && state <= FSMStates.DO_WHILE_END.ordinal()) {
-            if (state == FSMStates.DO_WHILE_START.ordinal())
-                return DecompStates.D3.name();
-            return DecompStates.D3_END.name();
+    private void initJumpStates() {
+        int[] jumpInputs = {TokenStates.BREAK.ordinal(), TokenStates.CONTINUE.ordinal(),
+                TokenStates.RETURN.ordinal(), TokenStates.GOTO.ordinal()};
+        int[] valueInputs = {TokenStates.STATEMENT.ordinal(), TokenStates.FUNCTION.ordinal(),
+                TokenStates.PAREN_OPEN.ordinal(), TokenStates.PAREN_CLOSE.ordinal()};
+
+        // Jumps and labels are statements, so they are accepted wherever a nested construct is
+        // and lead to the same state as a statement does
+        for (int state = 0; state < states.length; ++state) {
+            if (state == FSMStates.INIT_START.ordinal()
+                    || states[state][TokenStates.IF.ordinal()] == FSMStates.ERROR.ordinal())
+                continue;
+
+            int statementState = states[state][TokenStates.STATEMENT.ordinal()];
+            for (int input : jumpInputs)
+                addStateRules(state, input, statementState);
+            addStateRules(state, TokenStates.LABEL.ordinal(), statementState);
         }
-        if (state >= FSMStates.FOR_START.ordinal() && state <= FSMStates.FOR_END.ordinal()) {
-            if (state >= FSMStates.FOR_START.ordinal() && state <= FSMStates.FOR_INIT_END.ordinal())
-                return DecompStates.P1.name();
-            if (state >= FSMStates.FOR_COND.ordinal() && state <= FSMStates.FOR_COND_END.ordinal())
-                return DecompStates.D0.name();
-            return DecompStates.D0_END.name();
-        }
-        if (state >= FSMStates.FUNC_START.ordinal() && state <= FSMStates.FUNC_END.ordinal()) {
-            if (state == FSMStates.FUNC_START.ordinal())
-                return DecompStates.P1.name();
-            return DecompStates.P1_END.name();
+
+        // INIT_START -> BREAK, CONTINUE, RETURN, GOTO -> JUMP_START
+        for (int input : jumpInputs)
+            addStateRules(FSMStates.INIT_START.ordinal(), input, FSMStates.JUMP_START.ordinal());
+        // INIT_START -> LABEL -> LABEL_START
+        addStateRules(FSMStates.INIT_START.ordinal(), TokenStates.LABEL.ordinal(),
+                FSMStates.LABEL_START.ordinal());
+
+        // JUMP_START -> STATEMENT, FUNCTION, PAREN_OPEN, PAREN_CLOSE -> JUMP_VALUE
+        // JUMP_VALUE -> STATEMENT, FUNCTION, PAREN_OPEN, PAREN_CLOSE -> JUMP_VALUE
+        for (int input : valueInputs) {
+            addStateRules(FSMStates.JUMP_START.ordinal(), input, FSMStates.JUMP_VALUE.ordinal());
+            addStateRules(FSMStates.JUMP_VALUE.ordinal(), input, FSMStates.JUMP_VALUE.ordinal());
         }
-        return "";
+        // JUMP_START -> SEMICOLON -> JUMP_END
+        addStateRules(FSMStates.JUMP_START.ordinal(), TokenStates.SEMICOLON.ordinal(),
+                FSMStates.JUMP_END.ordinal());
+        // JUMP_VALUE -> SEMICOLON -> JUMP_END
+        addStateRules(FSMStates.JUMP_VALUE.ordinal(), TokenStates.SEMICOLON.ordinal(),
+                FSMStates.JUMP_END.ordinal());
+    }
+
+    private DecompStates mapFSMStateToDecompState(int state) {
+        return decompStates[state];
     }
 
     private boolean isFSMStartState(int fsmState) {
@@ -700,23 +862,98 @@ public class Parser {
                 || fsmState == FSMStates.WHILE_START.ordinal()
                 || fsmState == FSMStates.DO_WHILE_START.ordinal()
                 || fsmState == FSMStates.FOR_START.ordinal()
-                || fsmState == FSMStates.FUNC_START.ordinal();
+                || fsmState == FSMStates.FUNC_START.ordinal()
+                || fsmState == FSMStates.JUMP_START.ordinal()
+                || fsmState == FSMStates.LABEL_START.ordinal();
     }
 
     private void addStateRules(int startState, int input, int endState) {
         states[startState][input] = endState;
     }
 
+    private void addDecompRules(FSMStates first, FSMStates last, DecompStates decompState) {
+        for (int state = first.ordinal(); state <= last.ordinal(); ++state)
+            decompStates[state] = decompState;
+    }
+
     public void addString(String str) {
         strings.add(str);
     }
 
+    // Add each line of text as a string; a line break at the end does not add an empty line
+    public void addText(String text) {
+        String[] lines = text.split("\r\n|\r|\n", -1);
+        int count = lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+
+        for (int i = 0; i < count; ++i)
+            strings.add(lines[i]);
+    }
+
+    // Remove all strings, tokens, nodes and errors so the parser can be reused
+    public void clear() {
+        strings.clear();
+        tokens.clear();
+        graphBuilder = new GraphBuilder();
+        diagnostics.clear();
+    }
+
+    Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
     public LinkedList<Token> getTokens() {
         return tokens;
     }
 
     public ArrayList<Node<Integer>> getNodes() {
-        return nodes;
+        return graphBuilder.getNodes();
+    }
+
+    // Program structure tree of the last parse
+    public Region getRootRegion() {
+        return graphBuilder.getRootRegion();
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public ParseMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ParseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ForkJoinPool getTokenizePool() {
+        return tokenizePool;
+    }
+
+    // Tokenize the strings of parse in parallel on pool, or one by one if pool is null. Token
+    // order and line indexes are the same either way.
+    public void setTokenizePool(ForkJoinPool pool) {
+        this.tokenizePool = pool;
+    }
+
+    public TokenizeBudget getTokenizeBudget() {
+        return tokenizer.getBudget();
+    }
+
+    // Limit tokenizing to budget, or not at all if it is null. The budget starts again for each
+    // parse, each construct of the iterator, and each function of a FunctionIndex and its scan.
+    // Running out stops the parse with a STEP_LIMIT or TIME_LIMIT error.
+    public void setTokenizeBudget(TokenizeBudget budget) {
+        tokenizer.setBudget(budget);
+    }
+
+    void startTokenizeBudget() {
+        if (tokenizer.getBudget() != null)
+            tokenizer.getBudget().start();
     }
 
     public ArrayList<String> getStrings() {
@@ -724,44 +961,318 @@ public class Parser {
     }
 
     public Node<Integer> parse() {
-        try {
-            // Tokenize all string inputs
+        if (!parse(graphBuilder))
+            return null;
+
+        return graphBuilder.getRoot();
+    }
+
+    public boolean parse(ParseListener listener) {
+        startTokenizeBudget();
+        metrics.startPhase(Phases.TOKENIZE);
+        int tokenCount = tokens.size();
+        long characters = 0;
+
+        // Tokenize all string inputs
+        if (tokenizePool != null) {
+            try {
+                tokenizer.tokenize(strings, 1, tokens, tokenizePool, TOKENIZE_CHUNK_SIZE);
+            } catch (TokenizerException e) {
+                reportTokenizerError(e);
+                endTokenizePhase(e.getIndex(), countCharacters(e.getIndex() - 1),
+                        tokens.size() - tokenCount, 1);
+                return false;
+            }
+            characters = countCharacters(strings.size());
+        } else {
             for (int i = 0; i < strings.size(); ++i) {
-                tokenizer.tokenize(strings.get(i), i + 1);
+                try {
+                    tokenizer.tokenize(strings.get(i), i + 1);
+                } catch (TokenizerException e) {
+                    reportTokenizerError(e);
+                    endTokenizePhase(i + 1, characters, tokens.size() - tokenCount, 1);
+                    return false;
+                }
                 tokens.addAll(tokenizer.getTokens());
+                characters += strings.get(i).length();
             }
-
-            // Parse all tokens
-            return parseTokens(getTokens());
-        } catch (TokenizerException e) {
-            System.out.println(e.getMessage());
-            return null;
         }
+        endTokenizePhase(strings.size(), characters, tokens.size() - tokenCount, 0);
+
+        // Parse all tokens
+        metrics.startPhase(Phases.BUILD);
+        int errors = diagnostics.getCount();
+
+        resetParse(listener);
+        listener.startParse();
+        parseTokens(getTokens());
+        listener.endParse();
+
+        endBuildPhase(errors);
+
+        return true;
     }
 
-    private Node<Integer> parseTokens(LinkedList<Token> tokens) {
-        Node<Integer> root = new Node<Integer>(-1);
-        Node<Integer> walker = root;
+    // Lazily parse the strings, one top level construct (function, loop, if or statement run) at
+    // a time. Each construct is its own graph with node values starting from 0 and no edges to
+    // the constructs before or after it.
+    public Iterator<ArrayList<Node<Integer>>> iterator() {
+        return new ConstructIterator();
+    }
+
+    // Find the functions of the strings without tokenizing their bodies. Each function's graph
+    // is built when the index is first asked for it.
+    public FunctionIndex indexFunctions() {
+        return new FunctionIndex(this);
+    }
+
+    public Spliterator<ArrayList<Node<Integer>>> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    private void resetParse(ParseListener listener) {
+        this.listener = listener;
+        nodeCount = 0;
+        edgeCount = 0;
+        lastToken = null;
+        statementNodes.clear();
+        branchNodes.clear();
+        jumpNodes.clear();
+        jumpScopes.clear();
+        enterJumpScope(false);
+    }
+
+    private void parseTokens(LinkedList<Token> tokens) {
+        int walker = ROOT_NODE;
 
         while (!tokens.isEmpty()) {
-            Node<Integer> new_node = buildTRee(walker, tokens, null);
-            if (new_node != null) {
+            int new_node = buildTRee(walker, tokens, null);
+            if (new_node != NULL_NODE) {
                 walker = new_node;
             } else {
-                tokens.poll();
+                walker = recover(walker, FSMStates.INIT_START.ordinal(), tokens, true);
             }
         }
 
-        if (root.children.size() > 0) {
-            if (root.children.get(0).parents.get(0) == root)
-                root.children.get(0).parents.remove(0);
-            return root.children.get(0);
-        } else
-            return null;
+        exitJumpScope(NULL_NODE, NULL_NODE);
+    }
+
+    // Graph of the first construct in tokens that builds any nodes, or null
+    ArrayList<Node<Integer>> parseConstruct(LinkedList<Token> tokens) {
+        while (!tokens.isEmpty()) {
+            GraphBuilder builder = new GraphBuilder();
+            resetParse(builder);
+            builder.startParse();
+
+            // Lazy tokenizing of the construct's strings runs inside this phase
+            metrics.startPhase(Phases.BUILD);
+            int errors = diagnostics.getCount();
+
+            try {
+                int walker = buildTRee(ROOT_NODE, tokens, null);
+                if (walker == NULL_NODE)
+                    walker = recover(ROOT_NODE, FSMStates.INIT_START.ordinal(), tokens, true);
+
+                // Top level statements are merged into one node, so keep the run going
+                while (isStatementNode(walker) && !tokens.isEmpty()) {
+                    int peekState = states[FSMStates.INIT_START.ordinal()][tokens.peek().type];
+                    if (peekState != FSMStates.STATEMENT_START.ordinal())
+                        break;
+
+                    walker = buildTRee(walker, tokens, null);
+                }
+
+                exitJumpScope(NULL_NODE, NULL_NODE);
+            } finally {
+                endBuildPhase(errors);
+            }
+            builder.endParse();
+
+            if (!builder.getNodes().isEmpty())
+                return builder.getNodes();
+        }
+        return null;
+    }
+
+    // Characters in the first count strings
+    private long countCharacters(int count) {
+        long characters = 0;
+        for (int i = 0; i < count; ++i)
+            characters += strings.get(i).length();
+        return characters;
+    }
+
+    private void endTokenizePhase(int lines, long characters, int tokenCount, int errors) {
+        metrics.add(Counters.LINES, lines);
+        metrics.add(Counters.CHARACTERS, characters);
+        metrics.add(Counters.TOKENS, tokenCount);
+        metrics.add(Counters.ERRORS, errors);
+        metrics.endPhase(Phases.TOKENIZE);
+    }
+
+    // errors is the Diagnostics count when the phase started
+    private void endBuildPhase(int errors) {
+        metrics.add(Counters.NODES, nodeCount);
+        metrics.add(Counters.EDGES, edgeCount);
+        metrics.add(Counters.ERRORS, diagnostics.getCount() - errors);
+        metrics.endPhase(Phases.BUILD);
+    }
+
+    private Token pollToken(LinkedList<Token> tokens) {
+        lastToken = tokens.poll();
+        return lastToken;
+    }
+
+    private int createNode(DecompStates type, Token token) {
+        int node = nodeCount++;
+        statementNodes.set(node, type == DecompStates.P1);
+        listener.enterNode(node, type, token);
+        return node;
+    }
+
+    private void setNodeType(int node, DecompStates type) {
+        statementNodes.set(node, type == DecompStates.P1);
+        listener.nodeType(node, type);
+    }
+
+    private boolean isStatementNode(int node) {
+        return node >= 0 && statementNodes.get(node);
+    }
+
+    private void linkNodes(int from, int to) {
+        if (from >= 0 && branchNodes.get(from))
+            linkNodes(from, to, EdgeTypes.BRANCH);
+        else
+            linkNodes(from, to, EdgeTypes.FLOW);
+    }
+
+    private void linkNodes(int from, int to, EdgeTypes type) {
+        // Parse root is not a node, so it has no edges
+        if (from == ROOT_NODE)
+            return;
+
+        // Control never falls through a jump; its only edge is to where it jumps
+        if (jumpNodes.get(from) && type != EdgeTypes.JUMP)
+            return;
+
+        ++edgeCount;
+        listener.edge(from, to, type);
+    }
+
+    private void enterJumpScope(boolean isLoop) {
+        jumpScopes.add(new JumpScope(isLoop));
+    }
+
+    // Link the pending jumps of the innermost scope and leave it. Breaks and returns go to
+    // exitNode and continues to continueNode; NULL_NODE leaves them without an edge, as does a
+    // goto to a label the function does not have.
+    private void exitJumpScope(int exitNode, int continueNode) {
+        JumpScope scope = jumpScopes.remove(jumpScopes.size() - 1);
+
+        if (exitNode != NULL_NODE) {
+            for (int jump : scope.exits)
+                linkNodes(jump, exitNode, EdgeTypes.JUMP);
+        }
+
+        if (continueNode != NULL_NODE) {
+            for (int jump : scope.continues)
+                linkNodes(jump, continueNode, EdgeTypes.JUMP);
+        }
+
+        for (int i = 0; i < scope.gotos.size(); ++i) {
+            Integer label = scope.labels.get(scope.gotoLabels.get(i));
+            if (label != null)
+                linkNodes(scope.gotos.get(i), label, EdgeTypes.JUMP);
+        }
     }
 
-    private Node<Integer> buildTRee(Node<Integer> root, LinkedList<Token> tokens,
-            Integer startState) {
+    // Innermost loop scope inside the current function, or function scope if isLoop is false
+    private JumpScope findJumpScope(boolean isLoop) {
+        for (int i = jumpScopes.size() - 1; i >= 0; --i) {
+            JumpScope scope = jumpScopes.get(i);
+            if (scope.isLoop == isLoop)
+                return scope;
+            if (!scope.isLoop)
+                break;
+        }
+        return null;
+    }
+
+    // Report that token is not accepted in state; a null token means the tokens ran out
+    private void reportError(int state, Token token, Recoveries recovery) {
+        int expected = 0;
+        for (int input = 0; input < TokenStates.values().length; ++input) {
+            if (states[state][input] != FSMStates.ERROR.ordinal())
+                expected |= 1 << input;
+        }
+
+        if (token != null)
+            diagnostics.report(ErrorCodes.UNEXPECTED_TOKEN, token.index, expected, token.type,
+                    recovery);
+        else
+            diagnostics.report(ErrorCodes.UNEXPECTED_END, lastToken == null ? 0 : lastToken.index,
+                    expected, Diagnostics.NO_TOKEN, recovery);
+    }
+
+    // Panic mode recovery for a token not accepted in state. Skip tokens up to and including the
+    // next ';' or balanced '}' into an error node linked after walker, and return it so the
+    // enclosing construct goes on from there. A '}' closing an enclosing block is left for it.
+    private int recover(int walker, int state, LinkedList<Token> tokens, boolean isTopLevel) {
+        reportError(state, tokens.peek(), Recoveries.SKIP_TO_SYNC);
+
+        int error_node = NULL_NODE;
+        int depth = 0; // Depth of braces opened in the skipped tokens
+
+        while (!tokens.isEmpty()) {
+            int input = tokens.peek().type;
+
+            if (input == TokenStates.BRACE_CLOSE.ordinal() && depth == 0 && !isTopLevel)
+                break;
+
+            Token token = pollToken(tokens);
+            if (error_node == NULL_NODE) {
+                error_node = createNode(DecompStates.ERROR, token);
+                linkNodes(walker, error_node);
+            } else {
+                listener.nodeToken(error_node, token);
+            }
+
+            if (input == TokenStates.BRACE_OPEN.ordinal())
+                ++depth;
+            else if (input == TokenStates.BRACE_CLOSE.ordinal() && --depth <= 0)
+                break;
+            else if (input == TokenStates.SEMICOLON.ordinal() && depth == 0)
+                break;
+        }
+
+        // Nothing skipped, ie the error token closes the enclosing block
+        if (error_node == NULL_NODE) {
+            Token emptyToken = new Token(lastToken.index, TokenStates.ERROR.ordinal(), "");
+            error_node = createNode(DecompStates.ERROR, emptyToken);
+            linkNodes(walker, error_node);
+        }
+
+        return error_node;
+    }
+
+    // True if state is inside a construct's braces, where a statement or its '}' comes next
+    private boolean isBodyState(int state) {
+        return states[state][TokenStates.BRACE_CLOSE.ordinal()] != FSMStates.ERROR.ordinal()
+                && states[state][TokenStates.STATEMENT.ordinal()] != FSMStates.ERROR.ordinal();
+    }
+
+    void reportTokenizerError(TokenizerException e) {
+        ErrorCodes code = ErrorCodes.INVALID_CHARACTER;
+        if (e instanceof TokenizerBudgetException) {
+            boolean isSteps = ((TokenizerBudgetException) e).getLimit() == Limits.STEPS;
+            code = isSteps ? ErrorCodes.STEP_LIMIT : ErrorCodes.TIME_LIMIT;
+        }
+
+        diagnostics.report(code, e.getIndex(), 0, Diagnostics.NO_TOKEN, Recoveries.STOP_PARSE);
+    }
+
+    private int buildTRee(int root, LinkedList<Token> tokens, Integer startState) {
         if (startState == null) {
             Token peekToken = tokens.peek();
             int peekInput = peekToken.type;
@@ -772,7 +1283,7 @@ public class Parser {
         boolean isStartState = isFSMStartState(startState);
 
         if (!isStartState)
-            return null;
+            return NULL_NODE;
 
         if (startState == FSMStates.STATEMENT_START.ordinal())
             return buildStatementTree(root, tokens);
@@ -786,13 +1297,17 @@ public class Parser {
             return buildForLoopTree(root, tokens);
         if (startState == FSMStates.FUNC_START.ordinal())
             return buildFunctionTree(root, tokens);
+        if (startState == FSMStates.JUMP_START.ordinal())
+            return buildJumpTree(root, tokens);
+        if (startState == FSMStates.LABEL_START.ordinal())
+            return buildLabelTree(root, tokens);
 
         return root;
     }
 
-    private Node<Integer> buildStatementTree(Node<Integer> root, LinkedList<Token> tokens) {
-        if (root != null) {
-            Token token = tokens.poll();
+    private int buildStatementTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
             int input = token.type;
             int state = states[FSMStates.INIT_START.ordinal()][input];
             boolean isStartState = state == FSMStates.STATEMENT_START.ordinal();
@@ -801,27 +1316,21 @@ public class Parser {
             if (!isStartState)
                 return root;
 
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
+
             // Create walker and previous state
-            Node<Integer> walker = root; // Walker will be used to link next nodes
+            int walker = root; // Walker will be used to link next nodes
 
             // Create first node if root node is not type statement
-            if (root.type != DecompStates.P1.name()) {
-                Node<Integer> start_node = new Node<Integer>(root.val + 1);
-                start_node.tokens.add(token);
-                start_node.type = mapFSMStateToDecompState(state); // Store DecompStates at root
-                start_node.parents.add(root);
-                root.children.add(start_node);
+            if (!isStatementNode(root)) {
+                int start_node = createNode(type, token); // Store DecompStates at root
+                linkNodes(root, start_node);
                 walker = start_node;
-
-                nodes.add(start_node); // Store created nodes for final list
             } else {
-                root.tokens.add(token);
+                listener.nodeToken(root, token);
             }
 
-            // Map our node states so we can reconnect it later if needed
-            Map<Integer, Node<Integer>> map = new HashMap<>();
-            map.put(state, walker); // Map root to initial state
-
             while (!tokens.isEmpty()) {
                 Token peekToken = tokens.peek();
                 int peekInput = peekToken.type;
@@ -829,19 +1338,19 @@ public class Parser {
 
                 // No errors, just merge statement nodes
                 if (peekState != FSMStates.ERROR.ordinal()) {
-                    token = tokens.poll();
-                    walker.tokens.add(token);
+                    token = pollToken(tokens);
+                    listener.nodeToken(walker, token);
 
-                    if (peekState == FSMStates.STATEMENT_END.ordinal())
+                    if (peekState == FSMStates.STATEMENT_END.ordinal()) {
+                        listener.endConstruct(type, token);
                         return walker;
+                    }
 
                     state = peekState;
                 }
                 // If error, exit;
                 else {
-                    System.out.println("There was an error parsing the grammar for (" + walker.type
-                            + ") token: " + walker.tokens.get(0));
-                    return walker;
+                    return recover(walker, state, tokens, false);
                 }
             }
             return walker;
@@ -849,9 +1358,9 @@ public class Parser {
         return root;
     }
 
-    private Node<Integer> buildIfTree(Node<Integer> root, LinkedList<Token> tokens) {
-        if (root != null) {
-            Token token = tokens.poll();
+    private int buildIfTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
             int input = token.type;
             int state = states[FSMStates.INIT_START.ordinal()][input];
             boolean isStartState = state == FSMStates.IF_START.ordinal();
@@ -860,20 +1369,20 @@ public class Parser {
             if (!isStartState)
                 return root;
 
-            // Create first node
-            Node<Integer> start_node = new Node<Integer>(root.val + 1);
-            start_node.tokens.add(token);
-            start_node.type = mapFSMStateToDecompState(state); // Store DecompStates at root
-            start_node.parents.add(root);
-            root.children.add(start_node);
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
 
-            nodes.add(start_node); // Store created nodes for final list
+            // Create first node
+            int start_node = createNode(type, token); // Store DecompStates at root
+            branchNodes.set(start_node);
+            linkNodes(root, start_node);
 
             // Create walker and previous state
-            Node<Integer> walker = start_node; // Walker will be used to link next nodes
-            ArrayList<Node<Integer>> lastWalkers = new ArrayList<Node<Integer>>();
-            Node<Integer> end_node = null;
+            int walker = start_node; // Walker will be used to link next nodes
+            ArrayList<Integer> lastWalkers = new ArrayList<Integer>();
+            int end_node = NULL_NODE;
 
+            boolean hasElse = false;
             boolean isSuccess = false;
 
             while (!tokens.isEmpty()) {
@@ -887,33 +1396,32 @@ public class Parser {
                             || peekState == FSMStates.IF_ELSE_SINGLE_STATEMENT.ordinal()) {
                         walker = buildTRee(walker, tokens, null);
 
-                        Node<Integer> lastWalker = new Node<Integer>(walker.val + 1);
-                        lastWalker.tokens.add(walker.tokens.get(walker.tokens.size() - 1));
-                        lastWalker.type = mapFSMStateToDecompState(peekState);
-                        lastWalker.parents.add(walker);
-                        walker.children.add(lastWalker);
-                        lastWalkers.add(lastWalker);
+                        // A jump has its own edge, so the branch needs no node to the end node
+                        if (!jumpNodes.get(walker)) {
+                            int lastWalker =
+                                    createNode(mapFSMStateToDecompState(peekState), lastToken);
+                            linkNodes(walker, lastWalker);
+                            lastWalkers.add(lastWalker);
 
-                        nodes.add(lastWalker);
-                        walker = lastWalker;
+                            walker = lastWalker;
+                        }
 
                         isSuccess = true;
                     } else if (peekState == FSMStates.IF_THEN_STATEMENT.ordinal()
                             || peekState == FSMStates.IF_ELSE_STATEMENT.ordinal()) {
                         walker = buildTRee(walker, tokens, null);
                     } else if (peekState == FSMStates.IF_ELSE.ordinal()) {
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
-                        Node<Integer> new_node = new Node<Integer>(walker.val + 1);
-                        new_node.tokens.add(token);
-                        new_node.parents.add(start_node);
-                        start_node.children.add(new_node);
+                        int new_node = createNode(null, token);
+                        linkNodes(start_node, new_node);
 
-                        nodes.add(new_node);
                         walker = new_node;
 
                         // In else branch, IF node is no longer D0 but D1
-                        start_node.type = DecompStates.D1.name();
+                        type = DecompStates.D1;
+                        setNodeType(start_node, type);
+                        hasElse = true;
                     } else if (peekState == FSMStates.IF_THEN_END.ordinal()
                             || peekState == FSMStates.ELSE_IF_END.ordinal()
                             || peekState == FSMStates.IF_ELSE_END.ordinal()) {
@@ -921,30 +1429,27 @@ public class Parser {
                         // then there is empty body {}; create empty body node
                         if (state == FSMStates.IF_THEN_BRACE_OPEN.ordinal()
                                 || state == FSMStates.IF_ELSE_BRACE_OPEN.ordinal()) {
-                            Node<Integer> emptyNode = new Node<Integer>(walker.val + 1);
                             Token emptyToken =
-                                    new Token(walker.tokens.get(walker.tokens.size() - 1).index,
-                                            DecompStates.P1.ordinal(), "");
-                            emptyNode.tokens.add(emptyToken);
-                            emptyNode.type = DecompStates.P1.name();
-                            emptyNode.parents.add(walker);
-                            walker.children.add(emptyNode);
-                            nodes.add(emptyNode);
+                                    new Token(lastToken.index, TokenStates.EMPTY.ordinal(), "");
+                            int emptyNode = createNode(DecompStates.P1, emptyToken);
+                            linkNodes(walker, emptyNode);
 
                             walker = emptyNode;
                         }
 
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
-                        Node<Integer> lastWalker = new Node<Integer>(walker.val + 1);
-                        lastWalker.tokens.add(token);
-                        lastWalker.type = mapFSMStateToDecompState(peekState);
-                        lastWalker.parents.add(walker);
-                        walker.children.add(lastWalker);
-                        lastWalkers.add(lastWalker);
+                        // The } of a branch ending in a jump is kept in the jump's node
+                        if (jumpNodes.get(walker)) {
+                            listener.nodeToken(walker, token);
+                        } else {
+                            int lastWalker =
+                                    createNode(mapFSMStateToDecompState(peekState), token);
+                            linkNodes(walker, lastWalker);
+                            lastWalkers.add(lastWalker);
 
-                        nodes.add(lastWalker);
-                        walker = lastWalker;
+                            walker = lastWalker;
+                        }
 
                         isSuccess = true;
 
@@ -952,18 +1457,23 @@ public class Parser {
                             break;
                         }
                     } else {
-                        token = tokens.poll();
-                        walker.tokens.add(token);
+                        token = pollToken(tokens);
+                        listener.nodeToken(walker, token);
                     }
                 }
                 // If error, exit;
                 else {
+                    // Inside the braces only the bad statement is skipped and the body goes on
+                    if (isBodyState(state)) {
+                        walker = recover(walker, state, tokens, false);
+                        state = states[state][TokenStates.STATEMENT.ordinal()];
+                        continue;
+                    }
+
                     if (isSuccess)
                         break;
 
-                    System.out.println("There was an error parsing the grammar for (" + walker.type
-                            + ") token: " + walker.tokens.get(0));
-                    return walker;
+                    return recover(walker, state, tokens, false);
                 }
 
                 state = peekState;
@@ -972,31 +1482,27 @@ public class Parser {
             // Finalize CFG structure
 
             // Create end_node
-            end_node = new Node<Integer>(walker.val + 1);
-            end_node.tokens.add(walker.tokens.get(walker.tokens.size() - 1));
-            end_node.type = mapFSMStateToDecompState(state);
-            nodes.add(end_node);
-
-            // Connect to start walker if it does not have more than two children
-            if (start_node.children.size() < 2) {
-                end_node.parents.add(start_node);
-                start_node.children.add(end_node);
-            }
+            end_node = createNode(mapFSMStateToDecompState(state), lastToken);
+
+            // Connect to start walker if there is no else branch
+            if (!hasElse)
+                linkNodes(start_node, end_node);
 
             // Connect previous last walkers
-            for (Node<Integer> lastWalker : lastWalkers) {
-                end_node.parents.add(lastWalker);
-                lastWalker.children.add(end_node);
-            }
+            for (int lastWalker : lastWalkers)
+                linkNodes(lastWalker, end_node);
+
+            listener.region(start_node, end_node, type);
+            listener.endConstruct(type, lastToken);
 
             return end_node;
         }
         return root;
     }
 
-    private Node<Integer> buildWhileTree(Node<Integer> root, LinkedList<Token> tokens) {
-        if (root != null) {
-            Token token = tokens.poll();
+    private int buildWhileTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
             int input = token.type;
             int state = states[FSMStates.INIT_START.ordinal()][input];
             boolean isStartState = state == FSMStates.WHILE_START.ordinal();
@@ -1005,18 +1511,18 @@ public class Parser {
             if (!isStartState)
                 return root;
 
-            // Create first node
-            Node<Integer> start_node = new Node<Integer>(root.val + 1);
-            start_node.tokens.add(token);
-            start_node.type = mapFSMStateToDecompState(state); // Store DecompStates at root
-            start_node.parents.add(root);
-            root.children.add(start_node);
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
 
-            nodes.add(start_node); // Store created nodes for final list
+            // Create first node
+            int start_node = createNode(type, token); // Store DecompStates at root
+            branchNodes.set(start_node);
+            linkNodes(root, start_node);
+            enterJumpScope(true);
 
             // Create walker and previous state
-            Node<Integer> walker = start_node; // Walker will be used to link next nodes
-            Node<Integer> end_node = null;
+            int walker = start_node; // Walker will be used to link next nodes
+            int end_node = NULL_NODE;
 
             boolean isSuccess = false;
 
@@ -1038,41 +1544,39 @@ public class Parser {
                         // If peekState is END but state from pevious is BRACE_OPEN
                         // then there is empty body {}; create empty body node
                         if (state == FSMStates.WHILE_BRACE_OPEN.ordinal()) {
-                            Node<Integer> emptyNode = new Node<Integer>(walker.val + 1);
                             Token emptyToken =
-                                    new Token(walker.tokens.get(walker.tokens.size() - 1).index,
-                                            DecompStates.P1.ordinal(), "");
-                            emptyNode.tokens.add(emptyToken);
-                            emptyNode.type = DecompStates.P1.name();
-                            emptyNode.parents.add(walker);
-                            walker.children.add(emptyNode);
-                            nodes.add(emptyNode);
+                                    new Token(lastToken.index, TokenStates.EMPTY.ordinal(), "");
+                            int emptyNode = createNode(DecompStates.P1, emptyToken);
+                            linkNodes(walker, emptyNode);
 
                             walker = emptyNode;
                         }
 
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
-                        end_node = new Node<Integer>(walker.val + 1);
-                        end_node.tokens.add(token);
-                        end_node.type = mapFSMStateToDecompState(peekState);
-                        nodes.add(end_node);
+                        end_node = createNode(mapFSMStateToDecompState(peekState), token);
 
                         isSuccess = true;
                         break;
                     } else {
-                        token = tokens.poll();
-                        walker.tokens.add(token);
+                        token = pollToken(tokens);
+                        listener.nodeToken(walker, token);
                     }
                 }
                 // If error, exit;
                 else {
+                    // Inside the braces only the bad statement is skipped and the body goes on
+                    if (isBodyState(state)) {
+                        walker = recover(walker, state, tokens, false);
+                        state = states[state][TokenStates.STATEMENT.ordinal()];
+                        continue;
+                    }
+
                     if (isSuccess)
                         break;
 
-                    System.out.println("There was an error parsing the grammar for (" + walker.type
-                            + ") token: " + walker.tokens.get(0));
-                    return walker;
+                    exitJumpScope(NULL_NODE, NULL_NODE);
+                    return recover(walker, state, tokens, false);
                 }
 
                 state = peekState;
@@ -1081,29 +1585,29 @@ public class Parser {
             // Finalize CFG structure
 
             // Link walker to start node
-            walker.children.add(start_node);
-            start_node.parents.add(walker);
+            linkNodes(walker, start_node, EdgeTypes.LOOP_BACK);
 
             // Create end node if it does not exist using last token
-            if (end_node == null) {
-                end_node = new Node<Integer>(walker.val + 1);
-                end_node.tokens.add(walker.tokens.get(walker.tokens.size() - 1));
-                end_node.type = mapFSMStateToDecompState(state);
-                nodes.add(end_node);
-            }
+            if (end_node == NULL_NODE)
+                end_node = createNode(mapFSMStateToDecompState(state), lastToken);
 
             // Link start node to end node
-            end_node.parents.add(start_node);
-            start_node.children.add(end_node);
+            linkNodes(start_node, end_node);
+
+            // Link breaks to end node and continues to start node
+            exitJumpScope(end_node, start_node);
+
+            listener.region(start_node, end_node, type);
+            listener.endConstruct(type, lastToken);
 
             return end_node;
         }
         return root;
     }
 
-    private Node<Integer> buildDoWhileTree(Node<Integer> root, LinkedList<Token> tokens) {
-        if (root != null) {
-            Token token = tokens.poll();
+    private int buildDoWhileTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
             int input = token.type;
             int state = states[FSMStates.INIT_START.ordinal()][input];
             boolean isStartState = state == FSMStates.DO_WHILE_START.ordinal();
@@ -1112,18 +1616,17 @@ public class Parser {
             if (!isStartState)
                 return root;
 
-            // Create first node
-            Node<Integer> start_node = new Node<Integer>(root.val + 1);
-            start_node.tokens.add(token);
-            start_node.type = mapFSMStateToDecompState(state); // Store DecompStates at root
-            start_node.parents.add(root);
-            root.children.add(start_node);
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
 
-            nodes.add(start_node); // Store created nodes for final list
+            // Create first node
+            int start_node = createNode(type, token); // Store DecompStates at root
+            linkNodes(root, start_node);
+            enterJumpScope(true);
 
             // Create walker and previous state
-            Node<Integer> walker = start_node; // Walker will be used to link next nodes
-            Node<Integer> end_node = null;
+            int walker = start_node; // Walker will be used to link next nodes
+            int end_node = NULL_NODE;
             boolean isSuccess = false;
 
             while (!tokens.isEmpty()) {
@@ -1135,65 +1638,79 @@ public class Parser {
                     if (peekState == FSMStates.DO_WHILE_STATEMENT.ordinal()) {
                         walker = buildTRee(walker, tokens, null);
                     } else if (peekState == FSMStates.DO_WHILE_END.ordinal()) {
-                        token = tokens.poll();
-                        walker.tokens.add(token);
+                        token = pollToken(tokens);
+                        listener.nodeToken(walker, token);
                         end_node = walker;
 
                         isSuccess = true;
                         break;
                     } else if (peekState == FSMStates.DO_WHILE_BRACE_CLOSE.ordinal()
                             && state == FSMStates.DO_WHILE_BRACE_OPEN.ordinal()) {
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
                         // If peekState is END but state from pevious is BRACE_OPEN
                         // then there is empty body {}; create empty body node
-                        Node<Integer> emptyNode = new Node<Integer>(walker.val + 1);
-                        emptyNode.tokens.add(token);
-                        emptyNode.type = DecompStates.P1.name();
-                        emptyNode.parents.add(walker);
-                        walker.children.add(emptyNode);
-                        nodes.add(emptyNode);
+                        int emptyNode = createNode(DecompStates.P1, token);
+                        linkNodes(walker, emptyNode);
 
                         walker = emptyNode;
                     } else if (peekState == FSMStates.DO_WHILE_KEYWORD.ordinal()) {
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
-                        Node<Integer> new_node = new Node<Integer>(walker.val + 1);
-                        new_node.tokens.add(token);
-                        new_node.parents.add(walker);
-                        walker.children.add(new_node);
+                        int new_node = createNode(null, token);
+                        linkNodes(walker, new_node);
                         walker = new_node;
-                        nodes.add(new_node);
                     } else {
-                        token = tokens.poll();
-                        walker.tokens.add(token);
+                        token = pollToken(tokens);
+                        listener.nodeToken(walker, token);
                     }
                 }
                 // If error, exit;
                 else {
+                    // Inside the braces only the bad statement is skipped and the body goes on
+                    if (isBodyState(state)) {
+                        walker = recover(walker, state, tokens, false);
+                        state = states[state][TokenStates.STATEMENT.ordinal()];
+                        continue;
+                    }
+
                     if (isSuccess)
                         break;
 
-                    System.out.println("There was an error parsing the grammar for (" + walker.type
-                            + ") token: " + walker.tokens.get(0));
-                    return walker;
+                    exitJumpScope(NULL_NODE, NULL_NODE);
+                    return recover(walker, state, tokens, false);
                 }
                 state = peekState;
             }
 
             // Error, exit;
-            if (end_node == null || end_node == start_node) {
-                System.out.println("There was an error parsing the grammar for (" + walker.type
-                        + ") token: " + walker.tokens.get(0));
+            if (end_node == NULL_NODE || end_node == start_node) {
+                reportError(state, tokens.peek(), Recoveries.END_CONSTRUCT);
+                exitJumpScope(NULL_NODE, NULL_NODE);
                 return walker;
             }
 
             // Finalize CFG structure
 
             // Link end node to start node
-            end_node.type = mapFSMStateToDecompState(state);
-            end_node.children.add(start_node);
-            start_node.parents.add(end_node);
+            setNodeType(end_node, mapFSMStateToDecompState(state));
+            branchNodes.set(end_node);
+            linkNodes(end_node, start_node, EdgeTypes.LOOP_BACK);
+
+            // Breaks need a node after the loop, so make one as the test's false edge
+            if (!jumpScopes.get(jumpScopes.size() - 1).exits.isEmpty()) {
+                Token emptyToken = new Token(lastToken.index, TokenStates.EMPTY.ordinal(), "");
+                int exit_node = createNode(DecompStates.P1, emptyToken);
+                linkNodes(end_node, exit_node);
+
+                exitJumpScope(exit_node, end_node);
+                end_node = exit_node;
+            } else {
+                exitJumpScope(NULL_NODE, end_node);
+            }
+
+            listener.region(start_node, end_node, type);
+            listener.endConstruct(type, lastToken);
 
             return end_node;
         }
@@ -1201,9 +1718,9 @@ public class Parser {
     }
 
 
-    private Node<Integer> buildForLoopTree(Node<Integer> root, LinkedList<Token> tokens) {
-        if (root != null) {
-            Token token = tokens.poll();
+    private int buildForLoopTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
             int input = token.type;
             int state = states[FSMStates.INIT_START.ordinal()][input];
             boolean isStartState = state == FSMStates.FOR_START.ordinal();
@@ -1212,21 +1729,20 @@ public class Parser {
             if (!isStartState)
                 return root;
 
-            // Create first node
-            Node<Integer> start_node = new Node<Integer>(root.val + 1);
-            start_node.tokens.add(token);
-            start_node.type = mapFSMStateToDecompState(state); // Store DecompStates at root
-            start_node.parents.add(root);
-            root.children.add(start_node);
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
 
-            nodes.add(start_node); // Store created nodes for final list
+            // Create first node
+            int start_node = createNode(type, token); // Store DecompStates at root
+            linkNodes(root, start_node);
+            enterJumpScope(true);
 
             // Create walker and previous state
-            Node<Integer> walker = start_node; // Walker will be used to link next nodes
-            Node<Integer> forCond = null;
-            Node<Integer> forBodyLastWalker = null;
-            Node<Integer> forModify = null;
-            Node<Integer> end_node = null;
+            int walker = start_node; // Walker will be used to link next nodes
+            int forCond = NULL_NODE;
+            int forBodyLastWalker = NULL_NODE;
+            int forModify = NULL_NODE;
+            int end_node = NULL_NODE;
 
             boolean isSuccess = false;
 
@@ -1238,54 +1754,39 @@ public class Parser {
                 if (peekState != FSMStates.ERROR.ordinal()) {
                     if (peekState == FSMStates.FOR_COND.ordinal()
                             || peekState == FSMStates.FOR_COND_END.ordinal()) {
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
-                        if (forCond == null) {
-                            forCond = new Node<Integer>(walker.val + 1);
-                            forCond.tokens.add(token);
-                            forCond.type = mapFSMStateToDecompState(peekState);
-                            forCond.parents.add(start_node);
-                            start_node.children.add(forCond);
+                        if (forCond == NULL_NODE) {
+                            forCond = createNode(mapFSMStateToDecompState(peekState), token);
+                            branchNodes.set(forCond);
+                            linkNodes(start_node, forCond);
 
                             walker = forCond;
-                            nodes.add(forCond);
                         } else {
-                            walker.tokens.add(token);
+                            listener.nodeToken(walker, token);
                         }
                     } else if (peekState == FSMStates.FOR_MODIFY.ordinal()
                             || peekState == FSMStates.FOR_PAREN_CLOSE.ordinal()) {
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
-                        if (forModify == null) {
-                            forModify = new Node<Integer>(walker.val + 1);
-                            forModify.tokens.add(token);
+                        if (forModify == NULL_NODE) {
+                            forModify = createNode(null, token);
 
                             // Link forModify to forCond
-                            forModify.children.add(forCond);
-                            forCond.parents.add(forModify);
+                            linkNodes(forModify, forCond, EdgeTypes.LOOP_BACK);
 
                             walker = forModify;
-                            nodes.add(forModify);
                         } else {
-                            walker.tokens.add(token);
+                            listener.nodeToken(walker, token);
                         }
                     } else if (peekState == FSMStates.FOR_STATEMENT.ordinal()
                             || peekState == FSMStates.FOR_SINGLE_STATEMENT.ordinal()) {
-                        // Store old value
-                        int oldForCondVal = forCond.val;
-
-                        // Change to newest val so descendants are using newest node value index
-                        forCond.val = walker.val;
-
-                        if (forBodyLastWalker != null)
+                        if (forBodyLastWalker != NULL_NODE)
                             walker = buildTRee(forBodyLastWalker, tokens, null); // Recurse using
                                                                                  // last walker
                         else
                             walker = buildTRee(forCond, tokens, null); // Recurse using forCond
 
-                        // Restore old value
-                        forCond.val = oldForCondVal;
-
                         forBodyLastWalker = walker;
 
                         if (peekState == FSMStates.FOR_SINGLE_STATEMENT.ordinal()) {
@@ -1296,41 +1797,40 @@ public class Parser {
                         // If peekState is END but state from pevious is BRACE_OPEN
                         // then there is empty body {}; create empty body node
                         if (state == FSMStates.FOR_BRACE_OPEN.ordinal()) {
-                            Node<Integer> emptyNode = new Node<Integer>(walker.val + 1);
                             Token emptyToken =
-                                    new Token(walker.tokens.get(walker.tokens.size() - 1).index,
-                                            DecompStates.P1.ordinal(), "");
-                            emptyNode.tokens.add(emptyToken);
-                            emptyNode.type = DecompStates.P1.name();
-
-                            emptyNode.parents.add(forCond);
-                            forCond.children.add(emptyNode);
-                            nodes.add(emptyNode);
+                                    new Token(lastToken.index, TokenStates.EMPTY.ordinal(), "");
+                            int emptyNode = createNode(DecompStates.P1, emptyToken);
+                            linkNodes(forCond, emptyNode);
 
                             forBodyLastWalker = emptyNode;
                             walker = emptyNode;
                         }
 
-                        token = tokens.poll();
-                        end_node = new Node<Integer>(walker.val + 1);
-                        end_node.tokens.add(token);
-                        end_node.type = mapFSMStateToDecompState(peekState);
-                        nodes.add(end_node);
+                        token = pollToken(tokens);
+                        end_node = createNode(mapFSMStateToDecompState(peekState), token);
 
                         break;
                     } else {
-                        token = tokens.poll();
-                        walker.tokens.add(token);
+                        token = pollToken(tokens);
+                        listener.nodeToken(walker, token);
                     }
                 }
                 // If error, exit;
                 else {
+                    // Inside the braces only the bad statement is skipped and the body goes on
+                    if (isBodyState(state)) {
+                        walker = recover(forBodyLastWalker != NULL_NODE ? forBodyLastWalker
+                                : forCond, state, tokens, false);
+                        forBodyLastWalker = walker;
+                        state = states[state][TokenStates.STATEMENT.ordinal()];
+                        continue;
+                    }
+
                     if (isSuccess)
                         break;
 
-                    System.out.println("There was an error parsing the grammar for (" + walker.type
-                            + ") token: " + walker.tokens.get(0));
-                    return walker;
+                    exitJumpScope(NULL_NODE, NULL_NODE);
+                    return recover(walker, state, tokens, false);
                 }
 
                 state = peekState;
@@ -1339,36 +1839,34 @@ public class Parser {
             // Finalize CFG structure
 
             // Create end_node if it doesn't exist
-            if (end_node == null) {
-                end_node = new Node<Integer>(walker.val + 1);
-                end_node.tokens.add(walker.tokens.get(walker.tokens.size() - 1));
-                end_node.type = mapFSMStateToDecompState(state);
-                nodes.add(end_node);
-            }
-
-            // Link forCond to end_node
-            forCond.children.add(end_node);
-            end_node.parents.add(forCond);
+            if (end_node == NULL_NODE)
+                end_node = createNode(mapFSMStateToDecompState(state), lastToken);
 
             // If forBodyLastWalker exists, link forBodyLastWalker to forModify
-            if (forBodyLastWalker != null) {
-                forBodyLastWalker.children.add(forModify);
-                forModify.parents.add(forBodyLastWalker);
-            }
+            if (forBodyLastWalker != NULL_NODE)
+                linkNodes(forBodyLastWalker, forModify);
             // Else link forCond to forModify
-            else {
-                forCond.children.add(forModify);
-                forModify.parents.add(forCond);
-            }
+            else
+                linkNodes(forCond, forModify);
+
+            // Link forCond to end_node last, so it is forCond's false edge
+            linkNodes(forCond, end_node);
+
+            // Link breaks to end_node and continues to forModify
+            exitJumpScope(end_node, forModify);
+
+            // Init, then a while loop of the condition, body and modify
+            listener.region(start_node, end_node, DecompStates.D2);
+            listener.endConstruct(type, lastToken);
 
             return end_node;
         }
         return root;
     }
 
-    private Node<Integer> buildFunctionTree(Node<Integer> root, LinkedList<Token> tokens) {
-        if (root != null) {
-            Token token = tokens.poll();
+    private int buildFunctionTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
             int input = token.type;
             int state = states[FSMStates.INIT_START.ordinal()][input];
             boolean isStartState = state == FSMStates.FUNC_START.ordinal();
@@ -1377,18 +1875,17 @@ public class Parser {
             if (!isStartState)
                 return root;
 
-            // Create first node
-            Node<Integer> start_node = new Node<Integer>(root.val + 1);
-            start_node.tokens.add(token);
-            start_node.type = mapFSMStateToDecompState(state); // Store DecompStates at root
-            start_node.parents.add(root);
-            root.children.add(start_node);
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
 
-            nodes.add(start_node); // Store created nodes for final list
+            // Create first node
+            int start_node = createNode(type, token); // Store DecompStates at root
+            linkNodes(root, start_node);
+            enterJumpScope(false);
 
             // Create walker and previous state
-            Node<Integer> walker = start_node; // Walker will be used to link next nodes
-            Node<Integer> end_node = null;
+            int walker = start_node; // Walker will be used to link next nodes
+            int end_node = NULL_NODE;
             boolean isSuccess = false;
 
             while (!tokens.isEmpty()) {
@@ -1403,66 +1900,176 @@ public class Parser {
                         // If peekState is END but state from pevious is BRACE_OPEN
                         // then there is empty body {}; create empty body node
                         if (state == FSMStates.FUNC_BRACE_OPEN.ordinal()) {
-                            Node<Integer> emptyNode = new Node<Integer>(walker.val + 1);
                             Token emptyToken =
-                                    new Token(walker.tokens.get(walker.tokens.size() - 1).index,
-                                            DecompStates.P1.ordinal(), "");
-                            emptyNode.tokens.add(emptyToken);
-                            emptyNode.type = DecompStates.P1.name();
-                            emptyNode.parents.add(walker);
-                            walker.children.add(emptyNode);
-                            nodes.add(emptyNode);
+                                    new Token(lastToken.index, TokenStates.EMPTY.ordinal(), "");
+                            int emptyNode = createNode(DecompStates.P1, emptyToken);
+                            linkNodes(walker, emptyNode);
 
                             walker = emptyNode;
                         }
 
-                        token = tokens.poll();
+                        token = pollToken(tokens);
 
                         // If function is a statement, ie ends in a SEMICOLOn like x = get();
                         // Then change type to STATEMENT
                         // And merge it with start_node
                         if (token.type == TokenStates.SEMICOLON.ordinal()) {
-                            start_node.type = DecompStates.P1.name();
-                            start_node.tokens.add(token);
+                            setNodeType(start_node, DecompStates.P1);
+                            listener.nodeToken(start_node, token);
                             end_node = start_node;
                         } else {
-                            end_node = new Node<Integer>(walker.val + 1);
-                            end_node.tokens.add(token);
-                            end_node.type = mapFSMStateToDecompState(peekState);
-                            end_node.parents.add(walker);
-                            walker.children.add(end_node);
-                            nodes.add(end_node);
+                            end_node = createNode(mapFSMStateToDecompState(peekState), token);
+                            linkNodes(walker, end_node);
                         }
 
                         isSuccess = true;
                         break;
                     } else {
-                        token = tokens.poll();
-                        walker.tokens.add(token);
+                        token = pollToken(tokens);
+                        listener.nodeToken(walker, token);
                     }
                 }
                 // If error, exit;
                 else {
+                    // Inside the braces only the bad statement is skipped and the body goes on
+                    if (isBodyState(state)) {
+                        walker = recover(walker, state, tokens, false);
+                        state = states[state][TokenStates.STATEMENT.ordinal()];
+                        continue;
+                    }
+
                     if (isSuccess)
                         break;
 
-                    System.out.println("There was an error parsing the grammar for (" + walker.type
-                            + ") token: " + walker.tokens.get(0));
-                    return walker;
+                    exitJumpScope(NULL_NODE, NULL_NODE);
+                    return recover(walker, state, tokens, false);
                 }
                 state = peekState;
             }
 
             // Error, exit;
-            if (end_node == null) {
-                System.out.println("There was an error parsing the grammar for (" + walker.type
-                        + ") token: " + walker.tokens.get(0));
+            if (end_node == NULL_NODE) {
+                reportError(state, tokens.peek(), Recoveries.END_CONSTRUCT);
+                exitJumpScope(NULL_NODE, NULL_NODE);
                 return walker;
             }
 
+            // Link returns to end_node, the function's only exit
+            exitJumpScope(end_node, NULL_NODE);
+
+            // A function call statement is a single node, not a region
+            if (end_node != start_node)
+                listener.region(start_node, end_node, type);
+            listener.endConstruct(type, lastToken);
+
             return end_node;
         }
         return root;
     }
 
+    private int buildJumpTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
+            int input = token.type;
+            int state = states[FSMStates.INIT_START.ordinal()][input];
+            boolean isStartState = state == FSMStates.JUMP_START.ordinal();
+
+            // Exit if state is invalid start state
+            if (!isStartState)
+                return root;
+
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
+
+            int walker = root; // Walker will be used to link next nodes
+            String label = null; // Label of a goto
+
+            // A jump ends its block, so it is merged into the statements before it
+            if (!isStatementNode(root)) {
+                int start_node = createNode(type, token); // Store DecompStates at root
+                linkNodes(root, start_node);
+                walker = start_node;
+            } else {
+                listener.nodeToken(root, token);
+            }
+
+            while (!tokens.isEmpty()) {
+                Token peekToken = tokens.peek();
+                int peekInput = peekToken.type;
+                int peekState = states[state][peekInput];
+
+                if (peekState != FSMStates.ERROR.ordinal()) {
+                    token = pollToken(tokens);
+                    listener.nodeToken(walker, token);
+
+                    if (label == null && token.type == TokenStates.STATEMENT.ordinal())
+                        label = token.sequence;
+
+                    if (peekState == FSMStates.JUMP_END.ordinal())
+                        break;
+
+                    state = peekState;
+                }
+                // If error, exit;
+                else {
+                    return recover(walker, state, tokens, false);
+                }
+            }
+
+            // Finalize CFG structure
+
+            // Queue the jump in its scope, to be linked when the scope ends
+            boolean isLoopJump = input == TokenStates.BREAK.ordinal()
+                    || input == TokenStates.CONTINUE.ordinal();
+            JumpScope scope = findJumpScope(isLoopJump);
+
+            // A break or continue outside a loop falls through like a statement
+            if (scope != null) {
+                if (input == TokenStates.CONTINUE.ordinal()) {
+                    scope.continues.add(walker);
+                } else if (input == TokenStates.GOTO.ordinal()) {
+                    scope.gotos.add(walker);
+                    scope.gotoLabels.add(label);
+                } else {
+                    scope.exits.add(walker);
+                }
+
+                statementNodes.clear(walker);
+                jumpNodes.set(walker);
+            }
+
+            listener.endConstruct(type, lastToken);
+
+            return walker;
+        }
+        return root;
+    }
+
+    private int buildLabelTree(int root, LinkedList<Token> tokens) {
+        if (root != NULL_NODE) {
+            Token token = pollToken(tokens);
+            int input = token.type;
+            int state = states[FSMStates.INIT_START.ordinal()][input];
+            boolean isStartState = state == FSMStates.LABEL_START.ordinal();
+
+            // Exit if state is invalid start state
+            if (!isStartState)
+                return root;
+
+            DecompStates type = mapFSMStateToDecompState(state);
+            listener.startConstruct(type, token);
+
+            // A label is a jump target, so it always starts a new node
+            int start_node = createNode(type, token); // Store DecompStates at root
+            linkNodes(root, start_node);
+
+            String label = token.sequence.substring(0, token.sequence.length() - 1).trim();
+            findJumpScope(false).labels.put(label, start_node);
+
+            listener.endConstruct(type, token);
+
+            return start_node;
+        }
+        return root;
+    }
 }
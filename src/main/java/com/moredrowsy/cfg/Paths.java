@@ -0,0 +1,255 @@
+package com.moredrowsy.cfg;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Counts and enumerates the acyclic paths of a graph.
+ *
+ * Back edges found by a depth first search from the entry are removed, which leaves a DAG. A path
+ * goes from the entry to a node without DAG out edges, ie the function exit or the end of a loop
+ * body. Counts are computed by dynamic programming over the DAG in reverse topological order, so
+ * they take linear time however many paths there are. Paths are numbered with Ball-Larus edge
+ * values: each edge adds the number of paths through its earlier siblings, and the sum of the
+ * values along a path is its unique number in [0, count).
+ */
+public class Paths {
+    private ArrayList<Node<Integer>> nodes; // Nodes reachable from the entry, entry first
+    private int[][] successors; // DAG successors of each node index, in children order
+    private int[] postOrder; // Node indices in DFS post order, ie reverse topological order
+    private long[] saturatedCounts; // Paths from each node to a sink, up to Long.MAX_VALUE
+    private BigInteger[] counts; // Exact paths from each node to a sink, computed when needed
+    private DepthFirst search;
+
+    // First node is the entry
+    public Paths(ArrayList<Node<Integer>> nodes) {
+        this.nodes = new ArrayList<>();
+        this.search = DepthFirst.of(nodes);
+
+        if (!nodes.isEmpty()) {
+            buildDAG(search);
+            countSaturated();
+        }
+    }
+
+    // Number of acyclic paths from the entry
+    public BigInteger getCount() {
+        if (nodes.isEmpty())
+            return BigInteger.ZERO;
+
+        return getCounts()[0];
+    }
+
+    // Number of acyclic paths from the entry, or Long.MAX_VALUE if there are more
+    public long getSaturatedCount() {
+        if (nodes.isEmpty())
+            return 0;
+
+        return saturatedCounts[0];
+    }
+
+    // Number of acyclic paths from node to a sink, or zero if node is not reachable
+    public BigInteger getCount(Node<Integer> node) {
+        int index = indexOf(node);
+        return index == -1 ? BigInteger.ZERO : getCounts()[index];
+    }
+
+    // Ball-Larus value of the DAG edge from -> to, or null if there is no such edge
+    public BigInteger getEdgeValue(Node<Integer> from, Node<Integer> to) {
+        int v = indexOf(from);
+        int w = indexOf(to);
+        if (v == -1 || w == -1)
+            return null;
+
+        BigInteger[] counts = getCounts();
+        BigInteger value = BigInteger.ZERO;
+
+        for (int successor : successors[v]) {
+            if (successor == w)
+                return value;
+            value = value.add(counts[successor]);
+        }
+        return null;
+    }
+
+    // Ball-Larus number of a path starting at the entry, or null if it is not a path
+    public BigInteger getPathNumber(List<Node<Integer>> path) {
+        if (path.isEmpty() || nodes.isEmpty() || path.get(0) != nodes.get(0))
+            return null;
+
+        BigInteger number = BigInteger.ZERO;
+        for (int i = 1; i < path.size(); ++i) {
+            BigInteger value = getEdgeValue(path.get(i - 1), path.get(i));
+            if (value == null)
+                return null;
+            number = number.add(value);
+        }
+
+        if (successors[indexOf(path.get(path.size() - 1))].length != 0)
+            return null;
+
+        return number;
+    }
+
+    // Path whose Ball-Larus number is number
+    public ArrayList<Node<Integer>> getPath(BigInteger number) {
+        if (number.signum() < 0 || number.compareTo(getCount()) >= 0)
+            throw new IndexOutOfBoundsException("Path number " + number + " of " + getCount());
+
+        BigInteger[] counts = getCounts();
+        ArrayList<Node<Integer>> path = new ArrayList<>();
+        int node = 0;
+        path.add(nodes.get(node));
+
+        // Take the successor whose range of path numbers holds the rest of number
+        while (successors[node].length != 0) {
+            for (int successor : successors[node]) {
+                if (number.compareTo(counts[successor]) < 0) {
+                    node = successor;
+                    break;
+                }
+                number = number.subtract(counts[successor]);
+            }
+            path.add(nodes.get(node));
+        }
+        return path;
+    }
+
+    // Lazily enumerate at most limit paths in Ball-Larus number order
+    public Iterator<ArrayList<Node<Integer>>> enumerate(long limit) {
+        return new PathIterator(limit);
+    }
+
+    private class PathIterator implements Iterator<ArrayList<Node<Integer>>> {
+        private int[] stack = new int[nodes.size()]; // Nodes of the current path
+        private int[] next = new int[nodes.size()]; // Next successor to try at each depth
+        private int depth = nodes.isEmpty() ? -1 : 0;
+        private long remaining;
+        private boolean hasPath = false;
+
+        private PathIterator(long limit) {
+            remaining = limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasPath)
+                return true;
+            if (remaining <= 0)
+                return false;
+
+            while (depth >= 0) {
+                int node = stack[depth];
+
+                if (successors[node].length == 0 && next[depth] == 0) {
+                    // At a sink; mark it done so the next call backtracks
+                    next[depth] = 1;
+                    hasPath = true;
+                    return true;
+                }
+
+                if (next[depth] < successors[node].length) {
+                    int successor = successors[node][next[depth]++];
+                    ++depth;
+                    stack[depth] = successor;
+                    next[depth] = 0;
+                } else {
+                    --depth;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public ArrayList<Node<Integer>> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            ArrayList<Node<Integer>> path = new ArrayList<>(depth + 1);
+            for (int i = 0; i <= depth; ++i)
+                path.add(nodes.get(stack[i]));
+
+            hasPath = false;
+            --remaining;
+            return path;
+        }
+    }
+
+    // Drop the back edges of the DFS from the entry and number reachable nodes in preorder
+    private void buildDAG(DepthFirst search) {
+        for (int v : search.getPreorder())
+            nodes.add(search.getNodes().get(v));
+
+        successors = new int[nodes.size()][];
+        for (int v = 0; v < nodes.size(); ++v) {
+            int u = search.getPreorder()[v];
+            int count = 0;
+            for (int i = 0; i < search.getSuccessorCount(u); ++i) {
+                if (search.getSuccessor(u, i) != -1 && !search.isBackEdge(u, i))
+                    ++count;
+            }
+
+            successors[v] = new int[count];
+            count = 0;
+            for (int i = 0; i < search.getSuccessorCount(u); ++i) {
+                if (search.getSuccessor(u, i) != -1 && !search.isBackEdge(u, i))
+                    successors[v][count++] = search.getPreorderNumber(search.getSuccessor(u, i));
+            }
+        }
+
+        postOrder = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); ++i)
+            postOrder[i] = search.getPreorderNumber(search.getPostorder()[i]);
+    }
+
+    // Preorder number of node, or -1 if it is not reachable
+    private int indexOf(Node<Integer> node) {
+        int index = search.getIndex(node);
+        return index == -1 ? -1 : search.getPreorderNumber(index);
+    }
+
+    private void countSaturated() {
+        saturatedCounts = new long[nodes.size()];
+
+        for (int v : postOrder) {
+            if (successors[v].length == 0) {
+                saturatedCounts[v] = 1;
+                continue;
+            }
+
+            long count = 0;
+            for (int w : successors[v]) {
+                count += saturatedCounts[w];
+                if (count < 0) {
+                    count = Long.MAX_VALUE;
+                    break;
+                }
+            }
+            saturatedCounts[v] = count;
+        }
+    }
+
+    private BigInteger[] getCounts() {
+        if (counts != null)
+            return counts;
+
+        counts = new BigInteger[nodes.size()];
+
+        for (int v : postOrder) {
+            // Counts that did not saturate are exact
+            if (saturatedCounts[v] != Long.MAX_VALUE) {
+                counts[v] = BigInteger.valueOf(saturatedCounts[v]);
+                continue;
+            }
+
+            BigInteger count = BigInteger.ZERO;
+            for (int w : successors[v])
+                count = count.add(counts[w]);
+            counts[v] = count;
+        }
+        return counts;
+    }
+}
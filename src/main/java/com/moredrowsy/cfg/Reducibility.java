@@ -0,0 +1,222 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+
+/**
+ * Reducibility of a graph and its irreducible loops.
+ *
+ * A graph is reducible if T1 (remove a self loop) and T2 (merge a node into its only predecessor)
+ * collapse it into a single node. This check does the collapsing in one pass. It visits loop
+ * headers in reverse DFS preorder and merges each loop body into its header with union-find, so
+ * inner loops are collapsed before the loops around them. A loop body node with a predecessor
+ * outside the header's DFS subtree can never be merged by T2, and that makes the loop
+ * irreducible. Takes near-linear time and uses no recursion. Only nodes reachable from the entry
+ * are considered.
+ */
+public class Reducibility {
+    /**
+     * Loop that is entered at more than one node
+     */
+    public static class IrreducibleLoop {
+        private ArrayList<Node<Integer>> nodes;
+        private ArrayList<Node<Integer>> entries; // Nodes with a predecessor outside the loop
+
+        private IrreducibleLoop(ArrayList<Node<Integer>> nodes, ArrayList<Node<Integer>> entries) {
+            this.nodes = nodes;
+            this.entries = entries;
+        }
+
+        // Loop header first
+        public ArrayList<Node<Integer>> getNodes() {
+            return nodes;
+        }
+
+        public ArrayList<Node<Integer>> getEntries() {
+            return entries;
+        }
+    }
+
+    private ArrayList<Node<Integer>> nodes; // Nodes reachable from the entry, in DFS preorder
+    private DepthFirst search;
+    private int[] headers; // Innermost loop header of each node, or -1
+    private ArrayList<ArrayList<Integer>> loops; // Nodes whose innermost header is each node
+    private ArrayList<ArrayList<Integer>> preds; // Predecessors of each node
+    private ArrayList<IrreducibleLoop> irreducibleLoops;
+
+    // First node is the entry
+    public Reducibility(ArrayList<Node<Integer>> nodes) {
+        this.search = DepthFirst.of(nodes);
+        this.nodes = new ArrayList<>(search.size());
+        this.irreducibleLoops = new ArrayList<>();
+
+        for (int v : search.getPreorder())
+            this.nodes.add(nodes.get(v));
+        if (!nodes.isEmpty())
+            collapse();
+    }
+
+    public boolean isReducible() {
+        return irreducibleLoops.isEmpty();
+    }
+
+    // Outermost first
+    public ArrayList<IrreducibleLoop> getIrreducibleLoops() {
+        return irreducibleLoops;
+    }
+
+    // Innermost loop header of node, or null if node is in no loop or is not reachable
+    public Node<Integer> getLoopHeader(Node<Integer> node) {
+        int index = search.getIndex(node);
+        if (index == -1 || !search.isReachable(index))
+            return null;
+
+        int v = search.getPreorderNumber(index);
+        return headers[v] == -1 ? null : nodes.get(headers[v]);
+    }
+
+    private boolean isAncestor(int w, int v) {
+        return search.isAncestor(search.getPreorder()[w], search.getPreorder()[v]);
+    }
+
+    private void collapse() {
+        int n = nodes.size();
+
+        // Split predecessors into back edge sources and the rest. Other predecessors are kept as
+        // edges, from and to, so that when a loop is merged into its header the edges entering
+        // it from outside move to the header.
+        ArrayList<ArrayList<Integer>> backPreds = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> predFrom = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> predTo = new ArrayList<>();
+        for (int v = 0; v < n; ++v) {
+            backPreds.add(new ArrayList<>());
+            predFrom.add(new ArrayList<>());
+            predTo.add(new ArrayList<>());
+        }
+
+        for (int v = 0; v < n; ++v) {
+            int u = search.getPreorder()[v];
+            for (int i = 0; i < search.getSuccessorCount(u); ++i) {
+                if (search.getSuccessor(u, i) == -1)
+                    continue;
+
+                int w = search.getPreorderNumber(search.getSuccessor(u, i));
+                if (search.isBackEdge(u, i)) {
+                    backPreds.get(w).add(v);
+                } else {
+                    predFrom.get(w).add(v);
+                    predTo.get(w).add(w);
+                }
+            }
+        }
+
+        int[] sets = new int[n]; // Union-find parent; a set's root is its outermost header
+        int[] marks = new int[n]; // Header whose loop body holds the node, plus one
+        headers = new int[n];
+        for (int v = 0; v < n; ++v) {
+            sets[v] = v;
+            headers[v] = -1;
+        }
+
+        boolean[] isIrreducible = new boolean[n];
+        ArrayList<Integer> body = new ArrayList<>();
+
+        for (int w = n - 1; w >= 0; --w) {
+            body.clear();
+            marks[w] = w + 1;
+
+            for (int v : backPreds.get(w)) {
+                int x = find(sets, v);
+                if (marks[x] != w + 1) {
+                    marks[x] = w + 1;
+                    body.add(x);
+                }
+            }
+
+            // Walk backwards from the back edges to the rest of the loop body
+            for (int i = 0; i < body.size(); ++i) {
+                int x = body.get(i);
+                ArrayList<Integer> from = predFrom.get(x);
+                ArrayList<Integer> to = predTo.get(x);
+
+                for (int j = 0; j < from.size(); ++j) {
+                    int y = find(sets, from.get(j));
+
+                    if (!isAncestor(w, y)) {
+                        // Entered from outside; T2 cannot merge it, so pass it on to w
+                        isIrreducible[w] = true;
+                        predFrom.get(w).add(from.get(j));
+                        predTo.get(w).add(to.get(j));
+                    } else if (marks[y] != w + 1) {
+                        marks[y] = w + 1;
+                        body.add(y);
+                    }
+                }
+            }
+
+            for (int x : body) {
+                sets[x] = w;
+                headers[x] = w;
+            }
+        }
+
+        // Nodes of each loop, read by irreducibleLoop()
+        loops = new ArrayList<>();
+        preds = new ArrayList<>();
+        for (int v = 0; v < n; ++v) {
+            loops.add(new ArrayList<>());
+            preds.add(new ArrayList<>());
+        }
+        for (int v = 0; v < n; ++v) {
+            if (headers[v] != -1)
+                loops.get(headers[v]).add(v);
+
+            int u = search.getPreorder()[v];
+            for (int i = 0; i < search.getSuccessorCount(u); ++i) {
+                if (search.getSuccessor(u, i) != -1)
+                    preds.get(search.getPreorderNumber(search.getSuccessor(u, i))).add(v);
+            }
+        }
+
+        int[] loopMarks = new int[n]; // Header of the irreducible loop holding the node, plus one
+        for (int w = 0; w < n; ++w) {
+            if (isIrreducible[w])
+                irreducibleLoops.add(irreducibleLoop(w, loopMarks));
+        }
+        loops = null;
+        preds = null;
+    }
+
+    private static int find(int[] sets, int v) {
+        while (sets[v] != v) {
+            sets[v] = sets[sets[v]]; // Path halving
+            v = sets[v];
+        }
+        return v;
+    }
+
+    // Nodes whose chain of loop headers reaches w, and which of them are entered from outside
+    private IrreducibleLoop irreducibleLoop(int w, int[] marks) {
+        ArrayList<Integer> members = new ArrayList<>();
+        ArrayList<Integer> stack = new ArrayList<>();
+        stack.add(w);
+
+        while (!stack.isEmpty()) {
+            int v = stack.remove(stack.size() - 1);
+            marks[v] = w + 1;
+            members.add(v);
+            stack.addAll(loops.get(v));
+        }
+
+        ArrayList<Node<Integer>> memberNodes = new ArrayList<>(members.size());
+        ArrayList<Node<Integer>> entries = new ArrayList<>();
+        for (int v : members) {
+            boolean isEntry = v == 0;
+            for (int u : preds.get(v))
+                isEntry |= marks[u] != w + 1;
+            memberNodes.add(nodes.get(v));
+            if (isEntry)
+                entries.add(nodes.get(v));
+        }
+        return new IrreducibleLoop(memberNodes, entries);
+    }
+}
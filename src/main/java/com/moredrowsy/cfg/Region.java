@@ -0,0 +1,79 @@
+package com.moredrowsy.cfg;
+
+import java.util.ArrayList;
+
+/**
+ * Node of the program structure tree, ie a construct of the source and the regions nested in it.
+ *
+ * The nodes of a region are numbered contiguously from its entry to its exit, and structured
+ * edges only enter it at its entry and leave it from its exit. A jump (return, goto, or a break
+ * or continue out of an if) can still cross the boundary, so each region says whether it is
+ * really single entry and single exit. The root region is the whole parse.
+ */
+public class Region {
+    DecompStates type; // D0, D1, D2 (while and for) or D3; P1 for a function or the root
+    Node<Integer> entry;
+    Node<Integer> exit;
+    Region parent;
+    ArrayList<Region> children; // In source order
+    ArrayList<Node<Integer>> nodes; // Nodes not in a child region, in creation order
+    boolean isSingleEntry;
+    boolean isSingleExit;
+
+    Region(DecompStates type, Node<Integer> entry, Node<Integer> exit) {
+        this.type = type;
+        this.entry = entry;
+        this.exit = exit;
+        this.parent = null;
+        this.children = new ArrayList<>();
+        this.nodes = new ArrayList<>();
+        this.isSingleEntry = true;
+        this.isSingleExit = true;
+    }
+
+    public DecompStates getType() {
+        return type;
+    }
+
+    // Null for an empty parse
+    public Node<Integer> getEntry() {
+        return entry;
+    }
+
+    public Node<Integer> getExit() {
+        return exit;
+    }
+
+    // Null for the root
+    public Region getParent() {
+        return parent;
+    }
+
+    public ArrayList<Region> getChildren() {
+        return children;
+    }
+
+    public ArrayList<Node<Integer>> getNodes() {
+        return nodes;
+    }
+
+    public boolean isSingleEntry() {
+        return isSingleEntry;
+    }
+
+    public boolean isSingleExit() {
+        return isSingleExit;
+    }
+
+    // True if node is in this region or one nested in it; node must be of the same parse
+    public boolean contains(Node<Integer> node) {
+        return entry != null && entry.val <= node.val && node.val <= exit.val;
+    }
+
+    @Override
+    public String toString() {
+        if (entry == null)
+            return "t: " + type;
+        return "t: " + type + ", v: " + entry.val + ".." + exit.val;
+    }
+}
@@ -0,0 +1,559 @@
+package com.moredrowsy.cfg;
+
+import java.util.Arrays;
+
+/**
+ * Static single assignment form of the statements of a DefUse.
+ *
+ * Dominators are found with the Cooper-Harvey-Kennedy iteration over reverse postorder, and phis
+ * are placed at the iterated dominance frontiers of each variable's definitions. Only variables
+ * used in some node before being defined in it get phis (semi-pruned SSA). Renaming walks the
+ * dominator tree with explicit stacks. Nodes are DefUse node indices and the graph entry is node
+ * 0; nodes not reachable from it have no dominator and their statements no values.
+ *
+ * Values are ints. Values 0 to getVariableCount() - 1 are the variables' values on entry, and the
+ * rest are defined by a statement or a phi. Everything is kept in int arrays, so passes over the
+ * SSA form do no string work.
+ */
+public class SSA {
+    public static final int UNDEFINED = -1; // Value in unreachable code
+
+    private DefUse defUse;
+    private DepthFirst search; // Cached search of the graph
+    private int n; // Number of nodes
+
+    private int[] predStart; // Predecessors of each node, in the order of their edges
+    private int[] preds;
+    private int[] succStart; // Successors of each node, in children order
+    private int[] succs;
+    private int[] succSlots; // Position of each successor edge among the successor's preds
+
+    private int[] order; // Reachable nodes in reverse postorder
+    private int[] rpo; // Position of each node in order, or -1 if not reachable
+    private int[] idoms; // Immediate dominator, or -1 for the entry and unreachable nodes
+    private int[] frontierStart; // Dominance frontier of each node
+    private int[] frontiers;
+
+    private int phiCount;
+    private int[] phiStart; // Phis of each node
+    private int[] phiVariables;
+    private int[] phiValues;
+    private int[] operandStart; // Operands of each phi
+    private int[] operands;
+
+    private int valueCount;
+    private int[] valueVariables;
+    private int[] valueDefs; // Statement, -2 - phi for a phi, or -1 on entry
+    private int[] statementValues; // Value defined by each statement, or UNDEFINED
+    private int[] useStart; // Values used by each statement, parallel to DefUse.getUse
+    private int[] useValues;
+
+    public SSA(DefUse defUse) {
+        this.defUse = defUse;
+        this.search = DepthFirst.of(defUse.getNodes());
+        this.n = defUse.getNodes().size();
+
+        buildEdges();
+        orderNodes();
+        findDominators();
+        findFrontiers();
+        placePhis();
+        rename();
+    }
+
+    public DefUse getDefUse() {
+        return defUse;
+    }
+
+    public int getPredecessorCount(int node) {
+        return predStart[node + 1] - predStart[node];
+    }
+
+    public int getPredecessor(int node, int i) {
+        return preds[predStart[node] + i];
+    }
+
+    public int getSuccessorCount(int node) {
+        return succStart[node + 1] - succStart[node];
+    }
+
+    // Successors are in children order, so a branch's successor 0 is its true edge
+    public int getSuccessor(int node, int i) {
+        return succs[succStart[node] + i];
+    }
+
+    // Edges are numbered by target node and then by position among its predecessors, so the
+    // operands of a phi follow the edges into its node
+    public int getEdgeCount() {
+        return preds.length;
+    }
+
+    public int getInEdge(int node, int i) {
+        return predStart[node] + i;
+    }
+
+    public int getOutEdge(int node, int i) {
+        int k = succStart[node] + i;
+        return predStart[succs[k]] + succSlots[k];
+    }
+
+    public boolean isReachable(int node) {
+        return rpo[node] != -1;
+    }
+
+    // Reachable nodes in reverse postorder, entry first
+    public int[] getOrder() {
+        return order;
+    }
+
+    // Immediate dominator of node, or -1 for the entry and unreachable nodes
+    public int getIdom(int node) {
+        return idoms[node];
+    }
+
+    public boolean dominates(int a, int b) {
+        if (!isReachable(a) || !isReachable(b))
+            return false;
+
+        while (rpo[b] > rpo[a])
+            b = idoms[b];
+        return a == b;
+    }
+
+    public int getFrontierCount(int node) {
+        return frontierStart[node + 1] - frontierStart[node];
+    }
+
+    public int getFrontier(int node, int i) {
+        return frontiers[frontierStart[node] + i];
+    }
+
+    public int getPhiCount() {
+        return phiCount;
+    }
+
+    // First phi of node; its phis end at getFirstPhi(node + 1)
+    public int getFirstPhi(int node) {
+        return phiStart[node];
+    }
+
+    public int getPhiVariable(int phi) {
+        return phiVariables[phi];
+    }
+
+    public int getPhiValue(int phi) {
+        return phiValues[phi];
+    }
+
+    public int getOperandCount(int phi) {
+        return operandStart[phi + 1] - operandStart[phi];
+    }
+
+    public int getOperand(int phi, int i) {
+        return operands[operandStart[phi] + i];
+    }
+
+    // Node the operand comes from, or -1 for the value on entry. Operands follow the node's
+    // predecessors, after the entry value if the phi is at the entry.
+    public int getOperandNode(int phi, int i) {
+        int node = getPhiNode(phi);
+        if (node == 0)
+            return i == 0 ? -1 : getPredecessor(node, i - 1);
+        return getPredecessor(node, i);
+    }
+
+    public int getPhiNode(int phi) {
+        int low = 0;
+        int high = n - 1;
+
+        // Last node whose first phi is at or before phi
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (phiStart[middle] <= phi)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    public int getValueVariable(int value) {
+        return valueVariables[value];
+    }
+
+    // Statement that defines value, or -1 if a phi defines it or it is the value on entry
+    public int getValueStatement(int value) {
+        return valueDefs[value] >= 0 ? valueDefs[value] : -1;
+    }
+
+    // Phi that defines value, or -1
+    public int getValuePhi(int value) {
+        return valueDefs[value] <= -2 ? -2 - valueDefs[value] : -1;
+    }
+
+    public int getStatementValue(int statement) {
+        return statementValues[statement];
+    }
+
+    // Value of DefUse.getUse(statement, i)
+    public int getUseValue(int statement, int i) {
+        return useValues[useStart[statement] + i];
+    }
+
+    public String getValueName(int value) {
+        String name = defUse.getVariable(valueVariables[value]);
+        return value < defUse.getVariableCount() ? name + "_0" : name + "_" + value;
+    }
+
+    private void buildEdges() {
+        predStart = new int[n + 1];
+        succStart = new int[n + 1];
+
+        for (int v = 0; v < n; ++v) {
+            for (int i = 0; i < search.getSuccessorCount(v); ++i) {
+                int w = search.getSuccessor(v, i);
+                if (w != -1) {
+                    ++predStart[w + 1];
+                    ++succStart[v + 1];
+                }
+            }
+        }
+        for (int v = 0; v < n; ++v) {
+            predStart[v + 1] += predStart[v];
+            succStart[v + 1] += succStart[v];
+        }
+
+        preds = new int[predStart[n]];
+        succs = new int[succStart[n]];
+        succSlots = new int[succStart[n]];
+        int[] fill = Arrays.copyOf(predStart, n);
+
+        for (int v = 0; v < n; ++v) {
+            int k = succStart[v];
+            for (int i = 0; i < search.getSuccessorCount(v); ++i) {
+                int w = search.getSuccessor(v, i);
+                if (w == -1)
+                    continue;
+                succs[k] = w;
+                succSlots[k] = fill[w] - predStart[w];
+                preds[fill[w]++] = v;
+                ++k;
+            }
+        }
+    }
+
+    private void orderNodes() {
+        order = search.getReversePostorder();
+        rpo = new int[n];
+        Arrays.fill(rpo, -1);
+        for (int i = 0; i < order.length; ++i)
+            rpo[order[i]] = i;
+    }
+
+    private void findDominators() {
+        idoms = new int[n];
+        Arrays.fill(idoms, -1);
+        if (n == 0)
+            return;
+
+        idoms[0] = 0;
+        boolean isChanged = true;
+
+        while (isChanged) {
+            isChanged = false;
+
+            for (int i = 1; i < order.length; ++i) {
+                int b = order[i];
+                int idom = -1;
+
+                for (int k = predStart[b]; k < predStart[b + 1]; ++k) {
+                    int p = preds[k];
+                    if (idoms[p] == -1)
+                        continue; // Not processed yet or not reachable
+                    idom = idom == -1 ? p : intersect(p, idom);
+                }
+
+                if (idoms[b] != idom) {
+                    idoms[b] = idom;
+                    isChanged = true;
+                }
+            }
+        }
+        idoms[0] = -1;
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (rpo[a] > rpo[b])
+                a = idoms[a];
+            while (rpo[b] > rpo[a])
+                b = idoms[b];
+        }
+        return a;
+    }
+
+    // For each join node b, walk up from its predecessors to b's immediate dominator. The entry
+    // is also a join if it has predecessors, since control arrives there on entry too.
+    private void findFrontiers() {
+        int[] marks = new int[n]; // Join node last added to each frontier, plus one
+        int[] counts = new int[n + 1];
+
+        for (int pass = 0; pass < 2; ++pass) {
+            Arrays.fill(marks, 0);
+
+            for (int b : order) {
+                int stop = b == 0 ? -1 : idoms[b];
+                if (b != 0 && predStart[b + 1] - predStart[b] < 2)
+                    continue;
+
+                for (int k = predStart[b]; k < predStart[b + 1]; ++k) {
+                    int runner = preds[k];
+                    if (!isReachable(runner))
+                        continue;
+
+                    while (runner != stop) {
+                        if (marks[runner] != b + 1) {
+                            marks[runner] = b + 1;
+                            if (pass == 0)
+                                ++counts[runner + 1];
+                            else
+                                frontiers[counts[runner]++] = b;
+                        }
+                        runner = runner == 0 ? -1 : idoms[runner];
+                    }
+                }
+            }
+
+            if (pass == 0) {
+                for (int v = 0; v < n; ++v)
+                    counts[v + 1] += counts[v];
+                frontierStart = Arrays.copyOf(counts, n + 1);
+                frontiers = new int[counts[n]];
+            }
+        }
+    }
+
+    private void placePhis() {
+        int variableCount = defUse.getVariableCount();
+        boolean[] isGlobal = new boolean[variableCount];
+        int[] killed = new int[variableCount]; // Node that last defined each variable, plus one
+        int[] defStart = new int[variableCount + 1]; // Nodes that define each variable
+        int[] defNodes = null;
+
+        // Variables used in a node before it defines them, and the nodes defining each variable
+        for (int pass = 0; pass < 2; ++pass) {
+            Arrays.fill(killed, 0);
+
+            for (int v : order) {
+                for (int s = defUse.getFirst(v); s < defUse.getFirst(v + 1); ++s) {
+                    for (int i = 0; i < defUse.getUseCount(s); ++i) {
+                        if (killed[defUse.getUse(s, i)] != v + 1)
+                            isGlobal[defUse.getUse(s, i)] = true;
+                    }
+
+                    int def = defUse.getDef(s);
+                    if (def == DefUse.NO_VARIABLE || killed[def] == v + 1)
+                        continue;
+
+                    killed[def] = v + 1;
+                    if (pass == 0)
+                        ++defStart[def + 1];
+                    else
+                        defNodes[defStart[def]++] = v;
+                }
+            }
+
+            if (pass == 0) {
+                for (int x = 0; x < variableCount; ++x)
+                    defStart[x + 1] += defStart[x];
+                defNodes = new int[defStart[variableCount]];
+            } else {
+                // Filling moved each start to the next variable's start
+                for (int x = variableCount; x > 0; --x)
+                    defStart[x] = defStart[x - 1];
+                defStart[0] = 0;
+            }
+        }
+
+        // Iterated dominance frontier of each variable's definitions, with the entry defining
+        // every variable
+        int[] hasPhi = new int[n]; // Variable last given a phi at each node, plus one
+        int[] isQueued = new int[n]; // Variable each node was last queued for, plus one
+        int[] work = new int[n];
+        int[] pairs = new int[16]; // Node and variable of each phi
+
+        for (int x = 0; x < variableCount; ++x) {
+            if (!isGlobal[x] || n == 0)
+                continue;
+
+            int size = 0;
+            work[size++] = 0;
+            isQueued[0] = x + 1;
+            for (int k = defStart[x]; k < defStart[x + 1]; ++k) {
+                if (isQueued[defNodes[k]] != x + 1) {
+                    isQueued[defNodes[k]] = x + 1;
+                    work[size++] = defNodes[k];
+                }
+            }
+
+            for (int i = 0; i < size; ++i) {
+                int y = work[i];
+                for (int k = frontierStart[y]; k < frontierStart[y + 1]; ++k) {
+                    int f = frontiers[k];
+                    if (hasPhi[f] == x + 1)
+                        continue;
+
+                    hasPhi[f] = x + 1;
+                    if (2 * phiCount + 2 > pairs.length)
+                        pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                    pairs[2 * phiCount] = f;
+                    pairs[2 * phiCount + 1] = x;
+                    ++phiCount;
+
+                    if (isQueued[f] != x + 1) {
+                        isQueued[f] = x + 1;
+                        work[size++] = f;
+                    }
+                }
+            }
+        }
+
+        // Group phis by node
+        phiStart = new int[n + 1];
+        for (int p = 0; p < phiCount; ++p)
+            ++phiStart[pairs[2 * p] + 1];
+        for (int v = 0; v < n; ++v)
+            phiStart[v + 1] += phiStart[v];
+
+        phiVariables = new int[phiCount];
+        int[] fill = Arrays.copyOf(phiStart, n + 1);
+        for (int p = 0; p < phiCount; ++p)
+            phiVariables[fill[pairs[2 * p]]++] = pairs[2 * p + 1];
+
+        phiValues = new int[phiCount];
+        operandStart = new int[phiCount + 1];
+        for (int v = 0; v < n; ++v) {
+            int count = predStart[v + 1] - predStart[v] + (v == 0 ? 1 : 0);
+            for (int p = phiStart[v]; p < phiStart[v + 1]; ++p)
+                operandStart[p + 1] = operandStart[p] + count;
+        }
+
+        operands = new int[operandStart[phiCount]];
+        Arrays.fill(operands, UNDEFINED);
+        for (int p = phiStart[0]; n > 0 && p < phiStart[1]; ++p)
+            operands[operandStart[p]] = phiVariables[p]; // Value on entry
+    }
+
+    // Walk the dominator tree keeping the current value of each variable. Definitions are
+    // logged so they can be undone when the walk leaves the node.
+    private void rename() {
+        int variableCount = defUse.getVariableCount();
+        int capacity = variableCount + phiCount + defUse.size();
+        valueVariables = new int[capacity];
+        valueDefs = new int[capacity];
+        for (int x = 0; x < variableCount; ++x) {
+            valueVariables[x] = x;
+            valueDefs[x] = -1;
+        }
+        valueCount = variableCount;
+
+        statementValues = new int[defUse.size()];
+        Arrays.fill(statementValues, UNDEFINED);
+        useStart = new int[defUse.size() + 1];
+        for (int s = 0; s < defUse.size(); ++s)
+            useStart[s + 1] = useStart[s] + defUse.getUseCount(s);
+        useValues = new int[useStart[defUse.size()]];
+        Arrays.fill(useValues, UNDEFINED);
+        Arrays.fill(phiValues, UNDEFINED);
+
+        if (n == 0)
+            return;
+
+        // Dominator tree children
+        int[] childStart = new int[n + 1];
+        for (int i = 1; i < order.length; ++i)
+            ++childStart[idoms[order[i]] + 1];
+        for (int v = 0; v < n; ++v)
+            childStart[v + 1] += childStart[v];
+        int[] children = new int[childStart[n]];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int i = 1; i < order.length; ++i)
+            children[fill[idoms[order[i]]]++] = order[i];
+
+        int[] current = new int[variableCount];
+        for (int x = 0; x < variableCount; ++x)
+            current[x] = x;
+
+        int[] log = new int[2 * capacity]; // Variable and its previous value of each definition
+        int logSize = 0;
+        int[] stack = new int[n];
+        int[] next = new int[n]; // Next dominator tree child to visit
+        int[] logMarks = new int[n]; // Log size when each node on the stack was entered
+        int depth = 0;
+        int b = 0;
+
+        while (true) {
+            // Enter b
+            stack[depth] = b;
+            next[depth] = childStart[b];
+            logMarks[depth++] = logSize;
+
+            for (int p = phiStart[b]; p < phiStart[b + 1]; ++p) {
+                int x = phiVariables[p];
+                phiValues[p] = newValue(x, -2 - p);
+                log[logSize++] = x;
+                log[logSize++] = current[x];
+                current[x] = phiValues[p];
+            }
+
+            for (int s = defUse.getFirst(b); s < defUse.getFirst(b + 1); ++s) {
+                for (int i = 0; i < defUse.getUseCount(s); ++i)
+                    useValues[useStart[s] + i] = current[defUse.getUse(s, i)];
+
+                int x = defUse.getDef(s);
+                if (x != DefUse.NO_VARIABLE) {
+                    statementValues[s] = newValue(x, s);
+                    log[logSize++] = x;
+                    log[logSize++] = current[x];
+                    current[x] = statementValues[s];
+                }
+            }
+
+            for (int k = succStart[b]; k < succStart[b + 1]; ++k) {
+                int w = succs[k];
+                int slot = succSlots[k] + (w == 0 ? 1 : 0);
+                for (int p = phiStart[w]; p < phiStart[w + 1]; ++p)
+                    operands[operandStart[p] + slot] = current[phiVariables[p]];
+            }
+
+            // Leave nodes whose dominator tree children are done
+            b = -1;
+            while (depth > 0) {
+                int top = stack[depth - 1];
+                if (next[depth - 1] < childStart[top + 1]) {
+                    b = children[next[depth - 1]++];
+                    break;
+                }
+
+                while (logSize > logMarks[depth - 1]) {
+                    logSize -= 2;
+                    current[log[logSize]] = log[logSize + 1];
+                }
+                --depth;
+            }
+
+            if (b == -1)
+                break;
+        }
+    }
+
+    private int newValue(int variable, int def) {
+        valueVariables[valueCount] = variable;
+        valueDefs[valueCount] = def;
+        return valueCount++;
+    }
+}
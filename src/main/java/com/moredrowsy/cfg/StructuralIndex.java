@@ -0,0 +1,106 @@
+package com.moredrowsy.cfg;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Positions of structural characters, eg the delimiters ( ) { } ;, in a string.
+ *
+ * Scans 8 characters at a time with SWAR on long words, like simdjson's structural index. The
+ * low bytes of the characters are copied into a byte array, each word is compared with every
+ * delimiter at once, and the set bits of the result are the positions. A character whose low
+ * byte is a delimiter but whose high byte is not 0 is dropped. An instance is reused from string
+ * to string, so it belongs to one thread.
+ */
+public class StructuralIndex {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    private String delimiters;
+    private long[] patterns; // Each delimiter in every byte of a word
+    private byte[] bytes; // Low bytes of the string, padded with zeros to whole words
+    private int[] positions;
+    private int size;
+
+    // Delimiters are ASCII characters other than 0
+    public StructuralIndex(String delimiters) {
+        this.delimiters = delimiters;
+        this.patterns = new long[delimiters.length()];
+        for (int i = 0; i < delimiters.length(); ++i) {
+            char c = delimiters.charAt(i);
+            if (c == 0 || c > 0x7f)
+                throw new IllegalArgumentException("Delimiter is not ASCII or is 0: " + (int) c);
+            patterns[i] = ONES * c;
+        }
+
+        this.bytes = new byte[64];
+        this.positions = new int[16];
+    }
+
+    public String getDelimiters() {
+        return delimiters;
+    }
+
+    // Number of delimiters found by the last index
+    public int size() {
+        return size;
+    }
+
+    // Position in the string of delimiter i, in increasing order
+    public int get(int i) {
+        return positions[i];
+    }
+
+    // Find the delimiters of str from start to end
+    @SuppressWarnings("deprecation")
+    public void index(String str, int start, int end) {
+        int length = end - start;
+        int words = (length + 7) >>> 3;
+        if (bytes.length < words << 3)
+            bytes = new byte[Math.max(words << 3, bytes.length * 2)];
+
+        // Keeps only the low byte of each character, which is all the words need
+        str.getBytes(start, end, bytes, 0);
+        Arrays.fill(bytes, length, words << 3, (byte) 0);
+        size = 0;
+
+        for (int w = 0; w < words; ++w) {
+            long word = (long) LONGS.get(bytes, w << 3);
+            long found = 0;
+            for (long pattern : patterns)
+                found |= zeroBytes(word ^ pattern);
+
+            while (found != 0) {
+                int position = start + (w << 3) + (Long.numberOfTrailingZeros(found) >>> 3);
+                found &= found - 1;
+                if (str.charAt(position) <= 0x7f)
+                    add(position);
+            }
+        }
+    }
+
+    // Same as index, one character at a time
+    void indexScalar(String str, int start, int end) {
+        size = 0;
+        for (int i = start; i < end; ++i) {
+            if (delimiters.indexOf(str.charAt(i)) != -1)
+                add(i);
+        }
+    }
+
+    // High bit of each byte that is 0 in x, and no others
+    private static long zeroBytes(long x) {
+        long y = (x & LOW_BITS) + LOW_BITS; // High bit of each byte with a low bit set
+        return ~(y | x | LOW_BITS);
+    }
+
+    private void add(int position) {
+        if (size == positions.length)
+            positions = Arrays.copyOf(positions, size * 2);
+        positions[size++] = position;
+    }
+}
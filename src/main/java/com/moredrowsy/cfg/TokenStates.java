@@ -0,0 +1,9 @@
+package com.moredrowsy.cfg;
+
+/**
+ * Token types produced by the Tokenizer; Token.type is the ordinal. EMPTY is only made by the
+ * Parser, as the token of a node with no source, eg an empty body.
+ */
+public enum TokenStates {
+    ERROR, INIT_START, FUNCTION, STATEMENT, SEMICOLON, WHILE, DO, FOR, IF, ELSE, PAREN_OPEN, PAREN_CLOSE, BRACE_OPEN, BRACE_CLOSE, LAMBDA, BREAK, CONTINUE, RETURN, GOTO, LABEL, EMPTY,
+}
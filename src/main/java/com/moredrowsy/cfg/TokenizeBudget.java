@@ -0,0 +1,106 @@
+package com.moredrowsy.cfg;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on the work of one tokenizing run: steps and elapsed time.
+ *
+ * A step is a character of a line plus each character read by a regex rule, so a rule that
+ * backtracks badly uses up the budget instead of running for seconds. Regex rules read the line
+ * through a CharSequence that charges every CHECK_INTERVAL reads, and the time is checked then
+ * and at each line. Threads tokenizing chunks of the same run share the budget.
+ */
+public class TokenizeBudget {
+    public static enum Limits {
+        STEPS, TIME
+    }
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    static final int CHECK_INTERVAL = 4096;
+
+    private long maxSteps;
+    private long maxNanos;
+    private AtomicLong steps;
+    private volatile long start;
+
+    // Either limit may be UNLIMITED
+    public TokenizeBudget(long maxSteps, long maxMillis) {
+        this.maxSteps = maxSteps;
+        this.maxNanos =
+                maxMillis == UNLIMITED ? UNLIMITED : TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        this.steps = new AtomicLong();
+        start();
+    }
+
+    // Start a run with the whole budget
+    public void start() {
+        steps.set(0);
+        start = System.nanoTime();
+    }
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    // Steps used since start
+    public long getSteps() {
+        return steps.get();
+    }
+
+    // Add count steps on the line; throws TokenizerBudgetException if a limit is passed
+    void charge(long count, int line) {
+        long total = steps.addAndGet(count);
+        if (total > maxSteps)
+            throw new TokenizerBudgetException(Limits.STEPS, total, line);
+
+        if (maxNanos != UNLIMITED && System.nanoTime() - start > maxNanos)
+            throw new TokenizerBudgetException(Limits.TIME, total, line);
+    }
+
+    /**
+     * Line read by regex rules, charging the budget as it is read. Belongs to one thread.
+     */
+    class Text implements CharSequence {
+        private String str;
+        private int line;
+        private int reads; // Not charged yet
+
+        Text reset(String str, int line) {
+            this.str = str;
+            this.line = line;
+            this.reads = 0;
+            return this;
+        }
+
+        // Charge the reads left over
+        void flush() {
+            charge(reads, line);
+            reads = 0;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                charge(reads, line);
+                reads = 0;
+            }
+            return str.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return str.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return str.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return str;
+        }
+    }
+}
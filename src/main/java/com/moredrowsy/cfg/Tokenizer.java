@@ -1,54 +1,223 @@
 package com.moredrowsy.cfg;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Splits a string into tokens by trying rules in the order they were added.
+ *
+ * Regex rules match at the current position. Delimiter, span and call rules are found with a
+ * StructuralIndex of the delimiters instead, so a position never walks more than once past the
+ * text between delimiters.
+ */
 public class Tokenizer {
+    private static enum Kinds {
+        REGEX, DELIMITER, SPAN, CALL
+    }
+
     private class TokenInfo {
         public final Pattern regex;
         public final int type;
+        public final Kinds kind;
+        public final char open; // Delimiter, or opening delimiter of a call
+        public final char close;
 
         public TokenInfo(Pattern regex, int type) {
+            this(Kinds.REGEX, regex, type, (char) 0, (char) 0);
+        }
+
+        public TokenInfo(Kinds kind, Pattern regex, int type, char open, char close) {
             super();
+            this.kind = kind;
             this.regex = regex;
             this.type = type;
+            this.open = open;
+            this.close = close;
+        }
+    }
+
+    // Per thread state of tokenizing one string
+    private class Scan {
+        private StructuralIndex structure = new StructuralIndex(delimiters.toString());
+        private Matcher[] matchers = new Matcher[tokenInfos.size()]; // Made on first use
+        private TokenizeBudget.Text budgetText = budget == null ? null : budget.new Text();
+        private CharSequence text; // Line as read by the matchers
+
+        private void start(String str, int index) {
+            structure.index(str, 0, str.length());
+            text = budgetText == null ? str : budgetText.reset(str, index);
+            for (Matcher m : matchers) {
+                if (m != null)
+                    m.reset(text);
+            }
         }
     }
 
     private LinkedList<TokenInfo> tokenInfos;
     private LinkedList<Token> tokens;
+    private StringBuilder delimiters; // Characters of the delimiter and call rules
+    private ThreadLocal<Scan> scans; // Replaced when rules or the budget change
+    private TokenizeBudget budget; // Limits on tokenizing, or null
 
     public Tokenizer() {
         tokenInfos = new LinkedList<TokenInfo>();
         tokens = new LinkedList<Token>();
+        delimiters = new StringBuilder();
+        scans = ThreadLocal.withInitial(Scan::new);
     }
 
     public void add(String regex, int type) {
-        tokenInfos.add(
-                new TokenInfo(Pattern.compile("^(" + regex + ")", Pattern.CASE_INSENSITIVE), type));
+        addRule(new TokenInfo(Pattern.compile("^(" + regex + ")", Pattern.CASE_INSENSITIVE), type));
+    }
+
+    // Rule for c by itself; c is ASCII
+    public void addDelimiter(char c, int type) {
+        addRule(new TokenInfo(Kinds.DELIMITER, null, type, c, (char) 0));
+    }
+
+    // Rule for a run of characters that are not delimiters, like [^delimiters]+
+    public void addSpan(int type) {
+        addRule(new TokenInfo(Kinds.SPAN, null, type, (char) 0, (char) 0));
+    }
+
+    // Rule for a span, open, a span or nothing, and close, like f(a, b)
+    public void addCall(char open, char close, int type) {
+        addRule(new TokenInfo(Kinds.CALL, null, type, open, close));
+    }
+
+    private void addRule(TokenInfo info) {
+        tokenInfos.add(info);
+        for (char c : new char[] {info.open, info.close}) {
+            if (c > 0x7f)
+                throw new IllegalArgumentException("Delimiter is not ASCII: " + c);
+            if (c != 0 && delimiters.indexOf(String.valueOf(c)) == -1)
+                delimiters.append(c);
+        }
+        scans = ThreadLocal.withInitial(Scan::new);
+    }
+
+    public TokenizeBudget getBudget() {
+        return budget;
+    }
+
+    // Charge tokenizing to budget, or nothing if it is null. The caller starts the budget.
+    public void setBudget(TokenizeBudget budget) {
+        this.budget = budget;
+        scans = ThreadLocal.withInitial(Scan::new);
     }
 
     public void tokenize(String str, int index) {
-        String s = str.trim();
         tokens.clear();
+        tokenize(str, index, tokens);
+    }
 
-        while (!s.equals("")) {
-            boolean match = false;
+    // Append the tokens of str to out. Uses no state besides the rules and the budget, so threads
+    // can share it. Throws TokenizerBudgetException if the budget runs out.
+    public void tokenize(String str, int index, List<Token> out) {
+        int end = str.length();
+        while (end > 0 && str.charAt(end - 1) <= ' ')
+            --end;
+        int pos = skipSpace(str, 0, end);
 
-            for (TokenInfo info : tokenInfos) {
-                Matcher m = info.regex.matcher(s);
+        Scan scan = scans.get();
+        if (scan.budgetText != null)
+            budget.charge(str.length(), index);
+        scan.start(str, index);
+        StructuralIndex structure = scan.structure;
+        int next = 0; // First delimiter at or after pos
+
+        while (pos < end) {
+            while (next < structure.size() && structure.get(next) < pos)
+                ++next;
 
-                if (m.find()) {
-                    match = true;
-                    String tok = m.group().trim();
-                    s = m.replaceFirst("").trim();
-                    tokens.add(new Token(index, info.type, tok));
+            int rule = 0;
+            int matchEnd = -1;
+            TokenInfo match = null;
+
+            for (TokenInfo info : tokenInfos) {
+                matchEnd = match(scan, rule++, info, str, pos, end, next);
+                if (matchEnd != -1) {
+                    match = info;
                     break;
                 }
             }
-            if (!match)
-                throw new TokenizerException("Unexpected character in input: " + s);
+            if (match == null)
+                throw new TokenizerException(
+                        "Unexpected character in input: " + str.substring(pos, end), index);
+
+            out.add(new Token(index, match.type, str.substring(pos, matchEnd).trim()));
+            pos = skipSpace(str, matchEnd, end);
+        }
+
+        if (scan.budgetText != null)
+            scan.budgetText.flush();
+    }
+
+    // End of the rule's match at pos, or -1. next is the first delimiter at or after pos.
+    private int match(Scan scan, int rule, TokenInfo info, String str, int pos, int end,
+            int next) {
+        StructuralIndex structure = scan.structure;
+        int delimiter = next < structure.size() ? structure.get(next) : end;
+
+        switch (info.kind) {
+            case DELIMITER:
+                return str.charAt(pos) == info.open ? pos + 1 : -1;
+            case SPAN:
+                return delimiter > pos ? delimiter : -1;
+            case CALL:
+                if (delimiter == pos || delimiter == end || str.charAt(delimiter) != info.open
+                        || next + 1 == structure.size())
+                    return -1;
+                int close = structure.get(next + 1);
+                return str.charAt(close) == info.close ? close + 1 : -1;
+            default:
+                Matcher m = scan.matchers[rule];
+                if (m == null)
+                    m = scan.matchers[rule] = info.regex.matcher(scan.text);
+
+                m.region(pos, end);
+                return m.lookingAt() ? m.end() : -1;
+        }
+    }
+
+    // First position from pos on that is not white space, as trimmed by String.trim
+    private static int skipSpace(String str, int pos, int end) {
+        while (pos < end && str.charAt(pos) <= ' ')
+            ++pos;
+        return pos;
+    }
+
+    // Tokenize strings in chunks of about chunkSize characters in parallel on pool, appending
+    // the tokens to out in order. The first string's line index is index. If a string fails,
+    // only the tokens of the strings before it are appended, and its exception is thrown.
+    public void tokenize(List<String> strings, int index, List<Token> out, ForkJoinPool pool,
+            int chunkSize) {
+        // Chunk i is the strings from starts[i] to starts[i + 1]
+        ArrayList<Integer> starts = new ArrayList<>();
+        long characters = chunkSize;
+        for (int i = 0; i < strings.size(); ++i) {
+            if (characters >= chunkSize) {
+                starts.add(i);
+                characters = 0;
+            }
+            characters += strings.get(i).length() + 1;
+        }
+        starts.add(strings.size());
+
+        Chunks chunks = new Chunks(strings, index, starts);
+        pool.invoke(chunks.new Task(0, starts.size() - 1));
+
+        for (int i = 0; i < chunks.tokens.size(); ++i) {
+            out.addAll(chunks.tokens.get(i));
+            if (chunks.errors[i] != null)
+                throw chunks.errors[i];
         }
     }
 
@@ -56,4 +225,69 @@ public class Tokenizer {
         return tokens;
     }
 
+    /**
+     * Tokens of each chunk of strings, filled by forked tasks
+     */
+    private class Chunks {
+        private List<String> strings;
+        private int index;
+        private ArrayList<Integer> starts;
+        private List<List<Token>> tokens; // Null until the chunk is tokenized
+        private TokenizerException[] errors;
+        private AtomicInteger failed; // First chunk that failed; later ones are skipped
+
+        private Chunks(List<String> strings, int index, ArrayList<Integer> starts) {
+            this.strings = strings;
+            this.index = index;
+            this.starts = starts;
+            int count = starts.size() - 1;
+            tokens = new ArrayList<>(Collections.nCopies(count, null));
+            errors = new TokenizerException[count];
+            failed = new AtomicInteger(count);
+        }
+
+        private void tokenize(int chunk) {
+            int end = starts.get(chunk + 1);
+            ArrayList<Token> out = new ArrayList<>();
+            tokens.set(chunk, out);
+
+            for (int i = starts.get(chunk); i < end && chunk < failed.get(); ++i) {
+                int size = out.size();
+                try {
+                    Tokenizer.this.tokenize(strings.get(i), index + i, out);
+                } catch (TokenizerException e) {
+                    out.subList(size, out.size()).clear(); // Drop the line's partial tokens
+                    errors[chunk] = e;
+                    failed.accumulateAndGet(chunk, Math::min);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Halves its range of chunks until one is left
+         */
+        private class Task extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private int first;
+            private int end;
+
+            private Task(int first, int end) {
+                this.first = first;
+                this.end = end;
+            }
+
+            @Override
+            protected void compute() {
+                if (end - first == 1) {
+                    tokenize(first);
+                } else if (end > first) {
+                    int middle = (first + end) >>> 1;
+                    invokeAll(new Task(first, middle), new Task(middle, end));
+                }
+            }
+        }
+    }
+
 }
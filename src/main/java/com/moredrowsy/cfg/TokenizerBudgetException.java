@@ -0,0 +1,26 @@
+package com.moredrowsy.cfg;
+
+import com.moredrowsy.cfg.TokenizeBudget.Limits;
+
+public class TokenizerBudgetException extends TokenizerException {
+    private static final long serialVersionUID = 1L;
+
+    private final Limits limit;
+    private final long steps;
+
+    public TokenizerBudgetException(Limits limit, long steps, int index) {
+        super("Tokenizer " + limit + " budget exceeded after " + steps + " steps", index);
+        this.limit = limit;
+        this.steps = steps;
+    }
+
+    // Limit that was passed
+    public Limits getLimit() {
+        return limit;
+    }
+
+    // Steps used when the limit was passed
+    public long getSteps() {
+        return steps;
+    }
+}
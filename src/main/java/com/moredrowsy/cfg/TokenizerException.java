@@ -1,7 +1,15 @@
 package com.moredrowsy.cfg;
 
 public class TokenizerException extends RuntimeException {
-    public TokenizerException(String msg) {
+    private final int index;
+
+    public TokenizerException(String msg, int index) {
         super(msg);
+        this.index = index;
+    }
+
+    // Line index of the string that failed to tokenize
+    public int getIndex() {
+        return index;
     }
 }
@@ -1,14 +1,28 @@
 package com.moredrowsy.cfg;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Unit test for simple App.
  */
 public class AppTest 
 {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * Rigorous Test :-)
      */
@@ -17,4 +31,53 @@ public class AppTest
     {
         assertTrue( true );
     }
+
+    private static String run(String stdin, String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = App.run(args, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+        return status + "\n" + out.toString("UTF-8") + err.toString("UTF-8");
+    }
+
+    @Test
+    public void readsStdinAsJson() throws IOException {
+        String output = run("a = 1;\nwhile(x) {\nb = 2;\n}\n", "--format=json", "-");
+
+        assertTrue(output.startsWith("0\n{\"file\":\"<stdin>\",\"nodes\":[{\"id\":0,"));
+        assertTrue(output.contains("\"edges\":[[0,1],[1,2],[1,3],[2,1]]"));
+    }
+
+    @Test
+    public void writesFilesInOrderWithWorkers() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        for (int i = 0; i < 20; ++i)
+            Files.write(directory.resolve(String.format("f%02d.c", i)),
+                    ("v" + i + " = 1;\n").getBytes(StandardCharsets.UTF_8));
+
+        String output = run("", "-m", "-w", "4", directory.toString());
+        String glob = run("", "-m", directory.resolve("f1*.c").toString());
+
+        String[] lines = output.split("\n");
+        assertEquals("0", lines[0]);
+        assertEquals(21, lines.length);
+        for (int i = 0; i < 20; ++i)
+            assertTrue(lines[i + 1].contains(String.format("f%02d.c: bytes=", i)));
+        assertEquals(11, glob.split("\n").length);
+    }
+
+    @Test
+    public void rejectsBadOptions() throws IOException {
+        assertTrue(run("", "--format", "xml").startsWith("2\ncfg: unknown format xml"));
+        assertTrue(run("", "-w", "0").startsWith("2\n"));
+        assertTrue(run("", "/no/such/file").startsWith("1\ncfg: /no/such/file"));
+    }
+
+    @Test
+    public void rejectsInputsThatMatchNoFiles() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        assertEquals("1\ncfg: no input files\n", run("", directory.resolve("*.c").toString()));
+        assertEquals("1\ncfg: no input files\n", run("", directory.toString()));
+    }
 }
@@ -0,0 +1,31 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Unit test for BasicBlocks.
+ */
+public class BasicBlocksTest {
+    @Test
+    public void mergesStraightLineChains() {
+        Parser parser = ParserTest.createParser("int main() {", "a = 1;", "while(x) {", "b = 2;",
+                "}", "c = get();", "d = 4;", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+        int edges = ParserTest.countEdges(nodes);
+
+        ArrayList<Node<Integer>> blocks = BasicBlocks.coalesce(nodes);
+
+        // main + a, while, b, } + c + d + }
+        assertEquals(4, blocks.size());
+        assertEquals(edges - (nodes.size() - blocks.size()), ParserTest.countEdges(blocks));
+        assertEquals(DecompStates.D2, blocks.get(1).type);
+        assertEquals("}", blocks.get(3).tokens.get(blocks.get(3).tokens.size() - 1).sequence);
+        for (int i = 0; i < blocks.size(); ++i)
+            assertEquals(i, (int) blocks.get(i).val);
+    }
+}
@@ -0,0 +1,129 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Unit test for ConstantPropagation.
+ */
+public class ConstantPropagationTest {
+    private static ConstantPropagation propagate(Parser parser) {
+        parser.parse();
+        return new ConstantPropagation(new SSA(new DefUse(parser.getNodes())));
+    }
+
+    // Value defined by the statement whose token is sequence
+    private static int valueOf(ConstantPropagation propagation, String sequence) {
+        DefUse defUse = propagation.getSSA().getDefUse();
+        for (int s = 0; s < defUse.size(); ++s) {
+            if (defUse.getToken(s).sequence.equals(sequence))
+                return propagation.getSSA().getStatementValue(s);
+        }
+        return SSA.UNDEFINED;
+    }
+
+    private static void assertSameResult(ConstantPropagation expected,
+            ConstantPropagation actual) {
+        SSA ssa = expected.getSSA();
+        for (int v = 0; v < ssa.getDefUse().getNodes().size(); ++v)
+            assertEquals(expected.isExecutable(v), actual.isExecutable(v));
+        for (int e = 0; e < ssa.getEdgeCount(); ++e)
+            assertEquals(expected.isEdgeExecutable(e), actual.isEdgeExecutable(e));
+        for (int value = 0; value < ssa.getValueCount(); ++value) {
+            assertEquals(expected.getLattice(value), actual.getLattice(value));
+            assertEquals(expected.getConstant(value), actual.getConstant(value));
+        }
+    }
+
+    @Test
+    public void skipsConstantGuards() {
+        Parser parser = ParserTest.createParser("int main() {", "if(false) {", "a = 1;", "}",
+                "while(true) {", "b = 2;", "}", "c = 3;", "}");
+        ConstantPropagation propagation = propagate(parser);
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        assertFalse(propagation.isExecutable(ParserTest.findNode(nodes, "a = 1")));
+        assertTrue(propagation.isExecutable(ParserTest.findNode(nodes, "b = 2")));
+        assertFalse(propagation.isExecutable(ParserTest.findNode(nodes, "c = 3")));
+        assertTrue(propagation.isExecutable(nodes.get(0)));
+    }
+
+    @Test
+    public void propagatesThroughAssignmentsAndPhis() {
+        Parser parser = ParserTest.createParser("int f(int n) {", "x = 2;", "y = x * 3 + 1;",
+                "if(y == 7 && n) {", "c = 1;", "}", "else {", "c = 2;", "}",
+                "if(y != 7) {", "c = 3;", "}", "d = c;", "k = 5;", "i = 0;", "while(i < n) {",
+                "k = k * (y == 7 ? x - 1 : 3);", "i++;", "}", "e = k - 5;", "}");
+        ConstantPropagation propagation = propagate(parser);
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        assertEquals(7, propagation.getConstant(valueOf(propagation, "y = x * 3 + 1")));
+
+        // n is not known, so both sides of the first if run, but c = 3 cannot
+        assertTrue(propagation.isExecutable(ParserTest.findNode(nodes, "c = 1")));
+        assertTrue(propagation.isExecutable(ParserTest.findNode(nodes, "c = 2")));
+        assertFalse(propagation.isExecutable(ParserTest.findNode(nodes, "c = 3")));
+        assertFalse(propagation.isConstant(valueOf(propagation, "d = c")));
+
+        // i changes in the loop, but k keeps the value it had before it
+        assertFalse(propagation.isConstant(valueOf(propagation, "i++")));
+        assertEquals(ConstantPropagation.Lattice.BOTTOM,
+                propagation.getLattice(valueOf(propagation, "i++")));
+        assertTrue(propagation.isConstant(valueOf(propagation, "e = k - 5")));
+        assertEquals(0, propagation.getConstant(valueOf(propagation, "e = k - 5")));
+
+        assertSameResult(ConstantPropagation.iterate(propagation.getSSA()), propagation);
+    }
+
+    @Test
+    public void walksElseIfChainOnce() {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("int main() {");
+        lines.add("x = 150;");
+        lines.add("if(x == 0) {");
+        lines.add("y = 0;");
+        for (int i = 1; i < 300; ++i) {
+            lines.add("}");
+            lines.add("else if(x == " + i + ") {");
+            lines.add("y = " + i + ";");
+        }
+        lines.add("}");
+        lines.add("z = y + 1;");
+        lines.add("while(z != 151) {");
+        lines.add("z--;");
+        lines.add("}");
+        lines.add("}");
+
+        Parser parser = ParserTest.createParser(lines.toArray(new String[0]));
+        ConstantPropagation sparse = propagate(parser);
+        ConstantPropagation iterative = ConstantPropagation.iterate(sparse.getSSA());
+
+        assertEquals(151, sparse.getConstant(valueOf(sparse, "z = y + 1")));
+        assertTrue(sparse.isExecutable(ParserTest.findNode(parser.getNodes(), "y = 150")));
+        assertFalse(sparse.isExecutable(ParserTest.findNode(parser.getNodes(), "y = 151")));
+        assertFalse(sparse.isExecutable(ParserTest.findNode(parser.getNodes(), "z--")));
+        assertSameResult(iterative, sparse);
+
+        // Iteration evaluates every executable statement again to see nothing changed; the
+        // sparse solver evaluates each about once
+        assertTrue(3 * sparse.getEvaluationCount() < 2 * iterative.getEvaluationCount());
+    }
+
+    @Test
+    public void agreesWithIterationOnInput() {
+        Parser parser = ParserTest.createParser("int main() {", "_ = set();", "if(true) {",
+                "a = 1;", "}", "else if(false) {", "b = 2;", "}", "else {", "c = 3;", "}",
+                "d = 4;", "while(true) {", "e = 5;", "}", "f = 6;", "do {", "g = 7;",
+                "} while(true);", "for(h = 8; h < len; ++h) {", "i = 9;", "}", "j = get();", "}");
+        ConstantPropagation propagation = propagate(parser);
+
+        assertFalse(propagation.isExecutable(ParserTest.findNode(parser.getNodes(), "f = 6")));
+        assertFalse(propagation.isExecutable(ParserTest.findNode(parser.getNodes(), "b = 2")));
+        assertSameResult(ConstantPropagation.iterate(propagation.getSSA()), propagation);
+    }
+}
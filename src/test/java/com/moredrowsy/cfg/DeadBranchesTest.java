@@ -0,0 +1,51 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Unit test for DeadBranches.
+ */
+public class DeadBranchesTest {
+    private static String text(Node<Integer> node) {
+        StringBuilder str = new StringBuilder();
+        for (Token token : node.tokens)
+            str.append(token.sequence).append(" ");
+        return str.toString().trim();
+    }
+
+    @Test
+    public void removesBranchesOfConstantConditions() {
+        Parser parser = ParserTest.createParser("int main() {", "if(false) {", "a = 1;", "}",
+                "else {", "b = 2;", "}", "while(!true) {", "c = 3;", "}", "for(;;) {", "d = 4;",
+                "}", "e = 5;", "}");
+        parser.parse();
+
+        ArrayList<String> texts = new ArrayList<>();
+        for (Node<Integer> node : DeadBranches.prune(parser.getNodes()))
+            texts.add(text(node));
+
+        assertFalse(texts.contains("a = 1 ;"));
+        assertTrue(texts.contains("b = 2 ;"));
+        assertFalse(texts.contains("c = 3 ;"));
+        assertTrue(texts.contains("d = 4 ;"));
+        // for(;;) never exits
+        assertFalse(texts.contains("e = 5 ;"));
+    }
+
+    @Test
+    public void keepsUnknownConditions() {
+        Parser parser = ParserTest.createParser("if(x) {", "a = 1;", "}", "b = 2;");
+        parser.parse();
+        int size = parser.getNodes().size();
+
+        ArrayList<Node<Integer>> live = DeadBranches.prune(parser.getNodes());
+        assertEquals(size, live.size());
+        assertEquals(2, live.get(0).children.size());
+    }
+}
@@ -0,0 +1,80 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Unit test for DepthFirst and its cache in Graph.
+ */
+public class DepthFirstTest {
+    @Test
+    public void numbersNodesAndFindsBackEdges() {
+        Parser parser = ParserTest.createParser("int main() {", "while(a) {", "b = 1;", "}",
+                "c = 2;", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+        DepthFirst search = DepthFirst.of(nodes);
+
+        int header = search.getIndex(ParserTest.findNode(nodes, "while"));
+        int body = search.getIndex(ParserTest.findNode(nodes, "b = 1"));
+        assertEquals(nodes.size(), search.size());
+        assertEquals(0, search.getPreorder()[0]);
+        assertEquals(0, search.getReversePostorder()[0]);
+        assertEquals(nodes.size() - 1, search.getPostorderNumber(0));
+        assertTrue(search.isAncestor(header, body));
+        assertFalse(search.isAncestor(body, header));
+
+        // The only back edge is the one from the end of the body to the header
+        assertEquals(1, search.getBackEdgeCount());
+        for (int v = 0; v < nodes.size(); ++v) {
+            for (int i = 0; i < search.getSuccessorCount(v); ++i) {
+                int w = search.getSuccessor(v, i);
+                assertEquals(w == header && v == body, search.isBackEdge(v, i));
+                if (!search.isBackEdge(v, i))
+                    assertTrue(search.getPostorderNumber(v) > search.getPostorderNumber(w));
+            }
+        }
+    }
+
+    @Test
+    public void cachesUntilGraphChanges() {
+        Parser parser = ParserTest.createParser("int main() {", "if(a) {", "b = 1;", "}", "}");
+        parser.parse();
+        Graph graph = (Graph) parser.getNodes();
+
+        DepthFirst search = DepthFirst.of(graph);
+        assertSame(search, graph.getDepthFirst());
+
+        // Analyses of the same graph share the search
+        assertTrue(new Reducibility(graph).isReducible());
+        new Paths(graph);
+        assertSame(search, DepthFirst.of(graph));
+
+        // A new edge from the end back to the entry is a back edge in the next search
+        Node<Integer> last = graph.get(graph.size() - 1);
+        graph.addEdge(last, graph.get(0));
+        DepthFirst changed = DepthFirst.of(graph);
+        assertNotSame(search, changed);
+        assertEquals(0, search.getBackEdgeCount());
+        assertEquals(1, changed.getBackEdgeCount());
+
+        graph.removeEdge(last, last.children.size() - 1);
+        assertNotSame(changed, DepthFirst.of(graph));
+
+        // Nodes added to the list are seen too, even with no edge to them
+        DepthFirst before = DepthFirst.of(graph);
+        graph.add(new Node<>(graph.size()));
+        DepthFirst after = DepthFirst.of(graph);
+        assertNotSame(before, after);
+        assertFalse(after.isReachable(graph.size() - 1));
+        assertArrayEquals(before.getReversePostorder(), after.getReversePostorder());
+    }
+}
@@ -0,0 +1,110 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.moredrowsy.cfg.Diagnostics.ErrorCodes;
+import com.moredrowsy.cfg.Diagnostics.Recoveries;
+
+/**
+ * Unit test for Diagnostics.
+ */
+public class DiagnosticsTest {
+    @Test
+    public void reportsGrammarErrors() {
+        Parser parser = ParserTest.createParser("int main() {", "a = 1;", "if(x {", "b = 2;", "}",
+                "}");
+        parser.parse();
+        Diagnostics diagnostics = parser.getDiagnostics();
+
+        assertTrue(diagnostics.hasErrors());
+        assertEquals(ErrorCodes.UNEXPECTED_TOKEN, diagnostics.getCode(0));
+        assertEquals(3, diagnostics.getLine(0));
+        assertTrue(diagnostics.getExpected(0).contains(TokenStates.PAREN_CLOSE));
+        assertEquals(TokenStates.BRACE_OPEN, diagnostics.getActual(0));
+        assertEquals(Recoveries.SKIP_TO_SYNC, diagnostics.getRecovery(0));
+    }
+
+    @Test
+    public void reportsSkippedTokens() {
+        Parser parser = ParserTest.createParser("a = 1;", "b = 2; ) )", "} c = 3;", ") d = 4;");
+        parser.setDiagnostics(new Diagnostics(1));
+        parser.parse();
+        Diagnostics diagnostics = parser.getDiagnostics();
+
+        assertEquals(1, diagnostics.size());
+        assertEquals(2, diagnostics.getCount());
+        assertEquals(2, diagnostics.getLine(0));
+        assertEquals(TokenStates.PAREN_CLOSE, diagnostics.getActual(0));
+        assertEquals(Recoveries.SKIP_TO_SYNC, diagnostics.getRecovery(0));
+    }
+
+    @Test
+    public void recoversAtNextStatement() {
+        Parser parser = ParserTest.createParser("int main() {", "a = 1;", "if(x {", "b = 2;", "}",
+                "c = 3;", "while(y) {", "d = 4;", "}", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        assertEquals(1, parser.getDiagnostics().getCount());
+
+        // Rest of the damaged if is one error node: { b = 2 ; }
+        Node<Integer> error = null;
+        for (Node<Integer> node : nodes) {
+            if (node.type == DecompStates.ERROR)
+                error = node;
+        }
+        assertEquals(4, error.tokens.size());
+        assertEquals("{", error.tokens.get(0).sequence);
+        assertEquals("}", error.tokens.get(3).sequence);
+
+        // Rest of the function is parsed normally
+        assertEquals(1, error.children.size());
+        assertEquals("c = 3", error.children.get(0).tokens.get(0).sequence);
+        boolean hasWhile = false;
+        for (Node<Integer> node : nodes)
+            hasWhile |= node.type == DecompStates.D2;
+        assertTrue(hasWhile);
+    }
+
+    @Test
+    public void emptyErrorNodeHasErrorToken() {
+        // The } ends the if before its body, so nothing is skipped into the error node
+        Parser parser = ParserTest.createParser("int main() {", "if(x) }");
+        parser.parse();
+
+        Node<Integer> error = null;
+        for (Node<Integer> node : parser.getNodes()) {
+            if (node.type == DecompStates.ERROR)
+                error = node;
+        }
+        assertEquals(1, error.tokens.size());
+        assertEquals(TokenStates.ERROR.ordinal(), error.tokens.get(0).type);
+        assertEquals("", error.tokens.get(0).sequence);
+    }
+
+    @Test
+    public void validInputHasNoErrors() {
+        Parser parser = ParserTest.createParser("int main() {", "while(x) {", "a = 1;", "}", "}");
+        parser.parse();
+
+        assertFalse(parser.getDiagnostics().hasErrors());
+    }
+
+    @Test
+    public void bufferIsBounded() {
+        Diagnostics diagnostics = new Diagnostics(2);
+        for (int i = 0; i < 5; ++i)
+            diagnostics.report(ErrorCodes.UNEXPECTED_END, i, 0, Diagnostics.NO_TOKEN,
+                    Recoveries.STOP_PARSE);
+
+        assertEquals(2, diagnostics.size());
+        assertEquals(5, diagnostics.getCount());
+        assertEquals(null, diagnostics.getActual(1));
+    }
+}
@@ -0,0 +1,66 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.moredrowsy.cfg.Fingerprint.Modes;
+
+/**
+ * Unit test for Fingerprint.
+ */
+public class FingerprintTest {
+    private static Region parseFunction(String... lines) {
+        Parser parser = ParserTest.createParser(lines);
+        parser.parse();
+        return parser.getRootRegion().getChildren().get(0);
+    }
+
+    @Test
+    public void matchesClonesWithRenamedVariables() {
+        Region original = parseFunction("int f(int n) {", "s = 0;", "while(n > 0) {",
+                "if(n % 2) {", "s = s + n;", "}", "n = n - 1;", "}", "return s;", "}");
+        Region renamed = parseFunction("int g(int k) {", "t = 0;", "while(k > 0) {",
+                "if(k % 2) {", "t = t + k;", "}", "k = k - 1;", "}", "return t;", "}");
+        Region changed = parseFunction("int f(int n) {", "s = 0;", "while(n > 0) {",
+                "if(n % 2) {", "s = s * n;", "}", "n = n - 1;", "}", "return s;", "}");
+        Region reshaped = parseFunction("int f(int n) {", "s = 0;", "while(n > 0) {",
+                "if(n % 2) {", "s = s + n;", "}", "else {", "n = n - 1;", "}", "}",
+                "return s;", "}");
+
+        assertEquals(Fingerprint.of(original), Fingerprint.of(renamed));
+        assertEquals(Fingerprint.of(original), Fingerprint.of(changed));
+        assertNotEquals(Fingerprint.of(original), Fingerprint.of(reshaped));
+
+        int rounds = Fingerprint.DEFAULT_ROUNDS;
+        assertEquals(Fingerprint.of(original, Modes.NORMALIZED_TEXT, rounds),
+                Fingerprint.of(renamed, Modes.NORMALIZED_TEXT, rounds));
+        assertNotEquals(Fingerprint.of(original, Modes.TEXT, rounds),
+                Fingerprint.of(renamed, Modes.TEXT, rounds));
+        assertNotEquals(Fingerprint.of(original, Modes.NORMALIZED_TEXT, rounds),
+                Fingerprint.of(changed, Modes.NORMALIZED_TEXT, rounds));
+    }
+
+    @Test
+    public void ignoresNodeOrderAndSurroundings() {
+        Parser parser = ParserTest.createParser("a = 1;", "while(x) {", "if(y) {", "b = 2;",
+                "}", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = new ArrayList<>(parser.getNodes());
+        long fingerprint = Fingerprint.of(nodes);
+
+        Collections.reverse(nodes);
+        assertEquals(fingerprint, Fingerprint.of(nodes));
+
+        // The same loop on its own or inside a function has the same region fingerprint
+        Region loop = parser.getRootRegion().getChildren().get(0);
+        Region function = parseFunction("void f() {", "while(x) {", "if(y) {", "b = 2;", "}",
+                "}", "c = 3;", "}");
+        assertEquals(Fingerprint.of(loop), Fingerprint.of(function.getChildren().get(0)));
+        assertNotEquals(Fingerprint.of(loop), Fingerprint.of(function));
+    }
+}
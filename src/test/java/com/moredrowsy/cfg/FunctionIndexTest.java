@@ -0,0 +1,54 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * Unit test for FunctionIndex.
+ */
+public class FunctionIndexTest {
+    private static final String[] SOURCE = {"int f(int a) {", "if(a) {", "b = g(a);", "}",
+            "}", "x = init();", "while(y) {", "y = y - 1;", "}", "int main()", "{",
+            "while(z) { if(z) { z = 0; } }", "return 0; } int h() { return 1;", "}"};
+
+    @Test
+    public void findsFunctionsWithoutParsingThem() {
+        Parser parser = ParserTest.createParser(SOURCE);
+        FunctionIndex index = parser.indexFunctions();
+
+        // Not the call statement nor the top level loop
+        assertEquals(3, index.size());
+        assertEquals(0, index.indexOf("int f(int a)"));
+        assertEquals(1, index.indexOf("int main()"));
+        assertEquals(2, index.indexOf("int h()"));
+        assertEquals(10, index.getStartLine(1));
+        assertEquals(13, index.getEndLine(1));
+        assertEquals(13, index.getStartLine(2));
+        assertEquals(14, index.getEndLine(2));
+
+        // Each graph is the one the iterator gives, and is built once
+        Iterator<ArrayList<Node<Integer>>> constructs =
+                ParserTest.createParser(SOURCE).iterator();
+        int compared = 0;
+        while (constructs.hasNext()) {
+            ArrayList<Node<Integer>> expected = constructs.next();
+            int function = index.indexOf(expected.get(0).tokens.get(0).sequence);
+            if (function == -1)
+                continue;
+
+            ArrayList<Node<Integer>> nodes = index.getNodes(function);
+            assertEquals(expected.size(), nodes.size());
+            assertEquals(ParserTest.countEdges(expected), ParserTest.countEdges(nodes));
+            for (int i = 0; i < nodes.size(); ++i)
+                assertEquals(expected.get(i).tokens.toString(), nodes.get(i).tokens.toString());
+            assertSame(nodes, index.getNodes(function));
+            ++compared;
+        }
+        assertEquals(3, compared);
+    }
+}
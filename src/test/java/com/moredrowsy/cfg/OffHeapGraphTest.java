@@ -0,0 +1,73 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * Unit test for OffHeapGraph.
+ */
+public class OffHeapGraphTest {
+    @Test
+    public void readsBackAppendedGraphs() throws IOException {
+        Parser first = ParserTest.createParser("int main() {", "while(a) {", "b = \"é\";", "}",
+                "}");
+        Parser second = ParserTest.createParser("int f() {", "if(a) {", "b = 1;", "} else {",
+                "c = 2;", "}", "return c;", "}");
+        first.parse();
+        second.parse();
+        Graph[] graphs = { (Graph) first.getNodes(), (Graph) second.getNodes() };
+
+        Path file = Files.createTempFile("cfg", ".graph");
+        int[] bases = new int[graphs.length];
+        OffHeapGraph.Builder builder = new OffHeapGraph.Builder(file);
+        for (int g = 0; g < graphs.length; ++g)
+            bases[g] = builder.append(graphs[g]);
+
+        // Small segments so values and text cross segment boundaries
+        try (OffHeapGraph graph = builder.build(64)) {
+            assertEquals(graphs[0].size() + graphs[1].size(), graph.size());
+
+            for (int g = 0; g < graphs.length; ++g) {
+                Graph expected = graphs[g];
+                int base = bases[g];
+                for (int v = 0; v < expected.size(); ++v) {
+                    assertEquals(expected.getType(v), graph.getType(base + v));
+
+                    assertEquals(expected.getSuccessorCount(v), graph.getSuccessorCount(base + v));
+                    for (int i = 0; i < expected.getSuccessorCount(v); ++i)
+                        assertEquals(base + expected.getSuccessor(v, i),
+                                graph.getSuccessor(base + v, i));
+
+                    assertEquals(expected.getPredecessorCount(v),
+                            graph.getPredecessorCount(base + v));
+                    for (int i = 0; i < expected.getPredecessorCount(v); ++i)
+                        assertEquals(base + expected.getPredecessor(v, i),
+                                graph.getPredecessor(base + v, i));
+
+                    assertEquals(expected.getTokenCount(v), graph.getTokenCount(base + v));
+                    for (int i = 0; i < expected.getTokenCount(v); ++i) {
+                        assertEquals(expected.getTokenLine(v, i), graph.getTokenLine(base + v, i));
+                        assertEquals(expected.getTokenType(v, i), graph.getTokenType(base + v, i));
+                        assertEquals(expected.getTokenSequence(v, i),
+                                graph.getTokenSequence(base + v, i));
+                    }
+                }
+            }
+
+            // Analyses on the int API give the same answers off the heap
+            Components onHeap = new Components(graphs[0]);
+            Components offHeap = new Components(graph);
+            assertEquals(onHeap.size() + new Components(graphs[1]).size(), offHeap.size());
+            for (int v = 0; v < graphs[0].size(); ++v)
+                assertEquals(onHeap.isCyclic(onHeap.getComponent(v)),
+                        offHeap.isCyclic(offHeap.getComponent(v)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
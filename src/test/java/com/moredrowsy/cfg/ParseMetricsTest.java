@@ -0,0 +1,90 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.moredrowsy.cfg.ParseMetrics.Counters;
+import com.moredrowsy.cfg.ParseMetrics.Phases;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Unit test for ParseMetrics implementations.
+ */
+public class ParseMetricsTest {
+    private static final String[] SOURCE = {"int main() {", "while(x) {", "a = 1;", "}", "}"};
+
+    @Test
+    public void countsMatchParse() {
+        Parser parser = ParserTest.createParser(SOURCE);
+        CountingMetrics metrics = new CountingMetrics();
+        parser.setMetrics(metrics);
+        parser.parse();
+
+        assertEquals(SOURCE.length, metrics.getCount(Counters.LINES));
+        assertEquals(11, metrics.getCount(Counters.TOKENS));
+        assertEquals(parser.getNodes().size(), metrics.getCount(Counters.NODES));
+        assertEquals(ParserTest.countEdges(parser.getNodes()), metrics.getCount(Counters.EDGES));
+        assertEquals(0, metrics.getCount(Counters.ERRORS));
+        assertEquals(1, metrics.getPhaseCount(Phases.TOKENIZE));
+        assertEquals(1, metrics.getPhaseCount(Phases.BUILD));
+    }
+
+    @Test
+    public void iteratorCountsEachConstruct() {
+        Parser parser = ParserTest.createParser("a = 1;", "while(x) {", "b = 2;", "}", ")");
+        CountingMetrics metrics = new CountingMetrics();
+        parser.setMetrics(metrics);
+
+        long nodes = 0;
+        Iterator<ArrayList<Node<Integer>>> it = parser.iterator();
+        while (it.hasNext())
+            nodes += it.next().size();
+
+        assertEquals(5, metrics.getPhaseCount(Phases.TOKENIZE));
+        assertEquals(3, metrics.getPhaseCount(Phases.BUILD));
+        assertEquals(nodes, metrics.getCount(Counters.NODES));
+        assertEquals(1, metrics.getCount(Counters.ERRORS));
+    }
+
+    @Test
+    public void jfrEventsAreRecorded() throws Exception {
+        Path file = Files.createTempFile("cfg", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.moredrowsy.cfg.Tokenize");
+            recording.enable("com.moredrowsy.cfg.Build");
+            recording.start();
+
+            Parser parser = ParserTest.createParser(SOURCE);
+            parser.setMetrics(new JfrMetrics());
+            parser.parse();
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        long tokens = 0;
+        long nodes = 0;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.moredrowsy.cfg.Tokenize"))
+                tokens += event.getLong("tokens");
+            else if (event.getEventType().getName().equals("com.moredrowsy.cfg.Build"))
+                nodes += event.getLong("nodes");
+        }
+        assertEquals(11, tokens);
+        assertTrue(nodes > 0);
+    }
+}
@@ -0,0 +1,93 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.moredrowsy.cfg.GraphWriter.Formats;
+import com.moredrowsy.cfg.ParseProtocol.Request;
+import com.moredrowsy.cfg.ParseProtocol.Response;
+
+public class ParseServerTest {
+    private static byte[] source(int i) {
+        String str = "v" + i + " = 1;\n";
+        if (i % 3 == 0)
+            str += "while(x) {\nb = 2;\n}\n";
+        if (i % 5 == 0)
+            str += "if(x {\n"; // Parse error
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String expected(int i) throws IOException {
+        Parser parser = new Parser();
+        parser.addText(new String(source(i), StandardCharsets.UTF_8));
+        parser.parse();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        GraphWriter.write(Formats.JSON, "f" + i, parser.getNodes(), parser.getRootRegion(),
+                parser.getDiagnostics(), output);
+        return output.toString("UTF-8");
+    }
+
+    @Test
+    public void answersPipelinedRequestsInOrder() throws IOException {
+        // Few permits, so the server has to hold back reading while the client keeps sending
+        try (ParseServer server = new ParseServer(0, 4, 2)) {
+            server.start();
+
+            try (ParseClient client = new ParseClient(server.getPort())) {
+                ArrayList<Response> responses = new ArrayList<>();
+                for (int i = 0; i < 50; ++i) {
+                    client.send("f" + i, Formats.JSON, source(i));
+                    if (client.getOutstanding() >= ParseClient.DEFAULT_WINDOW)
+                        responses.add(client.receive());
+                }
+                while (client.getOutstanding() > 0)
+                    responses.add(client.receive());
+
+                assertEquals(50, responses.size());
+                for (int i = 0; i < 50; ++i) {
+                    Response response = responses.get(i);
+                    assertTrue(response.isOk());
+                    assertEquals(i % 5 == 0, response.getErrors() > 0);
+                    assertEquals(expected(i),
+                            new String(response.getOutput(), StandardCharsets.UTF_8));
+                }
+            }
+
+            // Parsers are reused across connections
+            try (ParseClient client = new ParseClient(server.getPort())) {
+                Response response = client.parse("f3", Formats.JSON, source(3));
+                assertEquals(expected(3), new String(response.getOutput(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void closeClosesOpenConnections() throws IOException {
+        ParseServer server = new ParseServer(0, 1, 2);
+        server.start();
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            ParseProtocol.writeRequest(out, new Request("f1", Formats.JSON, source(1)));
+            out.flush();
+            assertTrue(ParseProtocol.readResponse(in).isOk());
+
+            // The server reads the next request when it is closed
+            server.close();
+            assertEquals(-1, in.read());
+        }
+    }
+}
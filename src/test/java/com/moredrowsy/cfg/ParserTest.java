@@ -0,0 +1,215 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+/**
+ * Unit test for Parser.
+ */
+public class ParserTest {
+    private static final String[] SOURCE = {"int main() {", "    a = 1;", "    if(x) {",
+            "        b = 2;", "    }", "    else {", "        c = 3;", "    }",
+            "    while(y) {", "        d = 4;", "    }", "    do {", "        e = 5;",
+            "    } while(z);", "    for(i = 0; i < n; ++i) {", "        f = 6;", "    }",
+            "}"};
+
+    static Parser createParser(String... lines) {
+        Parser parser = new Parser();
+        for (String line : lines)
+            parser.addString(line);
+        return parser;
+    }
+
+    static int countEdges(ArrayList<Node<Integer>> nodes) {
+        int edges = 0;
+        for (Node<Integer> node : nodes)
+            edges += node.children.size();
+        return edges;
+    }
+
+    @Test
+    public void listenerSeesSameGraphAsGraphBuilder() {
+        Parser parser = createParser(SOURCE);
+        Node<Integer> root = parser.parse();
+        assertNotNull(root);
+
+        final int[] counts = new int[3];
+        Parser streaming = createParser(SOURCE);
+        streaming.parse(new ParseListener() {
+            @Override
+            public void enterNode(int node, DecompStates type, Token token) {
+                counts[0]++;
+            }
+
+            @Override
+            public void edge(int from, int to, EdgeTypes type) {
+                counts[1]++;
+                if (type == EdgeTypes.LOOP_BACK)
+                    counts[2]++;
+            }
+        });
+
+        assertEquals(parser.getNodes().size(), counts[0]);
+        assertEquals(countEdges(parser.getNodes()), counts[1]);
+        assertEquals(3, counts[2]); // while, do-while and for
+    }
+
+    @Test
+    public void iteratorYieldsTopLevelConstructs() {
+        Parser parser = createParser("a = 1;", "b = 2;", "while(x) {", "c = 3;", "}",
+                "void f() {", "d = 4;", "}", "e = 5;");
+        Iterator<ArrayList<Node<Integer>>> it = parser.iterator();
+
+        ArrayList<ArrayList<Node<Integer>>> constructs = new ArrayList<>();
+        while (it.hasNext())
+            constructs.add(it.next());
+
+        assertEquals(4, constructs.size());
+        assertEquals(4, constructs.get(0).get(0).tokens.size()); // a = 1 ; b = 2 ;
+        assertEquals(DecompStates.D2, constructs.get(1).get(0).type);
+        assertEquals(0, (int) constructs.get(2).get(0).val);
+        assertEquals("e = 5", constructs.get(3).get(0).tokens.get(0).sequence);
+    }
+
+    @Test
+    public void spliteratorSupportsParallelStreams() {
+        String[] lines = new String[SOURCE.length * 50];
+        for (int i = 0; i < lines.length; ++i)
+            lines[i] = SOURCE[i % SOURCE.length];
+
+        Parser parser = createParser(lines);
+        long nodes = StreamSupport.stream(parser.spliterator(), true)
+                .mapToLong(construct -> construct.size()).sum();
+
+        Parser eager = createParser(SOURCE);
+        eager.parse();
+        assertEquals(50L * eager.getNodes().size(), nodes);
+    }
+
+    @Test
+    public void jumpsLinkToTheirTargets() {
+        Parser parser = createParser("int f(int n) {", "while(n > 0) {", "if(n == 3) break;",
+                "n = n - 1;", "continue;", "}", "goto out;", "dead = 1;", "out:",
+                "return n;", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        Node<Integer> whileNode = findNode(nodes, "while");
+        Node<Integer> exit = nodes.get(nodes.size() - 1);
+        assertEquals(DecompStates.P1_END, exit.type);
+
+        // break goes to the loop end
+        Node<Integer> breakNode = findNode(nodes, "break");
+        assertEquals(1, breakNode.children.size());
+        assertEquals(DecompStates.D2_END, breakNode.children.get(0).type);
+
+        // n = n - 1 ; continue ; goes back to the while test and does not fall through
+        Node<Integer> continueNode = findNode(nodes, "n = n - 1");
+        assertEquals(1, continueNode.children.size());
+        assertEquals(whileNode, continueNode.children.get(0));
+
+        // goto reaches the label, and dead code after it is unreachable
+        Node<Integer> gotoNode = findNode(nodes, "goto");
+        Node<Integer> label = findNode(nodes, "out:");
+        assertEquals(1, gotoNode.children.size());
+        assertEquals(label, gotoNode.children.get(0));
+        assertEquals(0, findNode(nodes, "dead = 1").parents.size());
+
+        // return goes to the function's exit node
+        assertEquals(1, label.children.size());
+        assertEquals(exit, label.children.get(0));
+    }
+
+    @Test
+    public void branchesEndingInJumpsLeaveNoOrphans() {
+        Parser parser = createParser("int f() {", "while(x) {", "if(a) break;",
+                "if(b) { continue; }", "if(c) return; else d = 1;", "}", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        assertEquals(0, parser.getDiagnostics().getCount());
+        for (int i = 1; i < nodes.size(); ++i)
+            assertFalse(nodes.get(i).parents.isEmpty());
+    }
+
+    @Test
+    public void errorInBodySkipsOnlyTheBadStatement() {
+        Parser parser = createParser("f() {", "return;", "a = 1;", ") b = 2;", "c = 3;", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        assertEquals(1, parser.getDiagnostics().getCount());
+
+        // The error node holds the bad statement and the body goes on after it
+        Node<Integer> error = findNode(nodes, ")");
+        assertEquals(DecompStates.ERROR, error.type);
+        assertEquals(3, error.tokens.size());
+        assertEquals(";", error.tokens.get(2).sequence);
+        assertEquals("c = 3", error.children.get(0).tokens.get(0).sequence);
+
+        // The function still ends at its own }, where the return in its first node goes
+        Node<Integer> exit = nodes.get(nodes.size() - 1);
+        assertEquals(DecompStates.P1_END, exit.type);
+        assertEquals("}", exit.tokens.get(0).sequence);
+        assertEquals(exit, nodes.get(0).children.get(0));
+    }
+
+    @Test
+    public void tokenizesChunksInParallel() {
+        String[] lines = new String[SOURCE.length * 20];
+        for (int i = 0; i < lines.length; ++i)
+            lines[i] = SOURCE[i % SOURCE.length];
+
+        Parser sequential = createParser(lines);
+        sequential.parse();
+        Parser parallel = createParser(lines);
+        parallel.setTokenizePool(ForkJoinPool.commonPool());
+        parallel.parse();
+        assertTokensEqual(sequential.getTokens(), parallel.getTokens());
+        assertEquals(sequential.getNodes().size(), parallel.getNodes().size());
+
+        // Chunks of a few lines each, with one line that no rule matches
+        Tokenizer tokenizer = new Tokenizer();
+        tokenizer.add("[a-z]+", TokenStates.STATEMENT.ordinal());
+        tokenizer.add(";", TokenStates.SEMICOLON.ordinal());
+        ArrayList<String> strings = new ArrayList<>();
+        for (int i = 0; i < 500; ++i)
+            strings.add(i == 300 ? "a = 1;" : "a;");
+
+        ArrayList<Token> tokens = new ArrayList<>();
+        try {
+            tokenizer.tokenize(strings, 1, tokens, ForkJoinPool.commonPool(), 16);
+            fail();
+        } catch (TokenizerException e) {
+            assertEquals(301, e.getIndex());
+        }
+
+        // Only the tokens of the lines before the failing one are kept
+        assertEquals(2 * 300, tokens.size());
+        assertEquals(300, tokens.get(tokens.size() - 1).index);
+    }
+
+    private static void assertTokensEqual(List<Token> expected, List<Token> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+    }
+
+    static Node<Integer> findNode(ArrayList<Node<Integer>> nodes, String first) {
+        for (Node<Integer> node : nodes) {
+            if (!node.tokens.isEmpty() && node.tokens.get(0).sequence.equals(first))
+                return node;
+        }
+        return null;
+    }
+}
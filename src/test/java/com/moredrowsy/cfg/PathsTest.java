@@ -0,0 +1,67 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * Unit test for Paths.
+ */
+public class PathsTest {
+    @Test
+    public void countsPathsOfLongIfElseChains() {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("int main() {");
+        for (int i = 0; i < 100; ++i) {
+            lines.add("if(x" + i + ") {");
+            lines.add("a = " + i + ";");
+            lines.add("}");
+            lines.add("else {");
+            lines.add("b = " + i + ";");
+            lines.add("}");
+        }
+        lines.add("}");
+
+        Parser parser = ParserTest.createParser(lines.toArray(new String[0]));
+        parser.parse();
+        Paths paths = new Paths(parser.getNodes());
+
+        assertEquals(BigInteger.ONE.shiftLeft(100), paths.getCount());
+        assertEquals(Long.MAX_VALUE, paths.getSaturatedCount());
+
+        // Enumeration is lazy and bounded
+        Iterator<ArrayList<Node<Integer>>> it = paths.enumerate(3);
+        for (int i = 0; i < 3; ++i)
+            assertEquals(BigInteger.valueOf(i), paths.getPathNumber(it.next()));
+        assertFalse(it.hasNext());
+
+        // Path numbers round trip
+        BigInteger number = BigInteger.TEN.pow(29).add(BigInteger.valueOf(12345));
+        assertEquals(number, paths.getPathNumber(paths.getPath(number)));
+    }
+
+    @Test
+    public void removesLoopBackEdges() {
+        Parser parser = ParserTest.createParser("int main() {", "while(x) {", "if(y) {",
+                "a = 1;", "}", "}", "b = 2;", "}");
+        parser.parse();
+        Paths paths = new Paths(parser.getNodes());
+
+        // Skip the loop, or end the body after the if's then or empty branch
+        assertEquals(3, paths.getSaturatedCount());
+        assertEquals(BigInteger.valueOf(3), paths.getCount());
+
+        int count = 0;
+        Iterator<ArrayList<Node<Integer>>> it = paths.enumerate(Long.MAX_VALUE);
+        while (it.hasNext()) {
+            assertEquals(BigInteger.valueOf(count), paths.getPathNumber(it.next()));
+            ++count;
+        }
+        assertEquals(3, count);
+    }
+}
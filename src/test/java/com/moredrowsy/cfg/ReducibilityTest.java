@@ -0,0 +1,91 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Unit test for Components and Reducibility.
+ */
+public class ReducibilityTest {
+    @Test
+    public void findsComponentsOfNestedLoops() {
+        Parser parser = ParserTest.createParser("int main() {", "while(x) {", "a = 1;",
+                "while(y) {", "b = 2;", "}", "}", "c = 3;", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        Reducibility reducibility = new Reducibility(nodes);
+        assertTrue(reducibility.isReducible());
+        Node<Integer> outerBody = ParserTest.findNode(nodes, "a = 1");
+        Node<Integer> innerBody = ParserTest.findNode(nodes, "b = 2");
+        Node<Integer> outer = reducibility.getLoopHeader(outerBody);
+        Node<Integer> inner = reducibility.getLoopHeader(innerBody);
+        assertEquals(outer, reducibility.getLoopHeader(inner));
+        assertNull(reducibility.getLoopHeader(outer));
+        assertNull(reducibility.getLoopHeader(ParserTest.findNode(nodes, "c = 3")));
+
+        // Both loops are one component; every other node is its own
+        Components components = new Components(nodes);
+        int loop = components.getComponent(outer);
+        assertEquals(loop, components.getComponent(inner));
+        assertEquals(loop, components.getComponent(innerBody));
+        assertTrue(components.isCyclic(loop));
+        assertFalse(components.isCyclic(components.getComponent(nodes.get(0))));
+        assertEquals(nodes.size() - components.getNodes(loop).size() + 1, components.size());
+
+        // Reverse topological order: the entry's component comes last
+        assertEquals(components.size() - 1, components.getComponent(nodes.get(0)));
+    }
+
+    @Test
+    public void reportsLoopsEnteredByGoto() {
+        Parser parser = ParserTest.createParser("int main() {", "if(x) {", "goto inside;", "}",
+                "while(y) {", "a = 1;", "inside:", "b = 2;", "}", "}");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+        Reducibility reducibility = new Reducibility(nodes);
+
+        assertFalse(reducibility.isReducible());
+        assertEquals(1, reducibility.getIrreducibleLoops().size());
+
+        // The loop is entered at its condition and at the label
+        Reducibility.IrreducibleLoop loop = reducibility.getIrreducibleLoops().get(0);
+        Components components = new Components(nodes);
+        Node<Integer> condition = ParserTest.findNode(nodes, "while");
+        Node<Integer> label = ParserTest.findNode(nodes, "inside:");
+        assertEquals(components.getNodes(components.getComponent(label)).size(),
+                loop.getNodes().size());
+        assertEquals(2, loop.getEntries().size());
+        assertTrue(loop.getEntries().contains(condition));
+        assertTrue(loop.getEntries().contains(label));
+    }
+
+    @Test
+    public void handlesLongGraphsWithoutRecursion() {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("int main() {");
+        for (int i = 0; i < 20000; ++i) {
+            lines.add("while(x" + i + ") {");
+            lines.add("a = " + i + ";");
+            lines.add("}");
+        }
+        lines.add("}");
+
+        Parser parser = ParserTest.createParser(lines.toArray(new String[0]));
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+
+        // Each loop is a component of two nodes
+        Components components = new Components(nodes);
+        assertEquals(nodes.size() - 20000, components.size());
+        assertTrue(components.isCyclic(components.getComponent(ParserTest.findNode(nodes,
+                "a = 19999"))));
+        assertTrue(new Reducibility(nodes).isReducible());
+    }
+}
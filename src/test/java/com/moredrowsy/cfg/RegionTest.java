@@ -0,0 +1,86 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the program structure tree.
+ */
+public class RegionTest {
+    private static int countNodes(Region region) {
+        int count = region.getNodes().size();
+        for (Region child : region.getChildren())
+            count += countNodes(child);
+        return count;
+    }
+
+    @Test
+    public void nestsRegionsLikeTheSource() {
+        Parser parser = ParserTest.createParser("int main() {", "a = 1;", "while(x) {",
+                "if(y) {", "b = 2;", "}", "else {", "c = 3;", "}", "}",
+                "for(i = 0; i < n; i++) {", "do {", "d = 4;", "} while(z);", "}", "}", "e = 5;");
+        parser.parse();
+        ArrayList<Node<Integer>> nodes = parser.getNodes();
+        Region root = parser.getRootRegion();
+
+        assertNull(root.getParent());
+        assertEquals(nodes.get(0), root.getEntry());
+        assertEquals(nodes.size(), countNodes(root));
+
+        // Function, then the statement after it
+        assertEquals(1, root.getChildren().size());
+        Region function = root.getChildren().get(0);
+        assertEquals(DecompStates.P1, function.getType());
+        assertTrue(root.getNodes().contains(ParserTest.findNode(nodes, "e = 5")));
+
+        assertEquals(2, function.getChildren().size());
+        Region loop = function.getChildren().get(0);
+        Region forLoop = function.getChildren().get(1);
+        assertEquals(DecompStates.D2, loop.getType());
+        assertEquals(DecompStates.D2, forLoop.getType());
+
+        Region ifElse = loop.getChildren().get(0);
+        assertEquals(DecompStates.D1, ifElse.getType());
+        assertEquals(loop, ifElse.getParent());
+        assertTrue(ifElse.contains(ParserTest.findNode(nodes, "c = 3")));
+        assertFalse(ifElse.contains(ParserTest.findNode(nodes, "d = 4")));
+
+        Region doWhile = forLoop.getChildren().get(0);
+        assertEquals(DecompStates.D3, doWhile.getType());
+        assertTrue(doWhile.getNodes().contains(ParserTest.findNode(nodes, "d = 4")));
+
+        // Structured code is single entry and single exit throughout
+        assertTrue(ifElse.isSingleEntry() && ifElse.isSingleExit());
+        assertTrue(function.isSingleEntry() && function.isSingleExit());
+    }
+
+    @Test
+    public void marksRegionsCrossedByJumps() {
+        Parser parser = ParserTest.createParser("int f() {", "while(x) {", "if(y) break;",
+                "if(z) {", "return 1;", "}", "}", "goto out;", "if(w) {", "out:", "a = 1;", "}",
+                "}");
+        parser.parse();
+        Region function = parser.getRootRegion().getChildren().get(0);
+        Region loop = function.getChildren().get(0);
+        Region breakIf = loop.getChildren().get(0);
+        Region returnIf = loop.getChildren().get(1);
+        Region labelIf = function.getChildren().get(1);
+
+        // break leaves its if but not the loop; return leaves both
+        assertFalse(breakIf.isSingleExit());
+        assertFalse(returnIf.isSingleExit());
+        assertFalse(loop.isSingleExit());
+        assertTrue(loop.isSingleEntry());
+
+        // goto enters the if at its label; the function holds both ends
+        assertFalse(labelIf.isSingleEntry());
+        assertTrue(labelIf.isSingleExit());
+        assertTrue(function.isSingleEntry() && function.isSingleExit());
+    }
+}
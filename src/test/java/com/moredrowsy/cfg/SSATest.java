@@ -0,0 +1,96 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.moredrowsy.cfg.DefUse.Kinds;
+
+/**
+ * Unit test for DefUse and SSA.
+ */
+public class SSATest {
+    private static String uses(DefUse defUse, int statement) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < defUse.getUseCount(statement); ++i)
+            str.append(i > 0 ? " " : "").append(defUse.getVariable(defUse.getUse(statement, i)));
+        return str.toString();
+    }
+
+    @Test
+    public void extractsDefsAndUses() {
+        Parser parser = ParserTest.createParser("int f(int n, char *s) {",
+                "int a = b + c * g(d);", "a += n;", "p->next = q;", "x[i] = 1;", "int y;",
+                "if(a == 1 && s != 0) {", "++a;", "}", "goto out;", "out:", "}");
+        parser.parse();
+        DefUse defUse = new DefUse(parser.getNodes());
+
+        String[] expected = {"PARAMETER n", "PARAMETER s", "ASSIGN a b c d",
+                "COMPOUND_ASSIGN a a n", "ASSIGN - p q", "ASSIGN - x i", "USE - a s",
+                "INCREMENT a a"};
+        assertEquals(expected.length, defUse.size());
+
+        for (int s = 0; s < defUse.size(); ++s) {
+            int def = defUse.getDef(s);
+            String actual = defUse.getKind(s) + " "
+                    + (def == DefUse.NO_VARIABLE ? "-" : defUse.getVariable(def)) + " "
+                    + uses(defUse, s);
+            assertEquals(expected[s], actual.trim());
+        }
+
+        assertEquals("+=", defUse.getOperator(3));
+        assertEquals("n", defUse.getValue(3));
+        assertEquals("++", defUse.getOperator(7));
+        assertEquals(Kinds.USE, defUse.getKind(6));
+        assertEquals("a == 1 && s != 0", defUse.getValue(6));
+    }
+
+    @Test
+    public void placesPhisAtLoopHeaders() {
+        Parser parser = ParserTest.createParser("int f(int n) {", "s = 0;", "i = 0;",
+                "while(i < n) {", "s += i;", "i++;", "}", "return s;", "}");
+        parser.parse();
+        DefUse defUse = new DefUse(parser.getNodes());
+        SSA ssa = new SSA(defUse);
+
+        int header = defUse.getIndex(ParserTest.findNode(parser.getNodes(), "while"));
+        assertEquals(0, ssa.getIdom(header));
+        assertTrue(ssa.dominates(header, defUse.getIndex(ParserTest.findNode(parser.getNodes(),
+                "s += i"))));
+
+        // s and i get phis at the header; n is only defined on entry
+        assertEquals(2, ssa.getPhiCount());
+        assertEquals(2, ssa.getFirstPhi(header + 1) - ssa.getFirstPhi(header));
+        for (int p = 0; p < ssa.getPhiCount(); ++p) {
+            assertEquals(header, ssa.getPhiNode(p));
+            assertEquals(2, ssa.getOperandCount(p));
+
+            // From the entry, the value assigned before the loop; from the body, the new one
+            int variable = ssa.getPhiVariable(p);
+            for (int i = 0; i < 2; ++i) {
+                int value = ssa.getOperand(p, i);
+                int statement = ssa.getValueStatement(value);
+                assertEquals(variable, ssa.getValueVariable(value));
+                String from = i == 0 ? "int f(int n)" : "s += i";
+                assertEquals(defUse.getIndex(ParserTest.findNode(parser.getNodes(), from)),
+                        ssa.getOperandNode(p, i));
+                assertEquals(i == 0 ? "=" : variable == defUse.getVariable("s") ? "+=" : "++",
+                        defUse.getOperator(statement));
+            }
+        }
+
+        // Every use after the loop reads the phi
+        int s = defUse.getVariable("s");
+        int last = defUse.size() - 1;
+        assertEquals("s", defUse.getToken(last).sequence.trim());
+        int phi = ssa.getValuePhi(ssa.getUseValue(last, 0));
+        assertEquals(s, ssa.getPhiVariable(phi));
+        assertEquals(s, ssa.getValueVariable(ssa.getUseValue(last, 0)));
+
+        // The condition reads n as defined by the parameter
+        int n = ssa.getUseValue(defUse.getFirst(header), 1);
+        assertEquals(Kinds.PARAMETER, defUse.getKind(ssa.getValueStatement(n)));
+        assertEquals("n_" + n, ssa.getValueName(n));
+    }
+}
@@ -0,0 +1,80 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit test for StructuralIndex and the Tokenizer rules that use it.
+ */
+public class StructuralIndexTest {
+    private static final String CHARACTERS = "(){};: \tabcdefio_=+1ĨŻé";
+
+    private static String randomLine(Random random, int length) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < length; ++i)
+            str.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        return str.toString();
+    }
+
+    @Test
+    public void findsSameDelimitersAsScalarScan() {
+        StructuralIndex swar = new StructuralIndex("(){};");
+        StructuralIndex scalar = new StructuralIndex("(){};");
+        Random random = new Random(42);
+
+        for (int n = 0; n < 2000; ++n) {
+            // Characters like Ĩ have a delimiter as their low byte
+            String line = randomLine(random, random.nextInt(40));
+            int start = line.isEmpty() ? 0 : random.nextInt(line.length());
+            swar.index(line, start, line.length());
+            scalar.indexScalar(line, start, line.length());
+
+            assertEquals(line, scalar.size(), swar.size());
+            for (int i = 0; i < scalar.size(); ++i)
+                assertEquals(line, scalar.get(i), swar.get(i));
+        }
+    }
+
+    @Test
+    public void tokenizesLikeRegexRules() {
+        Tokenizer regex = new Tokenizer();
+        regex.add(";", TokenStates.SEMICOLON.ordinal());
+        regex.add("if", TokenStates.IF.ordinal());
+        regex.add("do", TokenStates.DO.ordinal());
+        regex.add("[a-z_][a-z0-9_]*\\s*:(?!:)", TokenStates.LABEL.ordinal());
+        regex.add("[^\\(\\)\\;\\{\\}]*[\\s]*[^\\(\\)\\;\\{\\}]+\\([^\\(\\)\\;\\{\\}]*\\)",
+                TokenStates.FUNCTION.ordinal());
+        regex.add("\\(", TokenStates.PAREN_OPEN.ordinal());
+        regex.add("\\)", TokenStates.PAREN_CLOSE.ordinal());
+        regex.add("\\{", TokenStates.BRACE_OPEN.ordinal());
+        regex.add("\\}", TokenStates.BRACE_CLOSE.ordinal());
+        regex.add("[^\\(\\)\\{\\}\\;]+", TokenStates.STATEMENT.ordinal());
+
+        Tokenizer structural = new Tokenizer();
+        structural.addDelimiter(';', TokenStates.SEMICOLON.ordinal());
+        structural.add("if", TokenStates.IF.ordinal());
+        structural.add("do", TokenStates.DO.ordinal());
+        structural.add("[a-z_][a-z0-9_]*\\s*:(?!:)", TokenStates.LABEL.ordinal());
+        structural.addCall('(', ')', TokenStates.FUNCTION.ordinal());
+        structural.addDelimiter('(', TokenStates.PAREN_OPEN.ordinal());
+        structural.addDelimiter(')', TokenStates.PAREN_CLOSE.ordinal());
+        structural.addDelimiter('{', TokenStates.BRACE_OPEN.ordinal());
+        structural.addDelimiter('}', TokenStates.BRACE_CLOSE.ordinal());
+        structural.addSpan(TokenStates.STATEMENT.ordinal());
+
+        Random random = new Random(7);
+        for (int n = 0; n < 2000; ++n) {
+            String line = randomLine(random, random.nextInt(30));
+            ArrayList<Token> expected = new ArrayList<>();
+            ArrayList<Token> actual = new ArrayList<>();
+            regex.tokenize(line, 1, expected);
+            structural.tokenize(line, 1, actual);
+
+            assertEquals(line, expected.toString(), actual.toString());
+        }
+    }
+}
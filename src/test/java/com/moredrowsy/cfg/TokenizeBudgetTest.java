@@ -0,0 +1,120 @@
+package com.moredrowsy.cfg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.moredrowsy.cfg.Diagnostics.ErrorCodes;
+import com.moredrowsy.cfg.TokenizeBudget.Limits;
+
+/**
+ * Regression tests for lines that made the tokenizer backtrack for seconds, and for the budgets
+ * that bound it.
+ */
+public class TokenizeBudgetTest {
+    // FUNCTION rule before it was found from delimiter positions
+    private static final String BACKTRACKING_FUNCTION =
+            "[^\\(\\)\\;\\{\\}]*[\\s]*[^\\(\\)\\;\\{\\}]+\\([^\\(\\)\\;\\{\\}]*\\)";
+
+    // Long expression without parentheses, which the FUNCTION rule used to try every split of
+    private static String longExpression(int terms) {
+        StringBuilder str = new StringBuilder("v");
+        for (int i = 0; i < terms; ++i)
+            str.append(" + v").append(i);
+        return str.toString();
+    }
+
+    private static String longStatement(int terms) {
+        return "v = " + longExpression(terms) + ";";
+    }
+
+    private static Tokenizer backtrackingTokenizer() {
+        Tokenizer tokenizer = new Tokenizer();
+        tokenizer.add(BACKTRACKING_FUNCTION, TokenStates.FUNCTION.ordinal());
+        tokenizer.add("[^\\(\\)\\{\\}\\;]+", TokenStates.STATEMENT.ordinal());
+        tokenizer.add(";", TokenStates.SEMICOLON.ordinal());
+        return tokenizer;
+    }
+
+    @Test(timeout = 5000)
+    public void tokenizesLongLinesInLinearTime() {
+        String[] lines = {"int main() {", longStatement(20000), "f(" + longExpression(5000) + ");",
+                "if(" + longExpression(5000) + ") {", "}", "}"};
+        Parser parser = ParserTest.createParser(lines);
+        parser.setTokenizeBudget(new TokenizeBudget(100L * lines[1].length(), 2000));
+
+        assertTrue(parser.parse() != null);
+        assertFalse(parser.getDiagnostics().hasErrors());
+
+        // The statement is one token, merged into the function's first node
+        String statement = lines[1].substring(0, lines[1].length() - 1);
+        assertEquals(statement, parser.getNodes().get(0).tokens.get(2).sequence);
+    }
+
+    @Test(timeout = 5000)
+    public void stopsBacktrackingWhenStepsRunOut() {
+        Tokenizer tokenizer = backtrackingTokenizer();
+        TokenizeBudget budget = new TokenizeBudget(1000000, TokenizeBudget.UNLIMITED);
+        tokenizer.setBudget(budget);
+
+        // Short lines fit
+        ArrayList<Token> tokens = new ArrayList<>();
+        tokenizer.tokenize(longStatement(10), 1, tokens);
+        assertEquals(2, tokens.size());
+
+        try {
+            tokenizer.tokenize(longStatement(20000), 2, tokens);
+            fail();
+        } catch (TokenizerBudgetException e) {
+            assertEquals(Limits.STEPS, e.getLimit());
+            assertEquals(2, e.getIndex());
+            assertTrue(e.getSteps() > budget.getMaxSteps());
+            assertTrue(e.getSteps() < budget.getMaxSteps() + 2 * TokenizeBudget.CHECK_INTERVAL);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void stopsBacktrackingWhenTimeRunsOut() {
+        Tokenizer tokenizer = backtrackingTokenizer();
+        tokenizer.setBudget(new TokenizeBudget(TokenizeBudget.UNLIMITED, 50));
+
+        try {
+            tokenizer.tokenize(longStatement(20000), 1);
+            fail();
+        } catch (TokenizerBudgetException e) {
+            assertEquals(Limits.TIME, e.getLimit());
+        }
+    }
+
+    @Test
+    public void reportsBudgetErrors() {
+        // Steps of one line, as regex rules read it
+        Parser parser = ParserTest.createParser("a = 1;");
+        TokenizeBudget budget = new TokenizeBudget(TokenizeBudget.UNLIMITED, 1000);
+        parser.setTokenizeBudget(budget);
+        parser.parse();
+        long steps = budget.getSteps();
+
+        parser = ParserTest.createParser("a = 1;", "b = 2;", "c = 3;");
+        parser.setTokenizeBudget(new TokenizeBudget(2 * steps + steps / 2, 1000));
+        assertEquals(null, parser.parse());
+        Diagnostics diagnostics = parser.getDiagnostics();
+        assertEquals(1, diagnostics.size());
+        assertEquals(ErrorCodes.STEP_LIMIT, diagnostics.getCode(0));
+        assertEquals(3, diagnostics.getLine(0));
+        assertEquals("line 3: STEP_LIMIT, STOP_PARSE", diagnostics.toString(0));
+
+        // Each parse gets the whole budget again
+        for (int i = 0; i < 3; ++i) {
+            parser.clear();
+            parser.addString("a = 1;");
+            parser.addString("b = 2;");
+            assertTrue(parser.parse() != null);
+        }
+    }
+}